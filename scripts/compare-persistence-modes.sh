@@ -0,0 +1,37 @@
+#!/usr/bin/env bash
+# Runs the same load test against the R2DBC and the JDBC (virtual threads) persistence modes, both on the
+# load test's in-memory H2 data, and prints the results side by side. Extra arguments are passed to every
+# run (see LoadOptions), e.g.
+#
+#   scripts/compare-persistence-modes.sh --mode=open --rate=20000
+#
+# The full output of each run, with the machine it ran on, is kept in build/persistence-modes.
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+out=build/persistence-modes
+mkdir -p "$out"
+
+common="--mode=closed --connections=256 --warmup=20s --duration=60s --logins=10000 $*"
+
+run() {
+    local name=$1
+    shift
+    echo "== $name"
+    {
+        echo "# $(date -u +%Y-%m-%dT%H:%M:%SZ) $(uname -srm), $(nproc) cpus"
+        java -version 2>&1 | head -1
+        ./gradlew -q loadTest --args="$common $*"
+    } | tee "$out/$name.txt"
+}
+
+run r2dbc
+run jdbc --spring.profiles.active=jdbc
+
+echo
+printf '%-8s %s\n' mode result
+for name in r2dbc jdbc; do
+    printf '%-8s %s\n' "$name" "$(grep -h '^requests=' "$out/$name.txt")"
+    printf '%-8s %s\n' "" "$(grep -h '^latency ms:' "$out/$name.txt")"
+    printf '%-8s %s\n' "" "$(grep -h '^heap MB:' "$out/$name.txt")"
+done
@@ -0,0 +1,36 @@
+#!/usr/bin/env bash
+# Runs the same load test against the default Netty settings and the high-throughput profile and prints
+# the results side by side. Extra arguments are passed to every run (see LoadOptions), e.g.
+#
+#   scripts/compare-server-profiles.sh --mode=open --rate=20000
+#
+# The full output of each run, with the machine it ran on, is kept in build/server-profiles.
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+out=build/server-profiles
+mkdir -p "$out"
+
+common="--mode=closed --connections=256 --warmup=20s --duration=60s --logins=10000 $*"
+
+run() {
+    local name=$1
+    shift
+    echo "== $name"
+    {
+        echo "# $(date -u +%Y-%m-%dT%H:%M:%SZ) $(uname -srm), $(nproc) cpus"
+        java -version 2>&1 | head -1
+        ./gradlew -q loadTest --args="$common $*"
+    } | tee "$out/$name.txt"
+}
+
+run default
+run high-throughput --spring.profiles.active=high-throughput
+run high-throughput-h2c --spring.profiles.active=high-throughput --protocol=h2c
+
+echo
+printf '%-22s %s\n' profile result
+for name in default high-throughput high-throughput-h2c; do
+    printf '%-22s %s\n' "$name" "$(grep -h '^requests=' "$out/$name.txt")"
+    printf '%-22s %s\n' "" "$(grep -h '^latency ms:' "$out/$name.txt")"
+done
@@ -0,0 +1,83 @@
+#!/usr/bin/env bash
+# Measures the time from launching the JVM to the first successful GET-BALANCE (result code 0) for
+#
+#   jar       the executable jar as built, with no startup options
+#   aot       the extracted jar with the Spring AOT initializers (-Dspring.aot.enabled=true)
+#   aot-cds   the same with the AppCDS archive of a training run, as in the Dockerfile
+#
+# It builds the jar with ./gradlew bootJar -Paot and needs PostgreSQL with the schema on localhost:5432, e.g.
+# docker compose up -d postgres. Every mode is started RUNS times (default 5) after one untimed start that
+# creates the probe client; extra arguments go to the application, e.g.
+#
+#   RUNS=10 scripts/startup-benchmark.sh --spring.r2dbc.url=r2dbc:postgresql://db:5432/qiwi
+#
+# Application logs are kept in build/startup.
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+out=build/startup
+runs=${RUNS:-5}
+port=${PORT:-9000}
+app_args="--server.port=$port $*"
+probe='<?xml version="1.0" encoding="UTF-8"?><request><request-type>%s</request-type>'
+probe+='<extra name="login">startup-probe</extra><extra name="password">pwd</extra></request>'
+
+./gradlew -q bootJar -Paot
+jar=$(ls build/libs/*.jar)
+rm -rf "$out"
+mkdir -p "$out"
+java -Djarmode=tools -jar "$jar" extract --destination "$out/app"
+(cd "$out/app" && java -XX:ArchiveClassesAtExit=app.jsa -Dspring.aot.enabled=true \
+    -Dspring.context.exit=onRefresh -jar app.jar $app_args > ../training.log 2>&1)
+
+send() {
+    # shellcheck disable=SC2059
+    curl -s -m 2 -H 'Content-Type: application/xml' --data "$(printf "$probe" "$1")" \
+        "http://localhost:$port/" 2>/dev/null || true
+}
+
+# Starts the application with the given java options, waits for a successful GET-BALANCE and prints the
+# elapsed milliseconds. The jar of the "jar" mode is absolute, the others run from the extracted directory.
+measure() {
+    local log=$1 dir=$2
+    shift 2
+    local start end pid
+    start=$(date +%s%N)
+    (cd "$dir" && exec java "$@" $app_args) > "$log" 2>&1 &
+    pid=$!
+    until send GET-BALANCE | grep -q '<result-code>0</result-code>'; do
+        if ! kill -0 "$pid" 2>/dev/null; then
+            echo "application exited, see $log" >&2
+            exit 1
+        fi
+        if [ -z "${created:-}" ] && send GET-BALANCE | grep -q '<result-code>3</result-code>'; then
+            send CREATE-AGT > /dev/null
+            created=1
+        fi
+        sleep 0.01
+    done
+    end=$(date +%s%N)
+    kill "$pid"
+    wait "$pid" 2>/dev/null || true
+    echo $(( (end - start) / 1000000 ))
+}
+
+jar_path=$(realpath "$jar")
+measure "$out/seed.log" . -jar "$jar_path" > /dev/null
+created=1
+
+printf '%-8s %s\n' mode "time to first GET-BALANCE, ms (runs, then median)"
+for mode in jar aot aot-cds; do
+    times=()
+    for run in $(seq "$runs"); do
+        log="$out/$mode-$run.log"
+        case $mode in
+            jar) times+=("$(measure "$log" . -jar "$jar_path")") ;;
+            aot) times+=("$(measure "$log" "$out/app" -Dspring.aot.enabled=true -jar app.jar)") ;;
+            aot-cds) times+=("$(measure "$log" "$out/app" -XX:SharedArchiveFile=app.jsa \
+                -Dspring.aot.enabled=true -jar app.jar)") ;;
+        esac
+    done
+    median=$(printf '%s\n' "${times[@]}" | sort -n | awk '{ v[NR] = $1 } END { print v[int((NR + 1) / 2)] }')
+    printf '%-8s %s  median=%s\n' "$mode" "${times[*]}" "$median"
+done
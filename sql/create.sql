@@ -2,5 +2,16 @@ CREATE TABLE CLIENTS (
 ID BIGSERIAL PRIMARY KEY,
 LOGIN VARCHAR(255) UNIQUE,
 PASSWORD VARCHAR(255) NOT NULL,
-BALANCE DECIMAL(19, 4) DEFAULT 0
+BALANCE BIGINT DEFAULT 0
 );
+
+CREATE TABLE LEDGER (
+ID BIGSERIAL PRIMARY KEY,
+LOGIN VARCHAR(255) NOT NULL,
+AMOUNT BIGINT NOT NULL,
+OPERATION VARCHAR(16) NOT NULL,
+COUNTERPARTY VARCHAR(255),
+CREATED_AT TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX LEDGER_LOGIN_IDX ON LEDGER (LOGIN);
@@ -0,0 +1,14 @@
+-- Converts balances and ledger amounts from DECIMAL(19, 4) to BIGINT counts of 1/10000 units.
+-- Run once, with the application stopped: rows written by the previous version in between would be misread.
+-- Every existing value has at most four decimal places, so the conversion is exact. Values above
+-- 922337203685477.5807 do not fit and make the ALTER fail, leaving the table unchanged.
+
+BEGIN;
+
+ALTER TABLE CLIENTS ALTER COLUMN BALANCE DROP DEFAULT;
+ALTER TABLE CLIENTS ALTER COLUMN BALANCE TYPE BIGINT USING (BALANCE * 10000)::BIGINT;
+ALTER TABLE CLIENTS ALTER COLUMN BALANCE SET DEFAULT 0;
+
+ALTER TABLE LEDGER ALTER COLUMN AMOUNT TYPE BIGINT USING (AMOUNT * 10000)::BIGINT;
+
+COMMIT;
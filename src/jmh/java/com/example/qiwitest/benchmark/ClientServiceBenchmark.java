@@ -0,0 +1,96 @@
+package com.example.qiwitest.benchmark;
+
+import com.example.qiwitest.config.MoneyConfig;
+import com.example.qiwitest.metrics.ApiMetrics;
+import com.example.qiwitest.model.Client;
+import com.example.qiwitest.repository.ClientRepository;
+import com.example.qiwitest.repository.R2dbcClientStore;
+import com.example.qiwitest.repository.ReplicaRouter;
+import com.example.qiwitest.repository.ShardRouter;
+import com.example.qiwitest.service.ClientCache;
+import com.example.qiwitest.service.ClientService;
+import com.example.qiwitest.service.LedgerWriter;
+import com.example.qiwitest.service.LoginFilter;
+import com.example.qiwitest.service.LookupBatcher;
+import com.example.qiwitest.service.LookupCoalescer;
+import com.example.qiwitest.service.PasswordHasher;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.data.r2dbc.repository.support.R2dbcRepositoryFactory;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ClientService} lookups against an in-memory H2 database through R2DBC, with and without the client cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ClientServiceBenchmark {
+
+    private static final String LOGIN = "123456";
+    private static final String PASSWORD = "pwd";
+
+    @Param({"false", "true"})
+    public boolean cacheEnabled;
+
+    private ConnectionPool pool;
+    private PasswordHasher passwordHasher;
+    private ClientService clientService;
+
+    @Setup
+    public void setUp() {
+        pool = new ConnectionPool(ConnectionPoolConfiguration.builder(
+                ConnectionFactories.get("r2dbc:h2:mem:///service;DB_CLOSE_DELAY=-1;MODE=PostgreSQL"))
+            .maxSize(4)
+            .build());
+        DatabaseClient.create(pool)
+            .sql("CREATE TABLE IF NOT EXISTS CLIENTS (ID BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                + "LOGIN VARCHAR(255) UNIQUE, PASSWORD VARCHAR(255) NOT NULL, BALANCE BIGINT DEFAULT 0)")
+            .then()
+            .block();
+
+        ClientRepository repository = new R2dbcRepositoryFactory(MoneyConfig.entityTemplate(pool))
+            .getRepository(ClientRepository.class);
+        ClientCache cache = cacheEnabled ? new ClientCache(true, 1_000, Duration.ofMinutes(1)) : ClientCache.disabled();
+        passwordHasher = new PasswordHasher(1_000, 1, 100, Duration.ofMinutes(1), 1_000);
+        R2dbcClientStore store = new R2dbcClientStore(repository,
+            TransactionalOperator.create(new R2dbcTransactionManager(pool)));
+        clientService = new ClientService(store, cache, LoginFilter.disabled(), LookupCoalescer.disabled(),
+            LookupBatcher.disabled(), passwordHasher, LedgerWriter.disabled(), ReplicaRouter.disabled(),
+            ShardRouter.disabled(), ApiMetrics.disabled());
+        clientService.createIfAbsent(LOGIN, PASSWORD).block();
+    }
+
+    @TearDown
+    public void tearDown() {
+        passwordHasher.close();
+        pool.dispose();
+    }
+
+    @Benchmark
+    public Client findByLogin() {
+        return clientService.findByLogin(LOGIN).block();
+    }
+
+    @Benchmark
+    public Boolean findAndCheckPassword() {
+        Mono<Client> client = clientService.findByLogin(LOGIN).cache();
+        return clientService.isPasswordCorrect(client, PASSWORD).block();
+    }
+}
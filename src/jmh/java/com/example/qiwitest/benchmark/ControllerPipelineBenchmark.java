@@ -0,0 +1,132 @@
+package com.example.qiwitest.benchmark;
+
+import com.example.qiwitest.codec.RequestDtoDecoder;
+import com.example.qiwitest.codec.ResponseDtoEncoder;
+import com.example.qiwitest.controller.AdmissionControl;
+import com.example.qiwitest.controller.ApiHandler;
+import com.example.qiwitest.dto.RequestDto;
+import com.example.qiwitest.dto.ResponseDto;
+import com.example.qiwitest.metrics.ApiMetrics;
+import com.example.qiwitest.model.Client;
+import com.example.qiwitest.model.Money;
+import com.example.qiwitest.operation.CreateClientOperation;
+import com.example.qiwitest.operation.GetBalanceOperation;
+import com.example.qiwitest.operation.OperationRegistry;
+import com.example.qiwitest.repository.ReplicaRouter;
+import com.example.qiwitest.repository.ShardRouter;
+import com.example.qiwitest.service.ClientCache;
+import com.example.qiwitest.service.ClientService;
+import com.example.qiwitest.service.LedgerWriter;
+import com.example.qiwitest.service.LoginFilter;
+import com.example.qiwitest.service.LookupBatcher;
+import com.example.qiwitest.service.LookupCoalescer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.MimeTypeUtils;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decode, {@link ApiHandler} validation and dispatch, and encode of one request against an in-memory {@link ClientService},
+ * i.e. everything a request costs apart from Netty and the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ControllerPipelineBenchmark {
+
+    private static final ResolvableType REQUEST_TYPE = ResolvableType.forClass(RequestDto.class);
+    private static final ResolvableType RESPONSE_TYPE = ResolvableType.forClass(ResponseDto.class);
+
+    @Param({"GET-BALANCE", "CREATE-AGT"})
+    public String requestType;
+
+    private final RequestDtoDecoder decoder = new RequestDtoDecoder();
+    private final ResponseDtoEncoder encoder = new ResponseDtoEncoder();
+    private final DataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+
+    private ApiHandler handler;
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        handler = stubHandler();
+        body = ("""
+                <?xml version="1.0" encoding="UTF-8"?>
+                <request>
+                        <request-type>%s</request-type>
+                        <extra name="login">123456</extra>
+                        <extra name="password">pwd</extra>
+                </request>""").formatted(requestType).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int process() {
+        RequestDto request = decoder.decode(bufferFactory.wrap(body), REQUEST_TYPE, null, Collections.emptyMap());
+        if (!handler.isValid(request)) {
+            throw new IllegalStateException("Invalid request " + request);
+        }
+        ResponseDto response = handler.execute(request).block();
+        DataBuffer buffer = encoder.encodeValue(response, bufferFactory, RESPONSE_TYPE,
+            MimeTypeUtils.APPLICATION_XML, Collections.emptyMap());
+        int size = buffer.readableByteCount();
+        DataBufferUtils.release(buffer);
+        return size;
+    }
+
+    /**
+     * A handler for CREATE-AGT and GET-BALANCE on top of {@link StubClientService}
+     */
+    static ApiHandler stubHandler() {
+        ApiMetrics metrics = ApiMetrics.disabled();
+        ClientService clientService = new StubClientService();
+        OperationRegistry registry = new OperationRegistry(List.of(
+            new CreateClientOperation(clientService, metrics),
+            new GetBalanceOperation(clientService, metrics)), metrics);
+        return new ApiHandler(registry, clientService, 1000, AdmissionControl.disabled(), metrics);
+    }
+
+    /**
+     * Answers from constants: the client exists, the password matches and creates always succeed
+     */
+    static class StubClientService extends ClientService {
+
+        private final Client client = new Client("123456", "pwd", Money.parse("100.0000"));
+
+        StubClientService() {
+            super(null, ClientCache.disabled(), LoginFilter.disabled(), LookupCoalescer.disabled(),
+                LookupBatcher.disabled(), null, LedgerWriter.disabled(), ReplicaRouter.disabled(),
+                ShardRouter.disabled(), ApiMetrics.disabled());
+        }
+
+        @Override
+        public Mono<Client> findByLogin(String login) {
+            return Mono.just(client);
+        }
+
+        @Override
+        public Mono<Boolean> createIfAbsent(String login, String password) {
+            return Mono.just(Boolean.TRUE);
+        }
+
+        @Override
+        public Mono<Boolean> isPasswordCorrect(Mono<Client> clientMono, String password) {
+            return Mono.just(Boolean.TRUE);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.qiwitest.benchmark;
+
+import com.example.qiwitest.config.CodecConfig;
+import com.example.qiwitest.config.RouterConfig;
+import com.example.qiwitest.controller.AdmissionControl;
+import com.example.qiwitest.controller.ApiHandler;
+import com.example.qiwitest.dto.RequestDto;
+import com.example.qiwitest.dto.ResponseDto;
+import com.example.qiwitest.metrics.ApiMetrics;
+import com.example.qiwitest.operation.CreateClientOperation;
+import com.example.qiwitest.operation.DepositOperation;
+import com.example.qiwitest.operation.GetBalanceOperation;
+import com.example.qiwitest.operation.OperationRegistry;
+import com.example.qiwitest.operation.TransferOperation;
+import com.example.qiwitest.operation.WithdrawOperation;
+import com.example.qiwitest.service.ClientService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch cost of the functional routes with the {@link OperationRegistry}, compared with the annotated
+ * controller and the string if/else chain they replaced.
+ * <p>
+ * {@code ifElseChain} and {@code registryLookup} isolate the request type lookup; the chain gets slower the
+ * further down the type is, the lookup does not. {@code annotatedController} and {@code functionalRouter}
+ * send the same request through the whole WebFlux stack (without a network) in front of the same handler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DispatchBenchmark {
+
+    @Param({"CREATE-AGT", "TRANSFER"})
+    public String requestType;
+
+    private OperationRegistry registry;
+    private WebTestClient annotatedClient;
+    private WebTestClient functionalClient;
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        ApiMetrics metrics = ApiMetrics.disabled();
+        ClientService clientService = new ControllerPipelineBenchmark.StubClientService();
+        registry = new OperationRegistry(List.of(
+            new CreateClientOperation(clientService, metrics),
+            new GetBalanceOperation(clientService, metrics),
+            new DepositOperation(clientService, metrics),
+            new WithdrawOperation(clientService, metrics),
+            new TransferOperation(clientService, metrics)), metrics);
+        ApiHandler handler = new ApiHandler(registry, clientService, 1000, AdmissionControl.disabled(), metrics);
+        CodecConfig codecs = new CodecConfig(false, metrics);
+
+        annotatedClient = WebTestClient.bindToController(new AnnotatedController(handler))
+            .httpMessageCodecs(codecs::configureHttpMessageCodecs)
+            .build();
+        functionalClient = WebTestClient.bindToRouterFunction(new RouterConfig().apiRoutes(handler))
+            .handlerStrategies(HandlerStrategies.builder().codecs(codecs::configureHttpMessageCodecs).build())
+            .build();
+
+        // GET-BALANCE is what every client sends; the request type parameter only matters for the lookups
+        body = """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <request>
+                        <request-type>GET-BALANCE</request-type>
+                        <extra name="login">123456</extra>
+                        <extra name="password">pwd</extra>
+                </request>""".getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int ifElseChain() {
+        String type = requestType;
+        if (type.equals("CREATE-AGT")) {
+            return 0;
+        } else if (type.equals("GET-BALANCE")) {
+            return 1;
+        } else if (type.equals("DEPOSIT")) {
+            return 2;
+        } else if (type.equals("WITHDRAW")) {
+            return 3;
+        } else if (type.equals("TRANSFER")) {
+            return 4;
+        }
+        return -1;
+    }
+
+    @Benchmark
+    public Object registryLookup() {
+        return registry.find(requestType);
+    }
+
+    @Benchmark
+    public byte[] annotatedController() {
+        return post(annotatedClient);
+    }
+
+    @Benchmark
+    public byte[] functionalRouter() {
+        return post(functionalClient);
+    }
+
+    private byte[] post(WebTestClient client) {
+        return client.post()
+            .uri("/")
+            .contentType(MediaType.APPLICATION_XML)
+            .bodyValue(body)
+            .exchange()
+            .expectBody(byte[].class)
+            .returnResult()
+            .getResponseBody();
+    }
+
+    /**
+     * The annotated-controller equivalent of the "/" route
+     */
+    @RestController
+    static class AnnotatedController {
+
+        private final ApiHandler handler;
+
+        AnnotatedController(ApiHandler handler) {
+            this.handler = handler;
+        }
+
+        @PostMapping(value = "/",
+                    consumes = MediaType.APPLICATION_XML_VALUE,
+                    produces = MediaType.APPLICATION_XML_VALUE)
+        public Mono<ResponseEntity<ResponseDto>> process(@RequestBody RequestDto request) {
+            if (!handler.isValid(request)) {
+                return Mono.just(ResponseEntity.badRequest().body(null));
+            }
+            return handler.execute(request).map(ResponseEntity::ok);
+        }
+    }
+}
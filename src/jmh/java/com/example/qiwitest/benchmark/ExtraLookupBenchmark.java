@@ -0,0 +1,48 @@
+package com.example.qiwitest.benchmark;
+
+import com.example.qiwitest.dto.RequestDto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link RequestDto#getExtraValue} for the fixed login field and for an extra kept in the map.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ExtraLookupBenchmark {
+
+    private RequestDto request;
+
+    @Setup
+    public void setUp() {
+        request = new RequestDto();
+        request.setRequestType("TRANSFER");
+        request.putExtra(RequestDto.LOGIN, "123456");
+        request.putExtra(RequestDto.PASSWORD, "pwd");
+        request.putExtra("amount", "10.00");
+        request.putExtra("recipient", "654321");
+    }
+
+    @Benchmark
+    public String login() {
+        return request.getExtraValue(RequestDto.LOGIN);
+    }
+
+    @Benchmark
+    public String otherExtra() {
+        return request.getExtraValue("recipient");
+    }
+
+    @Benchmark
+    public String missingExtra() {
+        return request.getExtraValue("missing");
+    }
+}
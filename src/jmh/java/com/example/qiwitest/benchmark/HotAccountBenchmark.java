@@ -0,0 +1,107 @@
+package com.example.qiwitest.benchmark;
+
+import com.example.qiwitest.model.Money;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Many writers hitting one account. Compares the conditional single-statement update used by
+ * DEPOSIT and WITHDRAW with a read-modify-write of the row. At the end of each iteration the
+ * balance is checked against the number of successful deposits and lost updates are printed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(16)
+public class HotAccountBenchmark {
+
+    private static final String LOGIN = "hot";
+
+    private ConnectionPool pool;
+    private DatabaseClient client;
+    private final AtomicLong deposits = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = new ConnectionPool(ConnectionPoolConfiguration.builder(
+                ConnectionFactories.get("r2dbc:h2:mem:///hot;DB_CLOSE_DELAY=-1;MODE=PostgreSQL"))
+            .maxSize(16)
+            .build());
+        client = DatabaseClient.create(pool);
+        client.sql("CREATE TABLE IF NOT EXISTS CLIENTS (ID BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                + "LOGIN VARCHAR(255) UNIQUE, PASSWORD VARCHAR(255) NOT NULL, BALANCE BIGINT DEFAULT 0)")
+            .then()
+            .then(client.sql("INSERT INTO clients (login, password, balance) VALUES (:login, 'pwd', 0) ON CONFLICT DO NOTHING")
+                .bind("login", LOGIN)
+                .then())
+            .block();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetBalance() {
+        client.sql("UPDATE clients SET balance = 0 WHERE login = :login")
+            .bind("login", LOGIN)
+            .then()
+            .block();
+        deposits.set(0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportLostUpdates() {
+        Money balance = client.sql("SELECT balance FROM clients WHERE login = :login")
+            .bind("login", LOGIN)
+            .map(row -> Money.ofUnits(row.get("balance", Long.class)))
+            .one()
+            .block();
+        long lost = deposits.get() - balance.units() / Money.UNITS_PER_WHOLE;
+        System.out.println("deposits=" + deposits.get() + " balance=" + balance + " lost=" + lost);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.dispose();
+    }
+
+    @Benchmark
+    public Long conditionalUpdate() {
+        Long rows = client.sql("UPDATE clients SET balance = balance + :amount WHERE login = :login AND balance + :amount >= 0")
+            .bind("amount", Money.UNITS_PER_WHOLE)
+            .bind("login", LOGIN)
+            .fetch()
+            .rowsUpdated()
+            .block();
+        deposits.incrementAndGet();
+        return rows;
+    }
+
+    @Benchmark
+    public Long readModifyWrite() {
+        Long rows = client.sql("SELECT balance FROM clients WHERE login = :login")
+            .bind("login", LOGIN)
+            .map(row -> row.get("balance", Long.class))
+            .one()
+            .flatMap(balance -> client.sql("UPDATE clients SET balance = :balance WHERE login = :login")
+                .bind("balance", balance + Money.UNITS_PER_WHOLE)
+                .bind("login", LOGIN)
+                .fetch()
+                .rowsUpdated())
+            .block();
+        deposits.incrementAndGet();
+        return rows;
+    }
+}
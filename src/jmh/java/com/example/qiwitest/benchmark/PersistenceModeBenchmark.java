@@ -0,0 +1,128 @@
+package com.example.qiwitest.benchmark;
+
+import com.example.qiwitest.config.MoneyConfig;
+import com.example.qiwitest.model.Client;
+import com.example.qiwitest.model.Money;
+import com.example.qiwitest.repository.ClientRepository;
+import com.example.qiwitest.repository.ClientStore;
+import com.example.qiwitest.repository.JdbcClientStore;
+import com.example.qiwitest.repository.R2dbcClientStore;
+import com.zaxxer.hikari.HikariDataSource;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.data.r2dbc.repository.support.R2dbcRepositoryFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The R2DBC and the JDBC-on-virtual-threads {@link ClientStore} side by side, on the same in-memory H2 data and
+ * with the same number of pooled connections. 32 callers run point lookups and conditional balance updates
+ * concurrently. Throughput and the sampled latency percentiles (p0.99) come from JMH, allocation per operation
+ * from the GC profiler, and the heap still in use after a full GC is printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(32)
+public class PersistenceModeBenchmark {
+
+    private static final int CLIENTS = 10_000;
+    private static final int POOL_SIZE = 10;
+    private static final Money AMOUNT = Money.parse("1.0000");
+
+    @Param({"r2dbc", "jdbc"})
+    public String persistence;
+
+    private ConnectionPool pool;
+    private HikariDataSource dataSource;
+    private ClientStore store;
+
+    @Setup
+    public void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:persistence-modes;DB_CLOSE_DELAY=-1;MODE=PostgreSQL");
+        dataSource.setUsername("sa");
+        dataSource.setMaximumPoolSize(POOL_SIZE);
+        dataSource.setMinimumIdle(POOL_SIZE);
+        seed(new JdbcTemplate(dataSource));
+
+        if (persistence.equals("jdbc")) {
+            store = new JdbcClientStore(dataSource);
+        } else {
+            // Only the R2DBC pool stays open, so the heap holds one stack
+            dataSource.close();
+            dataSource = null;
+            pool = new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(
+                    "r2dbc:h2:mem:///persistence-modes;DB_CLOSE_DELAY=-1;MODE=PostgreSQL"))
+                .initialSize(POOL_SIZE)
+                .maxSize(POOL_SIZE)
+                .build());
+            ClientRepository repository = new R2dbcRepositoryFactory(MoneyConfig.entityTemplate(pool))
+                .getRepository(ClientRepository.class);
+            store = new R2dbcClientStore(repository, TransactionalOperator.create(new R2dbcTransactionManager(pool)));
+        }
+    }
+
+    private static void seed(JdbcTemplate jdbc) {
+        jdbc.execute("CREATE TABLE IF NOT EXISTS clients (id BIGSERIAL PRIMARY KEY, login VARCHAR(255) UNIQUE, "
+            + "password VARCHAR(255) NOT NULL, balance BIGINT DEFAULT 0)");
+        jdbc.execute("DELETE FROM clients");
+        List<Object[]> rows = new ArrayList<>(CLIENTS);
+        for (int i = 0; i < CLIENTS; i++) {
+            rows.add(new Object[] {login(i), "pwd", Money.parse("1000000.0000").units()});
+        }
+        jdbc.batchUpdate("INSERT INTO clients (login, password, balance) VALUES (?, ?, ?)", rows);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.gc();
+        long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        System.out.printf("%n%s: %.1f MB of heap in use after GC%n", persistence, used / (1024.0 * 1024.0));
+        if (store instanceof JdbcClientStore jdbcStore) {
+            jdbcStore.close();
+        }
+        if (pool != null) {
+            pool.dispose();
+        }
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    @Benchmark
+    public Client findByLogin() {
+        return store.findByLogin(randomLogin()).block();
+    }
+
+    @Benchmark
+    public Integer addToBalance() {
+        return store.addToBalance(randomLogin(), AMOUNT).block();
+    }
+
+    private static String randomLogin() {
+        return login(ThreadLocalRandom.current().nextInt(CLIENTS));
+    }
+
+    private static String login(int index) {
+        return "client-" + index;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.qiwitest.benchmark;
+
+import com.example.qiwitest.codec.RequestDtoDecoder;
+import com.example.qiwitest.dto.RequestDto;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the Jackson databinding path for {@link RequestDto} with the StAX {@link RequestDtoDecoder}.
+ * Run with the gc profiler (the default for ./gradlew jmh) and compare {@code gc.alloc.rate.norm},
+ * the bytes allocated per decoded request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RequestDecodingBenchmark {
+
+    private static final String GET_BALANCE_XML = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <request>
+                    <request-type>GET-BALANCE</request-type>
+                    <extra name="login">123456</extra>
+                    <extra name="password">pwd</extra>
+            </request>""";
+
+    private static final ResolvableType REQUEST_TYPE = ResolvableType.forClass(RequestDto.class);
+
+    private final XmlMapper xmlMapper = new XmlMapper();
+    private final RequestDtoDecoder decoder = new RequestDtoDecoder();
+    private final DataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        body = GET_BALANCE_XML.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void jacksonDatabind(Blackhole blackhole) throws IOException {
+        RequestDto request = xmlMapper.readValue(body, RequestDto.class);
+        blackhole.consume(request.getRequestType());
+        blackhole.consume(request.getExtraValue(RequestDto.LOGIN));
+        blackhole.consume(request.getExtraValue(RequestDto.PASSWORD));
+    }
+
+    @Benchmark
+    public void staxDecoder(Blackhole blackhole) {
+        RequestDto request = decoder.decode(bufferFactory.wrap(body), REQUEST_TYPE, null, Collections.emptyMap());
+        blackhole.consume(request.getRequestType());
+        blackhole.consume(request.getLogin());
+        blackhole.consume(request.getPassword());
+    }
+}
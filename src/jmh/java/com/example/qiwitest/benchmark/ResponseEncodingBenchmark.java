@@ -0,0 +1,59 @@
+package com.example.qiwitest.benchmark;
+
+import com.example.qiwitest.codec.ResponseDtoEncoder;
+import com.example.qiwitest.dto.ResponseDto;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares Jackson serialization of a GET-BALANCE {@link ResponseDto} with the pre-encoded {@link ResponseDtoEncoder}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ResponseEncodingBenchmark {
+
+    private static final ResolvableType RESPONSE_TYPE = ResolvableType.forClass(ResponseDto.class);
+
+    private final XmlMapper xmlMapper = new XmlMapper();
+    private final ResponseDtoEncoder encoder = new ResponseDtoEncoder();
+    private final DataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+
+    private ResponseDto response;
+
+    @Setup
+    public void setUp() {
+        response = new ResponseDto(0);
+        response.addExtra("balance", "1234.5600");
+    }
+
+    @Benchmark
+    public byte[] jacksonDatabind() throws JsonProcessingException {
+        return xmlMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public int encoder() {
+        DataBuffer buffer = encoder.encodeValue(response, bufferFactory, RESPONSE_TYPE,
+            MimeTypeUtils.APPLICATION_XML, Collections.emptyMap());
+        int size = buffer.readableByteCount();
+        DataBufferUtils.release(buffer);
+        return size;
+    }
+}
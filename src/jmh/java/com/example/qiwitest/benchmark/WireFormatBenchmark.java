@@ -0,0 +1,181 @@
+package com.example.qiwitest.benchmark;
+
+import com.example.qiwitest.codec.BatchRequestDtoDecoder;
+import com.example.qiwitest.codec.BatchResponseDtoEncoder;
+import com.example.qiwitest.codec.JacksonRequestDecoder;
+import com.example.qiwitest.codec.JacksonResponseEncoder;
+import com.example.qiwitest.codec.RequestDtoDecoder;
+import com.example.qiwitest.codec.ResponseDtoEncoder;
+import com.example.qiwitest.dto.BatchRequestDto;
+import com.example.qiwitest.dto.BatchResponseDto;
+import com.example.qiwitest.dto.RequestDto;
+import com.example.qiwitest.dto.ResponseDto;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Decoder;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares XML, JSON and CBOR on the API: decode time of a DEPOSIT request and of a batch of
+ * {@value #BATCH_SIZE}, and encode time of the matching responses. The encoded sizes (bytes on the wire)
+ * are printed once per format when the trial starts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WireFormatBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    private static final ResolvableType REQUEST_TYPE = ResolvableType.forClass(RequestDto.class);
+    private static final ResolvableType BATCH_REQUEST_TYPE = ResolvableType.forClass(BatchRequestDto.class);
+    private static final ResolvableType RESPONSE_TYPE = ResolvableType.forClass(ResponseDto.class);
+    private static final ResolvableType BATCH_RESPONSE_TYPE = ResolvableType.forClass(BatchResponseDto.class);
+
+    @Param({"xml", "json", "cbor"})
+    private String format;
+
+    private final DataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+
+    private MediaType mediaType;
+    private Decoder<?> requestDecoder;
+    private Decoder<?> batchDecoder;
+    private Encoder<Object> responseEncoder;
+    private Encoder<Object> batchEncoder;
+
+    private byte[] request;
+    private byte[] batchRequest;
+    private ResponseDto response;
+    private BatchResponseDto batchResponse;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws IOException {
+        response = new ResponseDto(0);
+        response.addExtra("balance", "1234.5600");
+        List<ResponseDto> responses = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            responses.add(response);
+        }
+        batchResponse = new BatchResponseDto(responses);
+
+        if (format.equals("xml")) {
+            mediaType = MediaType.APPLICATION_XML;
+            ResponseDtoEncoder xmlEncoder = new ResponseDtoEncoder();
+            requestDecoder = new RequestDtoDecoder();
+            batchDecoder = new BatchRequestDtoDecoder();
+            responseEncoder = (Encoder<Object>) (Encoder<?>) xmlEncoder;
+            batchEncoder = (Encoder<Object>) (Encoder<?>) new BatchResponseDtoEncoder(xmlEncoder);
+            request = xmlRequest(1);
+            batchRequest = xmlRequest(BATCH_SIZE);
+        } else {
+            JsonFactory factory = format.equals("json") ? new JsonFactory() : new CBORFactory();
+            mediaType = format.equals("json") ? MediaType.APPLICATION_JSON : MediaType.APPLICATION_CBOR;
+            JacksonRequestDecoder decoder = new JacksonRequestDecoder(factory, mediaType);
+            JacksonResponseEncoder encoder = new JacksonResponseEncoder(factory, mediaType);
+            requestDecoder = decoder;
+            batchDecoder = decoder;
+            responseEncoder = encoder;
+            batchEncoder = encoder;
+            request = jacksonRequest(factory, 1);
+            batchRequest = jacksonRequest(factory, BATCH_SIZE);
+        }
+
+        System.out.printf("%n%s bytes: request=%d response=%d batch request=%d batch response=%d%n", format,
+            request.length, encodeResponse(), batchRequest.length, encodeBatch());
+    }
+
+    @Benchmark
+    public Object decodeRequest() {
+        return requestDecoder.decode(bufferFactory.wrap(request), REQUEST_TYPE, mediaType, Collections.emptyMap());
+    }
+
+    @Benchmark
+    public Object decodeBatch() {
+        return batchDecoder.decode(bufferFactory.wrap(batchRequest), BATCH_REQUEST_TYPE, mediaType,
+            Collections.emptyMap());
+    }
+
+    @Benchmark
+    public int encodeResponse() {
+        DataBuffer buffer = responseEncoder.encodeValue(response, bufferFactory, RESPONSE_TYPE, mediaType,
+            Collections.emptyMap());
+        int size = buffer.readableByteCount();
+        DataBufferUtils.release(buffer);
+        return size;
+    }
+
+    @Benchmark
+    public int encodeBatch() {
+        DataBuffer buffer = batchEncoder.encodeValue(batchResponse, bufferFactory, BATCH_RESPONSE_TYPE, mediaType,
+            Collections.emptyMap());
+        int size = buffer.readableByteCount();
+        DataBufferUtils.release(buffer);
+        return size;
+    }
+
+    private static byte[] xmlRequest(int count) {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        if (count > 1) {
+            xml.append("<requests>");
+        }
+        for (int i = 0; i < count; i++) {
+            xml.append("<request><request-type>DEPOSIT</request-type>")
+                .append("<extra name=\"login\">").append(100000 + i).append("</extra>")
+                .append("<extra name=\"password\">secret</extra>")
+                .append("<extra name=\"amount\">10.50</extra></request>");
+        }
+        if (count > 1) {
+            xml.append("</requests>");
+        }
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] jacksonRequest(JsonFactory factory, int count) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (JsonGenerator generator = factory.createGenerator(output)) {
+            if (count > 1) {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("requests");
+            }
+            for (int i = 0; i < count; i++) {
+                generator.writeStartObject();
+                generator.writeStringField("request-type", "DEPOSIT");
+                generator.writeObjectFieldStart("extra");
+                generator.writeStringField("login", String.valueOf(100000 + i));
+                generator.writeStringField("password", "secret");
+                generator.writeStringField("amount", "10.50");
+                generator.writeEndObject();
+                generator.writeEndObject();
+            }
+            if (count > 1) {
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+        }
+        return output.toByteArray();
+    }
+}
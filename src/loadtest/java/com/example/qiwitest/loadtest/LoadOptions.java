@@ -0,0 +1,93 @@
+package com.example.qiwitest.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Load test settings, parsed from {@code --name=value} arguments. Arguments the load test does not know
+ * are handed to the application, so e.g. {@code --qiwitest.cache.enabled=false} configures the server.
+ *
+ * @param mode closed (each connection sends its next request when the previous one is answered)
+ *             or open (requests are sent at a fixed rate whatever the response times)
+ * @param connections the number of HTTP connections
+ * @param rate requests per second in the open model
+ * @param maxInFlight the most requests outstanding at once in the open model
+ * @param warmup how long to send load before measuring
+ * @param duration how long to measure
+ * @param logins the number of clients created before the run; GET-BALANCE picks one of them at random
+ * @param createRatio the share of CREATE-AGT requests, each for a new login
+ * @param protocol http11, or h2c for HTTP/2 cleartext (the server needs {@code server.http2.enabled})
+ * @param histogramFile where to write the full latency distribution (HdrHistogram .hgrm format), or null
+ * @param applicationArgs the arguments passed on to the application
+ */
+public record LoadOptions(String mode,
+                          int connections,
+                          int rate,
+                          int maxInFlight,
+                          Duration warmup,
+                          Duration duration,
+                          int logins,
+                          double createRatio,
+                          String protocol,
+                          String histogramFile,
+                          String[] applicationArgs) {
+
+    public static final String CLOSED = "closed";
+    public static final String OPEN = "open";
+    public static final String HTTP11 = "http11";
+    public static final String H2C = "h2c";
+
+    public static LoadOptions parse(String[] args) {
+        String mode = CLOSED;
+        int connections = 64;
+        int rate = 1000;
+        int maxInFlight = 10_000;
+        Duration warmup = Duration.ofSeconds(10);
+        Duration duration = Duration.ofSeconds(30);
+        int logins = 1000;
+        double createRatio = 0.1;
+        String protocol = HTTP11;
+        String histogramFile = null;
+        List<String> applicationArgs = new ArrayList<>();
+
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                applicationArgs.add(arg);
+                continue;
+            }
+            String value = arg.substring(equals + 1);
+            switch (arg.substring(2, equals)) {
+                case "mode" -> mode = value;
+                case "connections" -> connections = Integer.parseInt(value);
+                case "rate" -> rate = Integer.parseInt(value);
+                case "max-in-flight" -> maxInFlight = Integer.parseInt(value);
+                case "warmup" -> warmup = DurationStyle.detectAndParse(value);
+                case "duration" -> duration = DurationStyle.detectAndParse(value);
+                case "logins" -> logins = Integer.parseInt(value);
+                case "create-ratio" -> createRatio = Double.parseDouble(value);
+                case "protocol" -> protocol = value;
+                case "histogram-file" -> histogramFile = value;
+                default -> applicationArgs.add(arg);
+            }
+        }
+
+        if (!mode.equals(CLOSED) && !mode.equals(OPEN)) {
+            throw new IllegalArgumentException("--mode must be " + CLOSED + " or " + OPEN + ", got " + mode);
+        }
+        if (!protocol.equals(HTTP11) && !protocol.equals(H2C)) {
+            throw new IllegalArgumentException("--protocol must be " + HTTP11 + " or " + H2C + ", got " + protocol);
+        }
+        if (connections < 1 || rate < 1 || maxInFlight < 1 || logins < 1) {
+            throw new IllegalArgumentException("--connections, --rate, --max-in-flight and --logins must be positive");
+        }
+        if (createRatio < 0 || createRatio > 1) {
+            throw new IllegalArgumentException("--create-ratio must be between 0 and 1, got " + createRatio);
+        }
+        return new LoadOptions(mode, connections, rate, maxInFlight, warmup, duration, logins, createRatio,
+            protocol, histogramFile, applicationArgs.toArray(new String[0]));
+    }
+}
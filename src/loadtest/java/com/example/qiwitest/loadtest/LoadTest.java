@@ -0,0 +1,258 @@
+package com.example.qiwitest.loadtest;
+
+import com.example.qiwitest.QiwiTestApplication;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Starts the application against in-memory H2 and drives mixed CREATE-AGT / GET-BALANCE traffic at POST /.
+ * <p>
+ * In the closed model every connection sends its next request as soon as the previous one is answered, so
+ * the offered load drops when the server slows down. In the open model requests are due at a fixed rate and
+ * latency is measured from the time a request was due, not from when it was actually sent, so a stalled
+ * server shows up in the percentiles instead of being hidden (no coordinated omission).
+ * <p>
+ * Run with {@code ./gradlew loadTest --args="--mode=open --rate=5000"}; see {@link LoadOptions} for the options.
+ */
+public final class LoadTest {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final String RESULT_CODE = "<result-code>";
+
+    private final LoadOptions options;
+    private final WebClient client;
+    private final ConnectionProvider connectionProvider;
+
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_MICROS, 3);
+    private final AtomicLongArray resultCodes = new AtomicLongArray(10);
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong newLogins = new AtomicLong();
+
+    private LoadTest(LoadOptions options, int port) {
+        this.options = options;
+        this.connectionProvider = ConnectionProvider.builder("loadtest")
+            .maxConnections(options.connections())
+            .pendingAcquireMaxCount(-1)
+            .build();
+        this.client = WebClient.builder()
+            .baseUrl("http://localhost:" + port)
+            .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)
+                .protocol(options.protocol().equals(LoadOptions.H2C) ? HttpProtocol.H2C : HttpProtocol.HTTP11)))
+            .build();
+    }
+
+    public static void main(String[] args) throws FileNotFoundException {
+        LoadOptions options = LoadOptions.parse(args);
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(QiwiTestApplication.class)
+            .profiles("loadtest")
+            .run(options.applicationArgs());
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            new LoadTest(options, port).run();
+        } finally {
+            context.close();
+        }
+    }
+
+    private void run() throws FileNotFoundException {
+        System.out.printf("Creating %d clients%n", options.logins());
+        Flux.range(0, options.logins())
+            .flatMap(i -> send(requestXml("CREATE-AGT", existingLogin(i)), System.nanoTime()), options.connections())
+            .blockLast();
+
+        System.out.printf("Warming up for %s%n", options.warmup());
+        phase(options.warmup());
+        recorder.reset();
+        for (int code = 0; code < resultCodes.length(); code++) {
+            resultCodes.set(code, 0);
+        }
+        errors.set(0);
+
+        System.out.printf("Measuring for %s (%s model)%n", options.duration(), options.mode());
+        HeapUsage heap = HeapUsage.start();
+        long start = System.nanoTime();
+        phase(options.duration());
+        long elapsed = System.nanoTime() - start;
+
+        report(recorder.getIntervalHistogram(), elapsed, heap);
+        connectionProvider.dispose();
+    }
+
+    private void phase(Duration duration) {
+        long deadline = System.nanoTime() + duration.toNanos();
+        if (options.mode().equals(LoadOptions.CLOSED)) {
+            Flux.range(0, options.connections())
+                .flatMap(connection -> Mono.defer(() -> send(nextRequest(), System.nanoTime()))
+                    .repeat(() -> System.nanoTime() < deadline), options.connections())
+                .blockLast();
+        } else {
+            long start = System.nanoTime();
+            double nanosPerRequest = 1e9 / options.rate();
+            long[] scheduled = new long[1];
+            // Every millisecond, release the requests that have become due since the last tick
+            Flux.interval(Duration.ofMillis(1))
+                .onBackpressureDrop()
+                .takeWhile(tick -> System.nanoTime() < deadline)
+                .concatMapIterable(tick -> {
+                    long due = (long) ((System.nanoTime() - start) / nanosPerRequest);
+                    List<Long> dueTimes = new ArrayList<>();
+                    for (; scheduled[0] < due; scheduled[0]++) {
+                        dueTimes.add(start + (long) (scheduled[0] * nanosPerRequest));
+                    }
+                    return dueTimes;
+                })
+                .flatMap(dueTime -> send(nextRequest(), dueTime), options.maxInFlight())
+                .blockLast();
+        }
+    }
+
+    private String nextRequest() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() < options.createRatio()) {
+            return requestXml("CREATE-AGT", "lt-new-" + newLogins.incrementAndGet());
+        }
+        return requestXml("GET-BALANCE", existingLogin(random.nextInt(options.logins())));
+    }
+
+    private Mono<Void> send(String body, long startNanos) {
+        return client.post()
+            .uri("/")
+            .contentType(MediaType.APPLICATION_XML)
+            .bodyValue(body)
+            .retrieve()
+            .bodyToMono(String.class)
+            .doOnNext(response -> {
+                long micros = (System.nanoTime() - startNanos) / 1000;
+                recorder.recordValue(Math.min(micros, HIGHEST_TRACKABLE_MICROS));
+                int index = response.indexOf(RESULT_CODE);
+                int code = index < 0 ? -1 : response.charAt(index + RESULT_CODE.length()) - '0';
+                if (code >= 0 && code < resultCodes.length()) {
+                    resultCodes.incrementAndGet(code);
+                } else {
+                    errors.incrementAndGet();
+                }
+            })
+            .onErrorResume(e -> {
+                errors.incrementAndGet();
+                return Mono.empty();
+            })
+            .then();
+    }
+
+    private void report(Histogram histogram, long elapsedNanos, HeapUsage heap) throws FileNotFoundException {
+        long requests = histogram.getTotalCount();
+        System.out.println();
+        System.out.printf("mode=%s protocol=%s connections=%d%s duration=%s%n", options.mode(), options.protocol(),
+            options.connections(), options.mode().equals(LoadOptions.OPEN) ? " rate=" + options.rate() : "",
+            options.duration());
+        System.out.printf("requests=%d errors=%d throughput=%.1f req/s%n",
+            requests, errors.get(), requests * 1e9 / elapsedNanos);
+        System.out.printf("latency ms: p50=%.3f p90=%.3f p99=%.3f p99.9=%.3f max=%.3f%n",
+            histogram.getValueAtPercentile(50) / 1000.0,
+            histogram.getValueAtPercentile(90) / 1000.0,
+            histogram.getValueAtPercentile(99) / 1000.0,
+            histogram.getValueAtPercentile(99.9) / 1000.0,
+            histogram.getMaxValue() / 1000.0);
+        StringBuilder codes = new StringBuilder("result codes:");
+        for (int code = 0; code < resultCodes.length(); code++) {
+            if (resultCodes.get(code) > 0) {
+                codes.append(' ').append(code).append('=').append(resultCodes.get(code));
+            }
+        }
+        System.out.println(codes);
+        // Client and server share the JVM, so this is the heap of both
+        System.out.printf("heap MB: peak=%.1f, gc: count=%d time=%dms%n",
+            heap.peakBytes() / (1024.0 * 1024.0), heap.gcCount(), heap.gcMillis());
+
+        if (options.histogramFile() != null) {
+            try (PrintStream out = new PrintStream(options.histogramFile())) {
+                histogram.outputPercentileDistribution(out, 1000.0);
+            }
+            System.out.printf("Latency distribution (ms) written to %s%n", options.histogramFile());
+        }
+    }
+
+    /**
+     * Peak heap and garbage collections since {@link #start()}
+     */
+    private record HeapUsage(long gcCountAtStart, long gcMillisAtStart) {
+
+        static HeapUsage start() {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    pool.resetPeakUsage();
+                }
+            }
+            return new HeapUsage(gcCount(0), gcMillis(0));
+        }
+
+        long peakBytes() {
+            long peak = 0;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    peak += pool.getPeakUsage().getUsed();
+                }
+            }
+            return peak;
+        }
+
+        long gcCount() {
+            return gcCount(gcCountAtStart);
+        }
+
+        long gcMillis() {
+            return gcMillis(gcMillisAtStart);
+        }
+
+        private static long gcCount(long since) {
+            long count = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(gc.getCollectionCount(), 0);
+            }
+            return count - since;
+        }
+
+        private static long gcMillis(long since) {
+            long millis = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                millis += Math.max(gc.getCollectionTime(), 0);
+            }
+            return millis - since;
+        }
+    }
+
+    private static String existingLogin(int index) {
+        return "lt-" + index;
+    }
+
+    private static String requestXml(String type, String login) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?><request><request-type>" + type
+            + "</request-type><extra name=\"login\">" + login
+            + "</extra><extra name=\"password\">pwd</extra></request>";
+    }
+}
@@ -0,0 +1,17 @@
+CREATE TABLE IF NOT EXISTS CLIENTS (
+ID BIGSERIAL PRIMARY KEY,
+LOGIN VARCHAR(255) UNIQUE,
+PASSWORD VARCHAR(255) NOT NULL,
+BALANCE BIGINT DEFAULT 0
+);
+
+CREATE TABLE IF NOT EXISTS LEDGER (
+ID BIGSERIAL PRIMARY KEY,
+LOGIN VARCHAR(255) NOT NULL,
+AMOUNT BIGINT NOT NULL,
+OPERATION VARCHAR(16) NOT NULL,
+COUNTERPARTY VARCHAR(255),
+CREATED_AT TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS LEDGER_LOGIN_IDX ON LEDGER (LOGIN);
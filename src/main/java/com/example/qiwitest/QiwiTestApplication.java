@@ -2,11 +2,13 @@ package com.example.qiwitest;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 
-@SpringBootApplication
+// The JDBC pool exists only in the jdbc persistence mode, see JdbcConfig
+@SpringBootApplication(exclude = DataSourceAutoConfiguration.class)
 public class QiwiTestApplication {
 
     public static void main(String[] args) {
         SpringApplication.run(QiwiTestApplication.class, args);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,86 @@
+package com.example.qiwitest.codec;
+
+import com.example.qiwitest.dto.BatchRequestDto;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractDataBufferDecoder;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes a {@code <requests>} envelope whose {@code <request>} children are read
+ * the same way {@link RequestDtoDecoder} reads a single request.
+ */
+public class BatchRequestDtoDecoder extends AbstractDataBufferDecoder<BatchRequestDto> {
+
+    static final String REQUESTS = "requests";
+
+    private static final XMLInputFactory INPUT_FACTORY = RequestDtoDecoder.createInputFactory();
+
+    private final Timer decodeTimer;
+
+    public BatchRequestDtoDecoder() {
+        this(null);
+    }
+
+    /**
+     * @param decodeTimer records the time spent decoding each batch, may be null
+     */
+    public BatchRequestDtoDecoder(Timer decodeTimer) {
+        super(MimeTypeUtils.APPLICATION_XML, MimeTypeUtils.TEXT_XML, new MimeType("application", "*+xml"));
+        this.decodeTimer = decodeTimer;
+    }
+
+    @Override
+    public boolean canDecode(ResolvableType elementType, MimeType mimeType) {
+        return BatchRequestDto.class == elementType.toClass() && super.canDecode(elementType, mimeType);
+    }
+
+    @Override
+    public BatchRequestDto decode(DataBuffer dataBuffer, ResolvableType targetType,
+                                  MimeType mimeType, Map<String, Object> hints) throws DecodingException {
+        long start = System.nanoTime();
+        try (InputStream input = dataBuffer.asInputStream(true)) {
+            XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(input);
+            try {
+                return readBatch(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException | IOException e) {
+            throw new DecodingException("Invalid XML batch request: " + e.getMessage(), e);
+        } finally {
+            if (decodeTimer != null) {
+                decodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private static BatchRequestDto readBatch(XMLStreamReader reader) throws XMLStreamException {
+        reader.nextTag();
+        if (!REQUESTS.equals(reader.getLocalName())) {
+            throw new DecodingException("Unexpected root element [" + reader.getLocalName() + "]");
+        }
+
+        BatchRequestDto batch = new BatchRequestDto();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (RequestDtoDecoder.REQUEST.equals(reader.getLocalName())) {
+                batch.addRequest(RequestDtoDecoder.readRequest(reader));
+            } else {
+                RequestDtoDecoder.skipElement(reader);
+            }
+        }
+        return batch;
+    }
+}
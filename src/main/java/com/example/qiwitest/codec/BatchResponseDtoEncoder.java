@@ -0,0 +1,77 @@
+package com.example.qiwitest.codec;
+
+import com.example.qiwitest.dto.BatchResponseDto;
+import com.example.qiwitest.dto.ResponseDto;
+import io.micrometer.core.instrument.Timer;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractEncoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a {@code <responses>} envelope into a single buffer, each child encoded
+ * by the shared {@link ResponseDtoEncoder}.
+ */
+public class BatchResponseDtoEncoder extends AbstractEncoder<BatchResponseDto> {
+
+    private final ResponseDtoEncoder responseEncoder;
+    private final byte[] open;
+    private final byte[] close;
+    private final Timer encodeTimer;
+
+    public BatchResponseDtoEncoder(ResponseDtoEncoder responseEncoder) {
+        this(responseEncoder, null);
+    }
+
+    /**
+     * @param responseEncoder encodes the individual responses
+     * @param encodeTimer records the time spent encoding each batch, may be null
+     */
+    public BatchResponseDtoEncoder(ResponseDtoEncoder responseEncoder, Timer encodeTimer) {
+        super(MimeTypeUtils.APPLICATION_XML, MimeTypeUtils.TEXT_XML, new MimeType("application", "*+xml"));
+        this.responseEncoder = responseEncoder;
+        this.encodeTimer = encodeTimer;
+        this.open = (responseEncoder.isIndent() ? "<responses>\n" : "<responses>").getBytes(StandardCharsets.US_ASCII);
+        this.close = (responseEncoder.isIndent() ? "</responses>\n" : "</responses>").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+        return BatchResponseDto.class.isAssignableFrom(elementType.toClass()) && super.canEncode(elementType, mimeType);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<? extends BatchResponseDto> inputStream, DataBufferFactory bufferFactory,
+                                   ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+        return Flux.from(inputStream).map(batch -> encodeValue(batch, bufferFactory, elementType, mimeType, hints));
+    }
+
+    @Override
+    public DataBuffer encodeValue(BatchResponseDto batch, DataBufferFactory bufferFactory,
+                                  ResolvableType valueType, MimeType mimeType, Map<String, Object> hints) {
+        long start = System.nanoTime();
+        int size = open.length + close.length;
+        for (ResponseDto response : batch.getResponses()) {
+            size += responseEncoder.encodedLength(response);
+        }
+
+        DataBuffer buffer = bufferFactory.allocateBuffer(size);
+        buffer.write(open);
+        for (ResponseDto response : batch.getResponses()) {
+            responseEncoder.write(response, buffer);
+        }
+        buffer.write(close);
+        if (encodeTimer != null) {
+            encodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.qiwitest.codec;
+
+import com.example.qiwitest.model.Client;
+import com.example.qiwitest.model.Money;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes the client export as XML, one buffer per page of clients:
+ * <pre>{@code
+ * <clients after="0"><client id="1" login="alice" balance="10.5000"/>...</clients>
+ * }</pre>
+ * Passwords are never written. A document cut short lacks the closing {@code </clients>}; the export resumes
+ * after the {@code id} of the last complete {@code <client/>}. Like {@link ResponseDtoEncoder}, each page is
+ * sized exactly and allocated once.
+ */
+public final class ClientExportWriter {
+
+    private static final byte[] DECLARATION = ascii("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    private static final byte[] CLIENTS_OPEN = ascii("<clients after=\"");
+    private static final byte[] CLIENTS_OPENED = ascii("\">");
+    private static final byte[] CLIENTS_CLOSE = ascii("</clients>\n");
+    private static final byte[] CLIENT_OPEN = ascii("<client id=\"");
+    private static final byte[] LOGIN = ascii("\" login=\"");
+    private static final byte[] BALANCE = ascii("\" balance=\"");
+    private static final byte[] CLIENT_CLOSE = ascii("\"/>\n");
+
+    private ClientExportWriter() {
+    }
+
+    /**
+     * @param after the ID the export starts after
+     */
+    public static DataBuffer header(DataBufferFactory bufferFactory, long after) {
+        byte[] id = ascii(Long.toString(after));
+        DataBuffer buffer = bufferFactory.allocateBuffer(
+            DECLARATION.length + CLIENTS_OPEN.length + id.length + CLIENTS_OPENED.length + 1);
+        return buffer.write(DECLARATION).write(CLIENTS_OPEN).write(id).write(CLIENTS_OPENED).write((byte) '\n');
+    }
+
+    public static DataBuffer footer(DataBufferFactory bufferFactory) {
+        return bufferFactory.allocateBuffer(CLIENTS_CLOSE.length).write(CLIENTS_CLOSE);
+    }
+
+    public static DataBuffer page(DataBufferFactory bufferFactory, List<Client> clients) {
+        DataBuffer buffer = bufferFactory.allocateBuffer(encodedLength(clients));
+        byte[] text = ResponseDtoEncoder.AMOUNT_TEXT.get();
+        for (Client client : clients) {
+            buffer.write(CLIENT_OPEN);
+            buffer.write(text, 0, formatId(text, client.getId()));
+            buffer.write(LOGIN);
+            ResponseDtoEncoder.writeEscaped(buffer, client.getLogin());
+            buffer.write(BALANCE);
+            buffer.write(text, 0, balance(client).formatTo(text, 0));
+            buffer.write(CLIENT_CLOSE);
+        }
+        return buffer;
+    }
+
+    /**
+     * Exact number of bytes {@link #page(DataBufferFactory, List)} writes
+     */
+    static int encodedLength(List<Client> clients) {
+        int size = 0;
+        for (Client client : clients) {
+            size += CLIENT_OPEN.length + digits(client.getId()) + LOGIN.length
+                + ResponseDtoEncoder.escapedLength(client.getLogin()) + BALANCE.length
+                + balance(client).formattedLength() + CLIENT_CLOSE.length;
+        }
+        return size;
+    }
+
+    private static Money balance(Client client) {
+        return client.getBalance() != null ? client.getBalance() : Money.ZERO;
+    }
+
+    private static int digits(long id) {
+        int digits = 1;
+        while (id >= 10) {
+            id /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    // IDs are positive; writes the digits at the start of the scratch array
+    private static int formatId(byte[] target, long id) {
+        int end = digits(id);
+        for (int position = end - 1; position >= 0; position--) {
+            target[position] = (byte) ('0' + id % 10);
+            id /= 10;
+        }
+        return end;
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
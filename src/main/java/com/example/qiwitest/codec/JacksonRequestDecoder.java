@@ -0,0 +1,134 @@
+package com.example.qiwitest.codec;
+
+import com.example.qiwitest.dto.BatchRequestDto;
+import com.example.qiwitest.dto.RequestDto;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractDataBufferDecoder;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.util.MimeType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes {@link RequestDto} and {@link BatchRequestDto} from JSON or from a binary encoding of the same
+ * data model (CBOR), depending on the {@link JsonFactory}. The document is read token by token with the
+ * Jackson streaming parser, so like {@link RequestDtoDecoder} nothing goes through databinding.
+ * <pre>
+ * {"request-type": "GET-BALANCE", "extra": {"login": "123456", "password": "pwd"}}
+ * {"requests": [{...}, {...}]}
+ * </pre>
+ * Scalar extras are kept as text, so {@code "amount": 10.5} and {@code "amount": "10.5"} decode the same.
+ */
+public class JacksonRequestDecoder extends AbstractDataBufferDecoder<Object> {
+
+    static final String REQUEST_TYPE = "request-type";
+    static final String EXTRA = "extra";
+    static final String REQUESTS = "requests";
+
+    private final JsonFactory factory;
+    private final Timer requestTimer;
+    private final Timer batchTimer;
+
+    public JacksonRequestDecoder(JsonFactory factory, MimeType... mimeTypes) {
+        this(factory, null, null, mimeTypes);
+    }
+
+    /**
+     * @param factory creates the parsers, a plain {@link JsonFactory} or one for a binary format
+     * @param requestTimer records the time spent decoding each request, may be null
+     * @param batchTimer records the time spent decoding each batch, may be null
+     * @param mimeTypes the content types the factory reads
+     */
+    public JacksonRequestDecoder(JsonFactory factory, Timer requestTimer, Timer batchTimer, MimeType... mimeTypes) {
+        super(mimeTypes);
+        this.factory = factory;
+        this.requestTimer = requestTimer;
+        this.batchTimer = batchTimer;
+    }
+
+    @Override
+    public boolean canDecode(ResolvableType elementType, MimeType mimeType) {
+        Class<?> type = elementType.toClass();
+        return (RequestDto.class == type || BatchRequestDto.class == type) && super.canDecode(elementType, mimeType);
+    }
+
+    @Override
+    public Object decode(DataBuffer dataBuffer, ResolvableType targetType,
+                         MimeType mimeType, Map<String, Object> hints) throws DecodingException {
+        boolean batch = BatchRequestDto.class == targetType.toClass();
+        long start = System.nanoTime();
+        try (InputStream input = dataBuffer.asInputStream(true);
+             JsonParser parser = factory.createParser(input)) {
+            parser.nextToken();
+            return batch ? readBatch(parser) : readRequest(parser);
+        } catch (IOException e) {
+            throw new DecodingException("Invalid " + factory.getFormatName() + " request: " + e.getMessage(), e);
+        } finally {
+            Timer timer = batch ? batchTimer : requestTimer;
+            if (timer != null) {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Read a request object. The parser must be positioned on its start token;
+     * on return it is positioned on the matching end token.
+     */
+    static RequestDto readRequest(JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_OBJECT);
+
+        RequestDto request = new RequestDto();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (REQUEST_TYPE.equals(field) && value.isScalarValue()) {
+                request.setRequestType(parser.getValueAsString());
+            } else if (EXTRA.equals(field) && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.currentName();
+                    if (parser.nextToken().isScalarValue()) {
+                        request.putExtra(name, parser.getValueAsString());
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return request;
+    }
+
+    static BatchRequestDto readBatch(JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_OBJECT);
+
+        BatchRequestDto batch = new BatchRequestDto();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (REQUESTS.equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    batch.addRequest(readRequest(parser));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return batch;
+    }
+
+    private static void expect(JsonParser parser, JsonToken token) {
+        if (parser.currentToken() != token) {
+            throw new DecodingException("Expected " + token + " but found " + parser.currentToken());
+        }
+    }
+}
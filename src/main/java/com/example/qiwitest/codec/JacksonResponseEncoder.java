@@ -0,0 +1,131 @@
+package com.example.qiwitest.codec;
+
+import com.example.qiwitest.dto.BatchResponseDto;
+import com.example.qiwitest.dto.ExtraDto;
+import com.example.qiwitest.dto.ResponseDto;
+import com.example.qiwitest.model.Money;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.micrometer.core.instrument.Timer;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractEncoder;
+import org.springframework.core.codec.EncodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes {@link ResponseDto} and {@link BatchResponseDto} as JSON or CBOR, depending on the {@link JsonFactory},
+ * with the Jackson streaming generator writing straight into the response buffer.
+ * <pre>
+ * {"result-code": 0, "extra": {"balance": "10.50"}}
+ * {"responses": [{...}, {...}]}
+ * </pre>
+ * Extra values stay strings so amounts keep their exact decimal text; {@link Money} extras are written as UTF-8
+ * bytes formatted from their units.
+ */
+public class JacksonResponseEncoder extends AbstractEncoder<Object> {
+
+    static final String RESULT_CODE = "result-code";
+    static final String EXTRA = "extra";
+    static final String RESPONSES = "responses";
+
+    // Typical response size; the buffer grows if an extra does not fit
+    private static final int RESPONSE_SIZE_HINT = 64;
+
+    private final JsonFactory factory;
+    private final Timer responseTimer;
+    private final Timer batchTimer;
+
+    public JacksonResponseEncoder(JsonFactory factory, MimeType... mimeTypes) {
+        this(factory, null, null, mimeTypes);
+    }
+
+    /**
+     * @param factory creates the generators, a plain {@link JsonFactory} or one for a binary format
+     * @param responseTimer records the time spent encoding each response, may be null
+     * @param batchTimer records the time spent encoding each batch, may be null
+     * @param mimeTypes the content types the factory writes
+     */
+    public JacksonResponseEncoder(JsonFactory factory, Timer responseTimer, Timer batchTimer, MimeType... mimeTypes) {
+        super(mimeTypes);
+        this.factory = factory;
+        this.responseTimer = responseTimer;
+        this.batchTimer = batchTimer;
+    }
+
+    @Override
+    public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+        Class<?> type = elementType.toClass();
+        return (ResponseDto.class.isAssignableFrom(type) || BatchResponseDto.class.isAssignableFrom(type))
+            && super.canEncode(elementType, mimeType);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                   ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+        return Flux.from(inputStream).map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints));
+    }
+
+    @Override
+    public DataBuffer encodeValue(Object value, DataBufferFactory bufferFactory,
+                                  ResolvableType valueType, MimeType mimeType, Map<String, Object> hints) {
+        long start = System.nanoTime();
+        BatchResponseDto batch = value instanceof BatchResponseDto b ? b : null;
+        int sizeHint = batch == null ? RESPONSE_SIZE_HINT : RESPONSE_SIZE_HINT * batch.getResponses().size() + 16;
+        DataBuffer buffer = bufferFactory.allocateBuffer(sizeHint);
+        try (JsonGenerator generator = factory.createGenerator(buffer.asOutputStream())) {
+            if (batch == null) {
+                writeResponse(generator, (ResponseDto) value);
+            } else {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart(RESPONSES);
+                for (ResponseDto response : batch.getResponses()) {
+                    writeResponse(generator, response);
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+        } catch (IOException e) {
+            DataBufferUtils.release(buffer);
+            throw new EncodingException("Could not write " + factory.getFormatName() + " response", e);
+        } finally {
+            Timer timer = batch == null ? responseTimer : batchTimer;
+            if (timer != null) {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+        return buffer;
+    }
+
+    static void writeResponse(JsonGenerator generator, ResponseDto response) throws IOException {
+        generator.writeStartObject();
+        if (response.getResultCode() != null) {
+            generator.writeNumberField(RESULT_CODE, response.getResultCode());
+        }
+        generator.writeObjectFieldStart(EXTRA);
+        List<ExtraDto> extras = response.getExtras();
+        if (extras != null) {
+            for (ExtraDto extra : extras) {
+                Money amount = extra.getAmount();
+                if (amount != null) {
+                    byte[] text = ResponseDtoEncoder.AMOUNT_TEXT.get();
+                    generator.writeFieldName(extra.getName());
+                    generator.writeUTF8String(text, 0, amount.formatTo(text, 0));
+                } else {
+                    generator.writeStringField(extra.getName(), extra.getValue());
+                }
+            }
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+}
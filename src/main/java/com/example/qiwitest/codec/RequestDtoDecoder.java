@@ -0,0 +1,124 @@
+package com.example.qiwitest.codec;
+
+import com.example.qiwitest.dto.RequestDto;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractDataBufferDecoder;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes a {@code <request>} document straight into a {@link RequestDto} with a StAX pull parser.
+ * Unlike Jackson databinding no intermediate list of extras is built: request-type, login and password
+ * land in fixed fields and any other extra is kept as a name/value pair.
+ */
+public class RequestDtoDecoder extends AbstractDataBufferDecoder<RequestDto> {
+
+    static final String REQUEST = "request";
+    static final String REQUEST_TYPE = "request-type";
+    static final String EXTRA = "extra";
+    static final String NAME = "name";
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private final Timer decodeTimer;
+
+    public RequestDtoDecoder() {
+        this(null);
+    }
+
+    /**
+     * @param decodeTimer records the time spent decoding each request, may be null
+     */
+    public RequestDtoDecoder(Timer decodeTimer) {
+        super(MimeTypeUtils.APPLICATION_XML, MimeTypeUtils.TEXT_XML, new MimeType("application", "*+xml"));
+        this.decodeTimer = decodeTimer;
+    }
+
+    @Override
+    public boolean canDecode(ResolvableType elementType, MimeType mimeType) {
+        return RequestDto.class == elementType.toClass() && super.canDecode(elementType, mimeType);
+    }
+
+    @Override
+    public RequestDto decode(DataBuffer dataBuffer, ResolvableType targetType,
+                             MimeType mimeType, Map<String, Object> hints) throws DecodingException {
+        long start = System.nanoTime();
+        try (InputStream input = dataBuffer.asInputStream(true)) {
+            XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(input);
+            try {
+                return readRequest(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException | IOException e) {
+            throw new DecodingException("Invalid XML request: " + e.getMessage(), e);
+        } finally {
+            if (decodeTimer != null) {
+                decodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Read a single {@code <request>} element. The reader must be positioned before the element
+     * or on its start tag; on return it is positioned on the matching end tag.
+     */
+    static RequestDto readRequest(XMLStreamReader reader) throws XMLStreamException {
+        if (!reader.isStartElement()) {
+            reader.nextTag();
+        }
+        if (!REQUEST.equals(reader.getLocalName())) {
+            throw new DecodingException("Unexpected root element [" + reader.getLocalName() + "]");
+        }
+
+        RequestDto request = new RequestDto();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String element = reader.getLocalName();
+            if (REQUEST_TYPE.equals(element)) {
+                request.setRequestType(reader.getElementText());
+            } else if (EXTRA.equals(element)) {
+                String name = reader.getAttributeValue(null, NAME);
+                String value = reader.getElementText();
+                request.putExtra(name, value);
+            } else {
+                skipElement(reader);
+            }
+        }
+        return request;
+    }
+
+    /**
+     * Skip the current element together with everything nested in it.
+     */
+    static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+}
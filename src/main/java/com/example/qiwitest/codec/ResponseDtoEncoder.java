@@ -0,0 +1,242 @@
+package com.example.qiwitest.codec;
+
+import com.example.qiwitest.dto.ExtraDto;
+import com.example.qiwitest.dto.ResponseDto;
+import com.example.qiwitest.model.Money;
+import io.micrometer.core.instrument.Timer;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractEncoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes {@link ResponseDto} as XML from pre-encoded fragments. The markup for every result code
+ * below {@link #CACHED_RESULT_CODES} is encoded once, so a response is a single buffer allocation
+ * (pooled when the server runs on Netty) plus a copy of the extra values. Amounts are formatted straight
+ * from their {@link Money} units.
+ * <p>
+ * The layout matches what Jackson produced for {@link ResponseDto}: extras are wrapped in an outer
+ * {@code <extra>} element. Indentation is meant for debugging only.
+ */
+public class ResponseDtoEncoder extends AbstractEncoder<ResponseDto> {
+
+    static final int CACHED_RESULT_CODES = 10;
+
+    // Scratch space for formatting amounts; encoding a response never yields the thread
+    static final ThreadLocal<byte[]> AMOUNT_TEXT = ThreadLocal.withInitial(() -> new byte[Money.MAX_LENGTH]);
+
+    private final byte[][] emptyResponses = new byte[CACHED_RESULT_CODES][];
+    private final byte[][] responsePrefixes = new byte[CACHED_RESULT_CODES][];
+
+    private final boolean indent;
+    private final Timer encodeTimer;
+    private final byte[] extraOpen;
+    private final byte[] extraValueOpen;
+    private final byte[] extraClose;
+    private final byte[] responseSuffix;
+
+    public ResponseDtoEncoder() {
+        this(false);
+    }
+
+    public ResponseDtoEncoder(boolean indent) {
+        this(indent, null);
+    }
+
+    /**
+     * @param indent whether to pretty-print
+     * @param encodeTimer records the time spent encoding each response, may be null
+     */
+    public ResponseDtoEncoder(boolean indent, Timer encodeTimer) {
+        super(MimeTypeUtils.APPLICATION_XML, MimeTypeUtils.TEXT_XML, new MimeType("application", "*+xml"));
+        this.indent = indent;
+        this.encodeTimer = encodeTimer;
+        this.extraOpen = ascii(indent ? "    <extra name=\"" : "<extra name=\"");
+        this.extraValueOpen = ascii("\">");
+        this.extraClose = ascii(indent ? "</extra>\n" : "</extra>");
+        this.responseSuffix = ascii(indent ? "  </extra>\n</response>\n" : "</extra></response>");
+        for (int code = 0; code < CACHED_RESULT_CODES; code++) {
+            emptyResponses[code] = buildEmptyResponse(String.valueOf(code));
+            responsePrefixes[code] = buildResponsePrefix(String.valueOf(code));
+        }
+    }
+
+    @Override
+    public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+        return ResponseDto.class.isAssignableFrom(elementType.toClass()) && super.canEncode(elementType, mimeType);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<? extends ResponseDto> inputStream, DataBufferFactory bufferFactory,
+                                   ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+        return Flux.from(inputStream).map(response -> encodeValue(response, bufferFactory, elementType, mimeType, hints));
+    }
+
+    @Override
+    public DataBuffer encodeValue(ResponseDto response, DataBufferFactory bufferFactory,
+                                  ResolvableType valueType, MimeType mimeType, Map<String, Object> hints) {
+        long start = System.nanoTime();
+        DataBuffer buffer = bufferFactory.allocateBuffer(encodedLength(response));
+        write(response, buffer);
+        if (encodeTimer != null) {
+            encodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return buffer;
+    }
+
+    /**
+     * Exact number of bytes {@link #write(ResponseDto, DataBuffer)} produces for the response.
+     */
+    int encodedLength(ResponseDto response) {
+        List<ExtraDto> extras = response.getExtras();
+        if (extras == null || extras.isEmpty()) {
+            return emptyResponse(response.getResultCode()).length;
+        }
+        int size = responsePrefix(response.getResultCode()).length + responseSuffix.length;
+        for (ExtraDto extra : extras) {
+            Money amount = extra.getAmount();
+            size += extraOpen.length + escapedLength(extra.getName()) + extraValueOpen.length
+                    + (amount != null ? amount.formattedLength() : escapedLength(extra.getValue()))
+                    + extraClose.length;
+        }
+        return size;
+    }
+
+    void write(ResponseDto response, DataBuffer buffer) {
+        List<ExtraDto> extras = response.getExtras();
+        if (extras == null || extras.isEmpty()) {
+            buffer.write(emptyResponse(response.getResultCode()));
+            return;
+        }
+        buffer.write(responsePrefix(response.getResultCode()));
+        for (ExtraDto extra : extras) {
+            buffer.write(extraOpen);
+            writeEscaped(buffer, extra.getName());
+            buffer.write(extraValueOpen);
+            if (extra.getAmount() != null) {
+                byte[] text = AMOUNT_TEXT.get();
+                buffer.write(text, 0, extra.getAmount().formatTo(text, 0));
+            } else {
+                writeEscaped(buffer, extra.getValue());
+            }
+            buffer.write(extraClose);
+        }
+        buffer.write(responseSuffix);
+    }
+
+    boolean isIndent() {
+        return indent;
+    }
+
+    private byte[] emptyResponse(Integer resultCode) {
+        return isCached(resultCode) ? emptyResponses[resultCode] : buildEmptyResponse(codeText(resultCode));
+    }
+
+    private byte[] responsePrefix(Integer resultCode) {
+        return isCached(resultCode) ? responsePrefixes[resultCode] : buildResponsePrefix(codeText(resultCode));
+    }
+
+    private static boolean isCached(Integer resultCode) {
+        return resultCode != null && resultCode >= 0 && resultCode < CACHED_RESULT_CODES;
+    }
+
+    private byte[] buildEmptyResponse(String code) {
+        return ascii(indent
+                ? "<response>\n  <result-code>" + code + "</result-code>\n  <extra/>\n</response>\n"
+                : "<response><result-code>" + code + "</result-code><extra/></response>");
+    }
+
+    private byte[] buildResponsePrefix(String code) {
+        return ascii(indent
+                ? "<response>\n  <result-code>" + code + "</result-code>\n  <extra>\n"
+                : "<response><result-code>" + code + "</result-code><extra>");
+    }
+
+    private static String codeText(Integer resultCode) {
+        return resultCode == null ? "" : resultCode.toString();
+    }
+
+    /**
+     * Number of bytes the value takes once escaped and encoded as UTF-8.
+     */
+    static int escapedLength(String value) {
+        if (value == null) {
+            return 0;
+        }
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String entity = entity(c);
+            if (entity != null) {
+                length += entity.length();
+            } else if (c < 0x80) {
+                length++;
+            } else {
+                // Rare on this API; fall back to the JDK for non-ASCII values
+                return escapeNonAscii(value).length;
+            }
+        }
+        return length;
+    }
+
+    static void writeEscaped(DataBuffer buffer, String value) {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                buffer.write(escapeNonAscii(value));
+                return;
+            }
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String entity = entity(c);
+            if (entity != null) {
+                for (int j = 0; j < entity.length(); j++) {
+                    buffer.write((byte) entity.charAt(j));
+                }
+            } else {
+                buffer.write((byte) c);
+            }
+        }
+    }
+
+    private static byte[] escapeNonAscii(String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 16);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String entity = entity(c);
+            if (entity != null) {
+                escaped.append(entity);
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String entity(char c) {
+        return switch (c) {
+            case '<' -> "&lt;";
+            case '>' -> "&gt;";
+            case '&' -> "&amp;";
+            case '"' -> "&quot;";
+            default -> null;
+        };
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.qiwitest.config;
+
+import com.example.qiwitest.codec.BatchRequestDtoDecoder;
+import com.example.qiwitest.codec.BatchResponseDtoEncoder;
+import com.example.qiwitest.codec.JacksonRequestDecoder;
+import com.example.qiwitest.codec.JacksonResponseEncoder;
+import com.example.qiwitest.codec.RequestDtoDecoder;
+import com.example.qiwitest.codec.ResponseDtoEncoder;
+import com.example.qiwitest.metrics.ApiMetrics;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.DecoderHttpMessageReader;
+import org.springframework.http.codec.EncoderHttpMessageWriter;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+import java.util.List;
+
+/**
+ * Registers the hand-written API codecs. Custom codecs are consulted before the defaults,
+ * so the API DTOs never reach Jackson databinding.
+ * <p>
+ * XML stays the default; JSON and CBOR carry the same fields and are picked by {@code Content-Type}
+ * and {@code Accept} (see {@link com.example.qiwitest.controller.ApiHandler}).
+ */
+@Configuration
+public class CodecConfig implements WebFluxConfigurer {
+
+    /**
+     * Content types the API reads and writes
+     */
+    public static final List<MediaType> API_MEDIA_TYPES = List.of(
+        MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON, MediaType.APPLICATION_CBOR);
+
+    private final boolean indentOutput;
+    private final ApiMetrics metrics;
+
+    public CodecConfig(@Value("${qiwitest.codec.indent-output:false}") boolean indentOutput, ApiMetrics metrics) {
+        this.indentOutput = indentOutput;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        ResponseDtoEncoder responseEncoder = new ResponseDtoEncoder(indentOutput, metrics.responseEncodeTimer());
+        configurer.customCodecs().registerWithDefaultConfig(
+            new DecoderHttpMessageReader<>(new RequestDtoDecoder(metrics.requestDecodeTimer())));
+        configurer.customCodecs().registerWithDefaultConfig(
+            new DecoderHttpMessageReader<>(new BatchRequestDtoDecoder(metrics.batchDecodeTimer())));
+        configurer.customCodecs().registerWithDefaultConfig(new EncoderHttpMessageWriter<>(responseEncoder));
+        configurer.customCodecs().registerWithDefaultConfig(
+            new EncoderHttpMessageWriter<>(new BatchResponseDtoEncoder(responseEncoder, metrics.batchEncodeTimer())));
+
+        registerJackson(configurer, new JsonFactory(), "json", MediaType.APPLICATION_JSON);
+        registerJackson(configurer, new CBORFactory(), "cbor", MediaType.APPLICATION_CBOR);
+    }
+
+    private void registerJackson(ServerCodecConfigurer configurer, JsonFactory factory, String format,
+                                 MediaType mediaType) {
+        configurer.customCodecs().registerWithDefaultConfig(new DecoderHttpMessageReader<>(new JacksonRequestDecoder(
+            factory,
+            metrics.codecTimer("decode", "request", format),
+            metrics.codecTimer("decode", "batch", format),
+            mediaType)));
+        configurer.customCodecs().registerWithDefaultConfig(new EncoderHttpMessageWriter<>(new JacksonResponseEncoder(
+            factory,
+            metrics.codecTimer("encode", "response", format),
+            metrics.codecTimer("encode", "batch", format),
+            mediaType)));
+    }
+}
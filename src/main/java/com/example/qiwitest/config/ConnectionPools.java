@@ -0,0 +1,48 @@
+package com.example.qiwitest.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.boot.actuate.metrics.r2dbc.ConnectionPoolMetrics;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.boot.r2dbc.ConnectionFactoryBuilder;
+
+/**
+ * Builds the extra connection pools used for read replicas and shards, with the credentials and pool
+ * settings of {@code spring.r2dbc.*}.
+ */
+final class ConnectionPools {
+
+    private ConnectionPools() {
+    }
+
+    /**
+     * @param name the pool name, also used as the {@code name} tag of its metrics
+     * @param url a plain (non-pooled) R2DBC URL
+     */
+    static ConnectionPool create(String name, String url, R2dbcProperties properties, int maxSize) {
+        ConnectionFactory connectionFactory = ConnectionFactoryBuilder.withUrl(url)
+            .username(properties.getUsername())
+            .password(properties.getPassword())
+            .build();
+        ConnectionPoolConfiguration.Builder builder = ConnectionPoolConfiguration.builder(connectionFactory)
+            .name(name)
+            .initialSize(Math.min(properties.getPool().getInitialSize(), maxSize))
+            .maxSize(maxSize);
+        if (properties.getPool().getMaxIdleTime() != null) {
+            builder.maxIdleTime(properties.getPool().getMaxIdleTime());
+        }
+        return new ConnectionPool(builder.build());
+    }
+
+    /**
+     * Register the {@code r2dbc.pool.*} gauges of a pool, which Spring Boot only does for pools it created
+     */
+    static void bindMetrics(String name, ConnectionFactory connectionFactory, MeterRegistry registry) {
+        if (connectionFactory instanceof ConnectionPool pool) {
+            new ConnectionPoolMetrics(pool, name, Tags.empty()).bindTo(registry);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.qiwitest.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * The connection pool of the JDBC persistence mode ({@code qiwitest.persistence=jdbc}, set by the {@code jdbc}
+ * profile). Spring Boot's own DataSource auto-configuration is off, so no JDBC pool exists in the default
+ * R2DBC mode. The pool has a fixed size, by default the size of the R2DBC pool so both modes get the same
+ * number of connections, and a short acquire timeout, so a saturated database fails requests quickly
+ * instead of parking an unbounded number of virtual threads. Its metrics are published as {@code hikaricp.*}.
+ * <p>
+ * The ledger, the login filter and shard migration stay on R2DBC; shards and read replicas are not
+ * supported in this mode.
+ */
+@Configuration
+@ConditionalOnProperty(name = "qiwitest.persistence", havingValue = "jdbc")
+public class JdbcConfig {
+
+    @Bean(destroyMethod = "close")
+    public HikariDataSource jdbcDataSource(
+            @Value("${qiwitest.jdbc.url}") String url,
+            @Value("${qiwitest.jdbc.username:${spring.r2dbc.username:}}") String username,
+            @Value("${qiwitest.jdbc.password:${spring.r2dbc.password:}}") String password,
+            @Value("${qiwitest.jdbc.pool.max-size:${spring.r2dbc.pool.max-size:10}}") int maxSize,
+            @Value("${qiwitest.jdbc.pool.connection-timeout:2s}") Duration connectionTimeout,
+            @Value("${qiwitest.jdbc.pool.max-lifetime:30m}") Duration maxLifetime,
+            @Value("${qiwitest.shard.urls:}") String shardUrls,
+            @Value("${qiwitest.replica.urls:}") String replicaUrls) {
+        if (!shardUrls.isBlank() || !replicaUrls.isBlank()) {
+            throw new IllegalStateException("qiwitest.persistence=jdbc cannot be combined with "
+                + "qiwitest.shard.urls or qiwitest.replica.urls");
+        }
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("jdbc");
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername(username);
+        dataSource.setPassword(password);
+        dataSource.setMaximumPoolSize(maxSize);
+        dataSource.setMinimumIdle(maxSize);
+        dataSource.setConnectionTimeout(connectionTimeout.toMillis());
+        dataSource.setMaxLifetime(maxLifetime.toMillis());
+        return dataSource;
+    }
+}
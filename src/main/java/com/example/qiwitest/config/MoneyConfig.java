@@ -0,0 +1,69 @@
+package com.example.qiwitest.config;
+
+import com.example.qiwitest.model.Money;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+import org.springframework.data.r2dbc.convert.MappingR2dbcConverter;
+import org.springframework.data.r2dbc.convert.R2dbcCustomConversions;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.r2dbc.dialect.DialectResolver;
+import org.springframework.data.r2dbc.dialect.R2dbcDialect;
+import org.springframework.data.r2dbc.mapping.R2dbcMappingContext;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.util.List;
+
+/**
+ * Maps {@link Money} to and from the BIGINT columns holding 1/10000 units. Replaces the conversions Spring Boot
+ * would register, so the mapping context treats {@link Money} as a simple value instead of an entity. Slice
+ * tests that do not scan configuration import this class.
+ */
+@Configuration
+public class MoneyConfig {
+
+    static final List<Converter<?, ?>> CONVERTERS = List.of(MoneyToUnits.INSTANCE, UnitsToMoney.INSTANCE);
+
+    @Bean
+    public R2dbcCustomConversions r2dbcCustomConversions(DatabaseClient databaseClient) {
+        return R2dbcCustomConversions.of(DialectResolver.getDialect(databaseClient.getConnectionFactory()), CONVERTERS);
+    }
+
+    /**
+     * An entity template with the {@link Money} conversions, for code that builds repositories without Spring
+     *
+     * @param connectionFactory the connection factory
+     * @return the template
+     */
+    public static R2dbcEntityTemplate entityTemplate(ConnectionFactory connectionFactory) {
+        R2dbcDialect dialect = DialectResolver.getDialect(connectionFactory);
+        R2dbcCustomConversions conversions = R2dbcCustomConversions.of(dialect, CONVERTERS);
+        R2dbcMappingContext mappingContext = new R2dbcMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        return new R2dbcEntityTemplate(DatabaseClient.create(connectionFactory), dialect,
+            new MappingR2dbcConverter(mappingContext, conversions));
+    }
+
+    @WritingConverter
+    enum MoneyToUnits implements Converter<Money, Long> {
+        INSTANCE;
+
+        @Override
+        public Long convert(Money source) {
+            return source.units();
+        }
+    }
+
+    @ReadingConverter
+    enum UnitsToMoney implements Converter<Long, Money> {
+        INSTANCE;
+
+        @Override
+        public Money convert(Long source) {
+            return Money.ofUnits(source);
+        }
+    }
+}
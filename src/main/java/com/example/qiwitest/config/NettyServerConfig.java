@@ -0,0 +1,63 @@
+package com.example.qiwitest.config;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.netty.resources.LoopResources;
+
+/**
+ * Netty server tuning, off unless {@code qiwitest.server.tuning.enabled} is set (the {@code high-throughput}
+ * profile does). The server then runs on its own event loops with an explicit number of selector and worker
+ * threads, on the native epoll transport where it is available, and with pooled direct buffers.
+ * Keep-alive, idle timeout and HTTP/2 cleartext use the standard {@code server.*} settings.
+ */
+@Configuration
+@ConditionalOnProperty("qiwitest.server.tuning.enabled")
+public class NettyServerConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(NettyServerConfig.class);
+
+    /**
+     * @param selectThreads threads accepting connections; 0 lets the workers accept them too
+     * @param workerThreads threads serving connections; 0 means one per available processor
+     */
+    @Bean(destroyMethod = "dispose")
+    public LoopResources serverLoopResources(
+            @Value("${qiwitest.server.select-threads:1}") int selectThreads,
+            @Value("${qiwitest.server.worker-threads:0}") int workerThreads) {
+        int workers = workerThreads > 0 ? workerThreads : Runtime.getRuntime().availableProcessors();
+        return selectThreads > 0
+            ? LoopResources.create("qiwitest-http", selectThreads, workers, true)
+            : LoopResources.create("qiwitest-http", workers, true);
+    }
+
+    @Bean
+    public NettyServerCustomizer tunedNettyServer(
+            LoopResources serverLoopResources,
+            @Value("${qiwitest.server.native-transport:true}") boolean preferNative,
+            @Value("${qiwitest.server.pooled-direct-buffers:true}") boolean pooledDirect,
+            @Value("${qiwitest.server.backlog:1024}") int backlog,
+            @Value("${qiwitest.server.tcp-keep-alive:true}") boolean tcpKeepAlive) {
+        boolean nativeTransport = preferNative && LoopResources.hasNativeSupport();
+        logger.info("Netty server tuning enabled: transport={}, pooled-direct-buffers={}, backlog={}, "
+            + "tcp-keep-alive={}", nativeTransport ? "native" : "nio", pooledDirect, backlog, tcpKeepAlive);
+        PooledByteBufAllocator allocator = pooledDirect ? new PooledByteBufAllocator(true) : null;
+        return server -> {
+            server = server.runOn(serverLoopResources, preferNative)
+                .option(ChannelOption.SO_BACKLOG, backlog)
+                .childOption(ChannelOption.SO_KEEPALIVE, tcpKeepAlive)
+                .childOption(ChannelOption.TCP_NODELAY, true);
+            if (allocator != null) {
+                server = server.option(ChannelOption.ALLOCATOR, allocator)
+                    .childOption(ChannelOption.ALLOCATOR, allocator);
+            }
+            return server;
+        };
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.qiwitest.config;
+
+import com.example.qiwitest.repository.ReplicaRouter;
+import com.example.qiwitest.repository.ReplicaRouter.Replica;
+import com.example.qiwitest.repository.ReplicaRoutingConnectionFactory;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read replicas for client lookups. Off unless {@code qiwitest.replica.urls} lists at least one replica;
+ * then the primary pool is built here from the {@code spring.r2dbc.*} settings (instead of by Spring Boot)
+ * and wrapped in a {@link ReplicaRoutingConnectionFactory}, and every pool gets its own
+ * {@code r2dbc.pool.*} gauges tagged {@code name=primary} or {@code name=replica-N}.
+ */
+@Configuration
+@EnableConfigurationProperties(R2dbcProperties.class)
+public class ReplicaConfig {
+
+    @Bean(destroyMethod = "close")
+    public ReplicaRouter replicaRouter(
+            R2dbcProperties properties,
+            @Value("${qiwitest.replica.urls:}") String urls,
+            @Value("${qiwitest.replica.pool.max-size:10}") int maxSize,
+            @Value("${qiwitest.replica.pin-window:2s}") Duration pinWindow,
+            @Value("${qiwitest.replica.pin-maximum-size:100000}") long maxPinned,
+            @Value("${qiwitest.replica.health-check-interval:1s}") Duration healthCheckInterval,
+            @Value("${qiwitest.replica.health-check-timeout:500ms}") Duration healthCheckTimeout,
+            @Value("${qiwitest.replica.max-staleness:1s}") Duration maxStaleness,
+            @Value("${qiwitest.replica.lag-query:" + ReplicaRouter.POSTGRESQL_LAG_QUERY + "}") String lagQuery) {
+        List<Replica> replicas = new ArrayList<>();
+        for (String url : urls.split(",")) {
+            if (!url.isBlank()) {
+                String name = "replica-" + replicas.size();
+                replicas.add(new Replica(name, ConnectionPools.create(name, url.trim(), properties, maxSize)));
+            }
+        }
+        if (!replicas.isEmpty() && lagQuery.isBlank()) {
+            throw new IllegalStateException("qiwitest.replica.lag-query is empty, so qiwitest.replica.max-staleness "
+                + "could not be enforced");
+        }
+        return new ReplicaRouter(replicas, pinWindow, maxPinned, healthCheckInterval, healthCheckTimeout,
+            maxStaleness, lagQuery);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty("qiwitest.replica.urls")
+    public ReplicaRoutingConnectionFactory connectionFactory(R2dbcProperties properties, ReplicaRouter router) {
+        return new ReplicaRoutingConnectionFactory(
+            ConnectionPools.create("primary", properties.getUrl(), properties, properties.getPool().getMaxSize()),
+            router);
+    }
+
+    @Bean
+    @ConditionalOnProperty("qiwitest.replica.urls")
+    public MeterBinder replicaPoolMetrics(ReplicaRoutingConnectionFactory connectionFactory, ReplicaRouter router) {
+        return registry -> {
+            ConnectionPools.bindMetrics("primary", connectionFactory.primary(), registry);
+            for (Replica replica : router.replicas()) {
+                ConnectionPools.bindMetrics(replica.name(), replica.connectionFactory(), registry);
+            }
+        };
+    }
+}
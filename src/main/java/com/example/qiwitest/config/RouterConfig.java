@@ -0,0 +1,81 @@
+package com.example.qiwitest.config;
+
+import com.example.qiwitest.controller.ApiHandler;
+import com.example.qiwitest.controller.ExportHandler;
+import com.example.qiwitest.controller.ImportHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.server.HandlerFunction;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import java.util.List;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.accept;
+import static org.springframework.web.reactive.function.server.RequestPredicates.contentType;
+
+/**
+ * Routes of the API. Functional routes skip the annotated-controller argument resolution;
+ * the request type is dispatched by {@link com.example.qiwitest.operation.OperationRegistry}.
+ * As with {@code @PostMapping(consumes = ...)}, a body of another type is answered with 415 and the
+ * accepted types, not with 404; as with {@code produces = ...}, an {@code Accept} header that allows none
+ * of the API types is answered with 406 before the request is processed.
+ */
+@Configuration
+public class RouterConfig {
+
+    private static final MediaType[] API_TYPES = CodecConfig.API_MEDIA_TYPES.toArray(new MediaType[0]);
+    private static final List<MediaType> IMPORT_TYPES = List.of(MediaType.parseMediaType("text/csv"),
+        MediaType.TEXT_PLAIN);
+
+    @Bean
+    public RouterFunction<ServerResponse> apiRoutes(ApiHandler apiHandler) {
+        return RouterFunctions.route()
+            .POST("/", contentType(API_TYPES).and(accept(API_TYPES)), apiHandler::process)
+            .POST("/batch", contentType(API_TYPES).and(accept(API_TYPES)), apiHandler::processBatch)
+            .POST("/", contentType(API_TYPES), notAcceptable())
+            .POST("/batch", contentType(API_TYPES), notAcceptable())
+            .POST("/", unsupportedMediaType(CodecConfig.API_MEDIA_TYPES))
+            .POST("/batch", unsupportedMediaType(CodecConfig.API_MEDIA_TYPES))
+            .build();
+    }
+
+    /**
+     * Bulk client import, off unless {@code qiwitest.import.enabled} is set: it is an administrative route
+     */
+    @Bean
+    @ConditionalOnProperty(name = "qiwitest.import.enabled", havingValue = "true")
+    public RouterFunction<ServerResponse> importRoutes(ImportHandler importHandler) {
+        return RouterFunctions.route()
+            .POST("/import", contentType(IMPORT_TYPES.toArray(new MediaType[0])), importHandler::importClients)
+            .POST("/import", unsupportedMediaType(IMPORT_TYPES))
+            .build();
+    }
+
+    /**
+     * Client export, off unless {@code qiwitest.export.enabled} is set: it lists every login and balance
+     */
+    @Bean
+    @ConditionalOnProperty(name = "qiwitest.export.enabled", havingValue = "true")
+    public RouterFunction<ServerResponse> exportRoutes(ExportHandler exportHandler) {
+        return RouterFunctions.route()
+            .GET("/export", exportHandler::exportClients)
+            .build();
+    }
+
+    private static HandlerFunction<ServerResponse> unsupportedMediaType(List<MediaType> supported) {
+        String accept = MediaType.toString(supported);
+        return request -> ServerResponse.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE)
+            .header(HttpHeaders.ACCEPT, accept)
+            .build();
+    }
+
+    private static HandlerFunction<ServerResponse> notAcceptable() {
+        return request -> ServerResponse.status(HttpStatus.NOT_ACCEPTABLE).build();
+    }
+}
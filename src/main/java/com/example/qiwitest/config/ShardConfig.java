@@ -0,0 +1,85 @@
+package com.example.qiwitest.config;
+
+import com.example.qiwitest.controller.ShardsEndpoint;
+import com.example.qiwitest.repository.ShardMigrator;
+import com.example.qiwitest.repository.ShardRouter;
+import com.example.qiwitest.repository.ShardRoutingConnectionFactory;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hash-sharded client storage. Off unless {@code qiwitest.shard.urls} lists the shard databases;
+ * then each shard gets a pool built from the {@code spring.r2dbc.*} settings, {@code spring.r2dbc.url}
+ * is not used, and shard 0 also holds everything that is not sharded (the ledger).
+ * Sharding cannot be combined with read replicas.
+ */
+@Configuration
+@EnableConfigurationProperties(R2dbcProperties.class)
+public class ShardConfig {
+
+    @Bean
+    public ShardRouter shardRouter(@Value("${qiwitest.shard.urls:}") String urls,
+                                   @Value("${qiwitest.shard.count:0}") int shardCount,
+                                   @Value("${qiwitest.shard.previous-count:0}") int previousCount) {
+        List<String> databases = new ArrayList<>(shardUrls(urls).keySet());
+        if (databases.isEmpty()) {
+            return ShardRouter.disabled();
+        }
+        return new ShardRouter(databases, shardCount == 0 ? databases.size() : shardCount, previousCount);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty("qiwitest.shard.urls")
+    public ShardRoutingConnectionFactory connectionFactory(R2dbcProperties properties,
+                                                           @Value("${qiwitest.shard.urls}") String urls) {
+        Map<String, ConnectionFactory> shards = new LinkedHashMap<>();
+        shardUrls(urls).forEach((name, url) ->
+            shards.put(name, ConnectionPools.create(name, url, properties, properties.getPool().getMaxSize())));
+        return new ShardRoutingConnectionFactory(shards);
+    }
+
+    @Bean
+    @ConditionalOnProperty("qiwitest.shard.urls")
+    public MeterBinder shardPoolMetrics(ShardRoutingConnectionFactory connectionFactory) {
+        return registry -> connectionFactory.shards()
+            .forEach((name, shard) -> ConnectionPools.bindMetrics(name, shard, registry));
+    }
+
+    @Bean
+    @ConditionalOnProperty("qiwitest.shard.urls")
+    public ShardMigrator shardMigrator(DatabaseClient databaseClient, ShardRouter router,
+                                       @Value("${qiwitest.shard.migration.page-size:1000}") int pageSize) {
+        return new ShardMigrator(databaseClient, router, pageSize);
+    }
+
+    @Bean
+    @ConditionalOnProperty("qiwitest.shard.urls")
+    public ShardsEndpoint shardsEndpoint(DatabaseClient databaseClient, ShardRouter router, ShardMigrator migrator) {
+        return new ShardsEndpoint(databaseClient, router, migrator);
+    }
+
+    /**
+     * Shard database URLs by name ({@code shard-0}, {@code shard-1}, ...), in shard order
+     */
+    private static Map<String, String> shardUrls(String urls) {
+        Map<String, String> shards = new LinkedHashMap<>();
+        for (String url : urls.split(",")) {
+            if (!url.isBlank()) {
+                shards.put("shard-" + shards.size(), url.trim());
+            }
+        }
+        return shards;
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.qiwitest.controller;
+
+import com.example.qiwitest.operation.ResultCodes;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control for the API: decides, right after a request is decoded and before any database work,
+ * whether it runs or is answered at once with the shed result code.
+ * <p>
+ * A request is shed when
+ * <ul>
+ *     <li>{@code max-concurrency} requests are already running, so a backlog never builds up in front of
+ *     the connection pool;</li>
+ *     <li>the token bucket of its login is empty, so one login cannot take the capacity of the others;</li>
+ *     <li>the global token bucket is empty.</li>
+ * </ul>
+ * Every item of a batch takes one token from its login's bucket and from the global one.
+ * <p>
+ * The buckets are GCRA (generic cell rate algorithm) buckets: a single {@code long}, the time at which the
+ * bucket would be full again, updated with compare-and-set, so admission never takes a lock. Login buckets
+ * live in a bounded Caffeine cache and are dropped after {@code idle-timeout} without requests; a bucket
+ * idle that long is full anyway, so dropping it changes nothing.
+ */
+@Component
+public class AdmissionControl {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionControl.class);
+
+    private final boolean enabled;
+    private final int maxConcurrency;
+    private final int shedResultCode;
+
+    // Nanoseconds per token and bucket capacity in nanoseconds, i.e. burst * interval
+    private final long loginInterval;
+    private final long loginCapacity;
+    private final long globalInterval;
+    private final long globalCapacity;
+
+    private final Cache<String, TokenBucket> loginBuckets;
+    private final TokenBucket globalBucket = new TokenBucket();
+    private final AtomicInteger running = new AtomicInteger();
+    // Bucket times are relative to this, so they start at zero and never overflow
+    private final long origin = System.nanoTime();
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder shedConcurrency = new LongAdder();
+    private final LongAdder shedLoginRate = new LongAdder();
+    private final LongAdder shedGlobalRate = new LongAdder();
+
+    @Autowired
+    public AdmissionControl(@Value("${qiwitest.admission.enabled:false}") boolean enabled,
+                            @Value("${qiwitest.admission.max-concurrency:512}") int maxConcurrency,
+                            @Value("${qiwitest.admission.login.rate:500}") double loginRate,
+                            @Value("${qiwitest.admission.login.burst:1000}") int loginBurst,
+                            @Value("${qiwitest.admission.global.rate:50000}") double globalRate,
+                            @Value("${qiwitest.admission.global.burst:10000}") int globalBurst,
+                            @Value("${qiwitest.admission.login.idle-timeout:1m}") Duration idleTimeout,
+                            @Value("${qiwitest.admission.login.maximum-size:100000}") long maxLogins,
+                            @Value("${qiwitest.admission.shed-result-code:6}") int shedResultCode) {
+        this.enabled = enabled;
+        this.maxConcurrency = maxConcurrency;
+        this.shedResultCode = shedResultCode;
+        this.loginInterval = (long) (1_000_000_000L / loginRate);
+        this.loginCapacity = loginInterval * loginBurst;
+        this.globalInterval = (long) (1_000_000_000L / globalRate);
+        this.globalCapacity = globalInterval * globalBurst;
+        if (enabled) {
+            this.loginBuckets = Caffeine.newBuilder()
+                .maximumSize(maxLogins)
+                .expireAfterAccess(idleTimeout)
+                .build();
+            logger.info("Admission control enabled: max-concurrency={}, login {}/s (burst {}), "
+                    + "global {}/s (burst {}), shed-result-code={}",
+                maxConcurrency, loginRate, loginBurst, globalRate, globalBurst, shedResultCode);
+        } else {
+            this.loginBuckets = null;
+            logger.info("Admission control disabled");
+        }
+    }
+
+    /**
+     * Create an admission control that admits everything
+     *
+     * @return a disabled admission control
+     */
+    public static AdmissionControl disabled() {
+        return new AdmissionControl(false, 1, 1, 1, 1, 1, Duration.ZERO, 0, ResultCodes.OVERLOADED);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int shedResultCode() {
+        return shedResultCode;
+    }
+
+    /**
+     * Run work for the given logins if it is admitted, otherwise answer with the shed result
+     *
+     * @param logins the login of every item of the request
+     * @param work the request's work, subscribed to only when admitted
+     * @param shed the answer when the request is shed
+     * @return the result of whichever ran
+     */
+    public <T> Mono<T> admit(Collection<String> logins, Mono<T> work, Mono<T> shed) {
+        if (!enabled) {
+            return work;
+        }
+        return Mono.defer(() -> tryAcquire(logins) ? work.doFinally(signal -> running.decrementAndGet()) : shed);
+    }
+
+    /**
+     * Take a concurrency slot and the tokens of a request. Nothing is taken when it is shed.
+     */
+    boolean tryAcquire(Collection<String> logins) {
+        if (running.incrementAndGet() > maxConcurrency) {
+            running.decrementAndGet();
+            shedConcurrency.increment();
+            return false;
+        }
+
+        long now = System.nanoTime() - origin;
+        Map<TokenBucket, Long> taken = takeLoginTokens(logins, now);
+        if (taken == null) {
+            running.decrementAndGet();
+            shedLoginRate.increment();
+            return false;
+        }
+        if (!globalBucket.tryTake(now, globalInterval * logins.size(), globalCapacity)) {
+            taken.forEach(TokenBucket::giveBack);
+            running.decrementAndGet();
+            shedGlobalRate.increment();
+            return false;
+        }
+        admitted.increment();
+        return true;
+    }
+
+    /**
+     * Take one token per item from the bucket of its login
+     *
+     * @return the tokens taken per bucket, or null (with nothing taken) if a bucket was short
+     */
+    private Map<TokenBucket, Long> takeLoginTokens(Collection<String> logins, long now) {
+        if (logins.size() == 1) {
+            TokenBucket bucket = loginBuckets.get(logins.iterator().next(), login -> new TokenBucket());
+            return bucket.tryTake(now, loginInterval, loginCapacity) ? Map.of(bucket, loginInterval) : null;
+        }
+        Map<String, Integer> items = new HashMap<>();
+        for (String login : logins) {
+            items.merge(login, 1, Integer::sum);
+        }
+        Map<TokenBucket, Long> taken = new HashMap<>();
+        for (Map.Entry<String, Integer> login : items.entrySet()) {
+            TokenBucket bucket = loginBuckets.get(login.getKey(), key -> new TokenBucket());
+            long cost = loginInterval * login.getValue();
+            if (!bucket.tryTake(now, cost, loginCapacity)) {
+                taken.forEach(TokenBucket::giveBack);
+                return null;
+            }
+            taken.put(bucket, cost);
+        }
+        return taken;
+    }
+
+    public long admittedCount() {
+        return admitted.sum();
+    }
+
+    public long shedConcurrencyCount() {
+        return shedConcurrency.sum();
+    }
+
+    public long shedLoginRateCount() {
+        return shedLoginRate.sum();
+    }
+
+    public long shedGlobalRateCount() {
+        return shedGlobalRate.sum();
+    }
+
+    public int runningCount() {
+        return running.get();
+    }
+
+    public long trackedLogins() {
+        return loginBuckets == null ? 0 : loginBuckets.estimatedSize();
+    }
+
+    /**
+     * A GCRA token bucket. The state is the theoretical arrival time: the moment the bucket would be full
+     * again. Taking tokens moves it forward by their cost, and is refused when it would end up more than the
+     * capacity ahead of now.
+     */
+    static final class TokenBucket {
+
+        private final AtomicLong fullAt = new AtomicLong();
+
+        boolean tryTake(long now, long cost, long capacity) {
+            while (true) {
+                long current = fullAt.get();
+                long next = Math.max(current, now) + cost;
+                if (next - now > capacity) {
+                    return false;
+                }
+                if (fullAt.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+
+        void giveBack(long cost) {
+            fullAt.addAndGet(-cost);
+        }
+    }
+}
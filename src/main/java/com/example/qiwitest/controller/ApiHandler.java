@@ -0,0 +1,216 @@
+package com.example.qiwitest.controller;
+
+import com.example.qiwitest.config.CodecConfig;
+import com.example.qiwitest.dto.BatchRequestDto;
+import com.example.qiwitest.dto.BatchResponseDto;
+import com.example.qiwitest.dto.RequestDto;
+import com.example.qiwitest.dto.ResponseDto;
+import com.example.qiwitest.metrics.ApiMetrics;
+import com.example.qiwitest.operation.BatchContext;
+import com.example.qiwitest.operation.Operation;
+import com.example.qiwitest.operation.OperationRegistry;
+import com.example.qiwitest.operation.OperationRegistry.RegisteredOperation;
+import com.example.qiwitest.operation.Parameter;
+import com.example.qiwitest.operation.ResultCodes;
+import com.example.qiwitest.service.ClientService;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Handles the API routes (see {@link com.example.qiwitest.config.RouterConfig}). Requests are validated against
+ * the parameters of their operation, pass {@link AdmissionControl} and are dispatched through the
+ * {@link OperationRegistry}.
+ */
+@Component
+public class ApiHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ApiHandler.class);
+
+    private final OperationRegistry operations;
+    private final ClientService clientService;
+    private final int maxBatchSize;
+    private final AdmissionControl admissionControl;
+
+    private final ApiMetrics metrics;
+    private final Timer findByLoginsTimer;
+
+    @Autowired
+    public ApiHandler(OperationRegistry operations,
+                      ClientService clientService,
+                      @Value("${qiwitest.batch.max-size:1000}") int maxBatchSize,
+                      AdmissionControl admissionControl,
+                      ApiMetrics metrics) {
+        this.operations = operations;
+        this.clientService = clientService;
+        this.maxBatchSize = maxBatchSize;
+        this.admissionControl = admissionControl;
+        this.metrics = metrics;
+        this.findByLoginsTimer = metrics.serviceTimer("findByLogins");
+    }
+
+    public Mono<ServerResponse> process(ServerRequest serverRequest) {
+        return serverRequest.bodyToMono(RequestDto.class)
+            .flatMap(request -> {
+                logger.debug("Incoming request: {}", request);
+
+                if (!isValid(request)) {
+                    metrics.recordRejected();
+                    return ServerResponse.badRequest().build();
+                }
+
+                Mono<ResponseDto> shed = Mono.fromSupplier(() -> new ResponseDto(admissionControl.shedResultCode()));
+                return admissionControl.admit(List.of(request.getLogin()), execute(request), shed)
+                    .flatMap(response -> ServerResponse.ok()
+                        .contentType(responseType(serverRequest))
+                        .bodyValue(response));
+            })
+            .switchIfEmpty(Mono.defer(() -> ServerResponse.badRequest().build()));
+    }
+
+    /**
+     * Process many operations in one round trip. Responses come back in request order.
+     * The clients referenced by the batch are loaded up front with a few multi-login queries
+     * instead of one lookup per item.
+     */
+    public Mono<ServerResponse> processBatch(ServerRequest serverRequest) {
+        return serverRequest.bodyToMono(BatchRequestDto.class)
+            .flatMap(batch -> {
+                List<RequestDto> requests = batch.getRequests();
+                logger.debug("Incoming batch of {} requests", requests.size());
+
+                if (requests.isEmpty() || requests.size() > maxBatchSize) {
+                    logger.info("Bad request: batch size {} is outside 1..{}", requests.size(), maxBatchSize);
+                    metrics.recordRejected();
+                    return ServerResponse.badRequest().build();
+                }
+                for (RequestDto request : requests) {
+                    if (!isValid(request)) {
+                        metrics.recordRejected();
+                        return ServerResponse.badRequest().build();
+                    }
+                }
+
+                List<String> logins = new ArrayList<>(requests.size());
+                for (RequestDto request : requests) {
+                    logins.add(request.getLogin());
+                }
+                Mono<List<ResponseDto>> shed = Mono.fromSupplier(() ->
+                    Collections.nCopies(requests.size(), new ResponseDto(admissionControl.shedResultCode())));
+                return admissionControl.admit(logins, Mono.defer(() -> executeBatch(requests, logins)), shed)
+                    .flatMap(responses -> ServerResponse.ok()
+                        .contentType(responseType(serverRequest))
+                        .bodyValue(new BatchResponseDto(responses)));
+            })
+            .switchIfEmpty(Mono.defer(() -> ServerResponse.badRequest().build()));
+    }
+
+    /**
+     * Check that a request has a login, a password and a known type, and that it carries the parameters
+     * of its operation
+     */
+    public boolean isValid(RequestDto request) {
+        if (request.getLogin() == null) {
+            logger.info("Bad request: missing parameter [login]");
+            return false;
+        }
+        if (request.getPassword() == null) {
+            logger.info("Bad request: missing parameter [password]");
+            return false;
+        }
+        String type = request.getRequestType();
+        if (type == null) {
+            logger.info("Bad request: missing parameter [request-type]");
+            return false;
+        }
+        RegisteredOperation registered = operations.find(type);
+        if (registered == null) {
+            logger.info("Bad request: unknown request type [{}]", type);
+            return false;
+        }
+        Operation operation = registered.operation();
+        for (Parameter parameter : operation.parameters()) {
+            if (!parameter.isValid(request.getExtraValue(parameter.name()))) {
+                logger.info("Bad request: missing or invalid parameter [{}]", parameter.name());
+                return false;
+            }
+        }
+        String invalid = operation.checkRequest(request);
+        if (invalid != null) {
+            logger.info("Bad request: missing or invalid parameter [{}]", invalid);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Execute a request that passed {@link #isValid(RequestDto)}
+     */
+    public Mono<ResponseDto> execute(RequestDto request) {
+        RegisteredOperation registered = operations.find(request.getRequestType());
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return registered.operation().execute(request)
+                .doOnNext(response -> registered.recordRequest(response.getResultCode(), start));
+        });
+    }
+
+    /**
+     * Pick the response format: the supported type the client prefers in {@code Accept}, otherwise the format
+     * of the request. Clients that send XML without an {@code Accept} header (or with a wildcard) get XML back;
+     * an {@code Accept} header that allows no supported type never gets here, the router answers it with 406.
+     */
+    static MediaType responseType(ServerRequest serverRequest) {
+        MediaType best = null;
+        double bestQuality = 0;
+        for (MediaType accepted : serverRequest.headers().accept()) {
+            if (accepted.getQualityValue() <= bestQuality) {
+                continue;
+            }
+            for (MediaType supported : CodecConfig.API_MEDIA_TYPES) {
+                if (supported.equalsTypeAndSubtype(accepted)) {
+                    best = supported;
+                    bestQuality = accepted.getQualityValue();
+                }
+            }
+        }
+        if (best != null) {
+            return best;
+        }
+        MediaType contentType = serverRequest.headers().contentType().orElse(MediaType.APPLICATION_XML);
+        for (MediaType supported : CodecConfig.API_MEDIA_TYPES) {
+            if (supported.equalsTypeAndSubtype(contentType)) {
+                return supported;
+            }
+        }
+        return MediaType.APPLICATION_XML;
+    }
+
+    private Mono<List<ResponseDto>> executeBatch(List<RequestDto> requests, List<String> logins) {
+        return ApiMetrics.timed(clientService.findByLogins(logins), findByLoginsTimer)
+            .flatMap(prefetched -> {
+                BatchContext context = new BatchContext(prefetched);
+                return Flux.fromIterable(requests)
+                    .concatMap(request -> {
+                        RegisteredOperation registered = operations.find(request.getRequestType());
+                        long start = System.nanoTime();
+                        return registered.operation().execute(request, context)
+                            .doOnNext(response -> registered.recordRequest(response.getResultCode(), start));
+                    })
+                    .collectList();
+            })
+            .onErrorResume(e -> Mono.just(Collections.nCopies(requests.size(), new ResponseDto(ResultCodes.TECHNICAL_ERROR))));
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.qiwitest.controller;
+
+import com.example.qiwitest.codec.ClientExportWriter;
+import com.example.qiwitest.service.ClientExporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Handles {@code GET /export} (see {@link com.example.qiwitest.config.RouterConfig}): streams the clients as a
+ * chunked XML document, written page by page as the connection takes it (see {@link ClientExporter} and
+ * {@link ClientExportWriter}). {@code after} resumes after a client ID, {@code shard} picks the shard to export.
+ */
+@Component
+public class ExportHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExportHandler.class);
+
+    private final ClientExporter exporter;
+
+    @Autowired
+    public ExportHandler(ClientExporter exporter) {
+        this.exporter = exporter;
+    }
+
+    public Mono<ServerResponse> exportClients(ServerRequest request) {
+        long after;
+        int shard;
+        try {
+            after = request.queryParam("after").map(Long::parseLong).orElse(0L);
+            shard = request.queryParam("shard").map(Integer::parseInt).orElse(0);
+        } catch (NumberFormatException e) {
+            return ServerResponse.badRequest().build();
+        }
+        Flux<DataBuffer> body;
+        try {
+            DataBufferFactory bufferFactory = request.exchange().getResponse().bufferFactory();
+            body = Flux.concat(
+                Mono.fromSupplier(() -> ClientExportWriter.header(bufferFactory, after)),
+                exporter.pages(shard, after).map(page -> ClientExportWriter.page(bufferFactory, page)),
+                Mono.fromSupplier(() -> ClientExportWriter.footer(bufferFactory)));
+        } catch (IllegalArgumentException e) {
+            return ServerResponse.badRequest().contentType(MediaType.TEXT_PLAIN).bodyValue(e.getMessage());
+        }
+        return ServerResponse.ok()
+            .contentType(MediaType.APPLICATION_XML)
+            .body(BodyInserters.fromDataBuffers(body
+                .doOnError(e -> logger.error("Client export of shard {} after {} failed", shard, after, e))));
+    }
+}
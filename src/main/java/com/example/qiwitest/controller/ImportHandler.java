@@ -0,0 +1,48 @@
+package com.example.qiwitest.controller;
+
+import com.example.qiwitest.service.ClientImporter;
+import com.example.qiwitest.service.ClientImporter.MigrationInProgressException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyExtractors;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Handles {@code POST /import} (see {@link com.example.qiwitest.config.RouterConfig}): the CSV body is split into
+ * lines as it arrives and handed to the {@link ClientImporter}, which requests more only as chunks are loaded.
+ * Answers with the import report as JSON, or 409 while shards are being migrated.
+ */
+@Component
+public class ImportHandler {
+
+    private static final StringDecoder LINES = StringDecoder.allMimeTypes();
+    private static final ResolvableType STRING = ResolvableType.forClass(String.class);
+
+    private final ClientImporter importer;
+
+    @Autowired
+    public ImportHandler(ClientImporter importer) {
+        this.importer = importer;
+    }
+
+    public Mono<ServerResponse> importClients(ServerRequest request) {
+        MediaType contentType = request.headers().contentType().orElse(MediaType.TEXT_PLAIN);
+        Flux<String> lines = LINES.decode(request.body(BodyExtractors.toDataBuffers()), STRING, contentType, Map.of());
+        return importer.importCsv(lines)
+            .flatMap(report -> ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(report))
+            .onErrorResume(MigrationInProgressException.class, e -> ServerResponse.status(HttpStatus.CONFLICT)
+                .contentType(MediaType.TEXT_PLAIN)
+                .bodyValue(e.getMessage()));
+    }
+}
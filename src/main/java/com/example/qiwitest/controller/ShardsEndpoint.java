@@ -0,0 +1,53 @@
+package com.example.qiwitest.controller;
+
+import com.example.qiwitest.repository.ShardMigrator;
+import com.example.qiwitest.repository.ShardRouter;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shard administration at {@code /actuator/shards}: GET lists the shard layout and the number of clients
+ * on each database, POST moves clients to their new shard during a resharding (see {@link ShardMigrator}).
+ */
+@Endpoint(id = "shards")
+public class ShardsEndpoint {
+
+    private final DatabaseClient databaseClient;
+    private final ShardRouter router;
+    private final ShardMigrator migrator;
+
+    public ShardsEndpoint(DatabaseClient databaseClient, ShardRouter router, ShardMigrator migrator) {
+        this.databaseClient = databaseClient;
+        this.router = router;
+        this.migrator = migrator;
+    }
+
+    @ReadOperation
+    public Mono<Map<String, Object>> shards() {
+        return Flux.fromIterable(router.databases())
+            .concatMap(database -> router.onDatabase(database, databaseClient.sql("SELECT COUNT(*) AS n FROM clients")
+                    .map(row -> row.get("n", Long.class))
+                    .one())
+                .map(count -> Map.entry(database, count)))
+            .collect(LinkedHashMap<String, Long>::new, (counts, entry) -> counts.put(entry.getKey(), entry.getValue()))
+            .map(counts -> {
+                Map<String, Object> shards = new LinkedHashMap<>();
+                shards.put("shardCount", router.shardCount());
+                shards.put("previousCount", router.previousCount());
+                shards.put("clients", counts);
+                return shards;
+            });
+    }
+
+    @WriteOperation
+    public Mono<ShardMigrator.Report> migrate() {
+        return migrator.migrate();
+    }
+}
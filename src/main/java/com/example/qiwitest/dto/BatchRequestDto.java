@@ -0,0 +1,34 @@
+package com.example.qiwitest.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlElementWrapper;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@JacksonXmlRootElement(localName = "requests")
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BatchRequestDto {
+
+    @JacksonXmlElementWrapper(useWrapping = false)
+    @JacksonXmlProperty(localName = "request")
+    private List<RequestDto> requests;
+
+    public BatchRequestDto() {
+        this.requests = new ArrayList<>();
+    }
+
+    public List<RequestDto> getRequests() {
+        return requests;
+    }
+
+    public void setRequests(List<RequestDto> requests) {
+        this.requests = requests;
+    }
+
+    public void addRequest(RequestDto request) {
+        this.requests.add(request);
+    }
+}
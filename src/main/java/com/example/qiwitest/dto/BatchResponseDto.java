@@ -0,0 +1,32 @@
+package com.example.qiwitest.dto;
+
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlElementWrapper;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@JacksonXmlRootElement(localName = "responses")
+public class BatchResponseDto {
+
+    @JacksonXmlElementWrapper(useWrapping = false)
+    @JacksonXmlProperty(localName = "response")
+    private List<ResponseDto> responses;
+
+    public BatchResponseDto() {
+        this.responses = new ArrayList<>();
+    }
+
+    public BatchResponseDto(List<ResponseDto> responses) {
+        this.responses = responses;
+    }
+
+    public List<ResponseDto> getResponses() {
+        return responses;
+    }
+
+    public void setResponses(List<ResponseDto> responses) {
+        this.responses = responses;
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.qiwitest.dto;
 
+import com.example.qiwitest.model.Money;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlText;
 
@@ -11,6 +13,10 @@ public class ExtraDto {
     @JacksonXmlText
     private String value;
 
+    // Set instead of the value for amounts, so the encoders can write the digits without building a String
+    @JsonIgnore
+    private Money amount;
+
     public String getName() {
         return name;
     }
@@ -20,10 +26,18 @@ public class ExtraDto {
     }
 
     public String getValue() {
-        return value;
+        return value == null && amount != null ? amount.toString() : value;
     }
 
     public void setValue(String value) {
         this.value = value;
     }
+
+    public Money getAmount() {
+        return amount;
+    }
+
+    public void setAmount(Money amount) {
+        this.amount = amount;
+    }
 }
\ No newline at end of file
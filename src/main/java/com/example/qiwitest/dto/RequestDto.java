@@ -1,22 +1,33 @@
 package com.example.qiwitest.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlElementWrapper;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @JacksonXmlRootElement(localName = "request")
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class RequestDto {
 
+    public static final String LOGIN = "login";
+    public static final String PASSWORD = "password";
+
     @JacksonXmlProperty(localName = "request-type")
     private String requestType;
 
-    @JacksonXmlElementWrapper(useWrapping = false)
-    @JacksonXmlProperty(localName = "extra")
-    private List<ExtraDto> extras;
+    // The known extras are kept in fixed fields so the hot path never scans a list
+    private String login;
+    private String password;
+
+    // Any other extras, created on first use
+    private Map<String, String> otherExtras;
 
     public String getRequestType() {
         return requestType;
@@ -26,22 +37,101 @@ public class RequestDto {
         this.requestType = requestType;
     }
 
+    @JsonIgnore
+    public String getLogin() {
+        return login;
+    }
+
+    @JsonIgnore
+    public String getPassword() {
+        return password;
+    }
+
+    @JacksonXmlElementWrapper(useWrapping = false)
+    @JacksonXmlProperty(localName = "extra")
     public List<ExtraDto> getExtras() {
+        List<ExtraDto> extras = new ArrayList<>();
+        if (login != null) {
+            extras.add(extra(LOGIN, login));
+        }
+        if (password != null) {
+            extras.add(extra(PASSWORD, password));
+        }
+        if (otherExtras != null) {
+            otherExtras.forEach((name, value) -> extras.add(extra(name, value)));
+        }
         return extras;
     }
 
+    @JacksonXmlElementWrapper(useWrapping = false)
+    @JacksonXmlProperty(localName = "extra")
     public void setExtras(List<ExtraDto> extras) {
-        this.extras = extras;
+        login = null;
+        password = null;
+        otherExtras = null;
+        if (extras != null) {
+            for (ExtraDto extra : extras) {
+                putExtra(extra.getName(), extra.getValue());
+            }
+        }
+    }
+
+    /**
+     * Add an extra to the request. When the same name appears more than once the first value wins.
+     *
+     * @param name the extra name
+     * @param value the extra value
+     */
+    public void putExtra(String name, String value) {
+        if (name == null) {
+            return;
+        }
+        if (LOGIN.equals(name)) {
+            if (login == null) {
+                login = value;
+            }
+        } else if (PASSWORD.equals(name)) {
+            if (password == null) {
+                password = value;
+            }
+        } else {
+            if (otherExtras == null) {
+                otherExtras = new LinkedHashMap<>();
+            }
+            otherExtras.putIfAbsent(name, value);
+        }
     }
 
     public String getExtraValue(String name) {
-        if (extras == null) {
-            return null;
+        if (LOGIN.equals(name)) {
+            return login;
+        }
+        if (PASSWORD.equals(name)) {
+            return password;
         }
-        return extras.stream()
-                .filter(extra -> name.equals(extra.getName()))
-                .map(ExtraDto::getValue)
-                .findFirst()
-                .orElse(null);
+        return otherExtras == null ? null : otherExtras.get(name);
+    }
+
+    /**
+     * Get the extras other than login and password
+     *
+     * @return an unmodifiable view of the remaining extras
+     */
+    @JsonIgnore
+    public Map<String, String> getOtherExtras() {
+        return otherExtras == null ? Collections.emptyMap() : Collections.unmodifiableMap(otherExtras);
+    }
+
+    @Override
+    public String toString() {
+        return "RequestDto{requestType=" + requestType + ", login=" + login
+                + ", extras=" + getOtherExtras().keySet() + "}";
+    }
+
+    private static ExtraDto extra(String name, String value) {
+        ExtraDto extra = new ExtraDto();
+        extra.setName(name);
+        extra.setValue(value);
+        return extra;
     }
-}
\ No newline at end of file
+}
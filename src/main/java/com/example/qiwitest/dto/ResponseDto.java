@@ -1,5 +1,6 @@
 package com.example.qiwitest.dto;
 
+import com.example.qiwitest.model.Money;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
 
@@ -46,4 +47,11 @@ public class ResponseDto {
         extra.setValue(value);
         this.extras.add(extra);
     }
+
+    public void addExtra(String name, Money amount) {
+        ExtraDto extra = new ExtraDto();
+        extra.setName(name);
+        extra.setAmount(amount);
+        this.extras.add(extra);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,155 @@
+package com.example.qiwitest.metrics;
+
+import com.example.qiwitest.operation.ResultCodes;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers and counters for the request path.
+ * <p>
+ * Every meter is registered up front, so recording is an array lookup plus {@link Timer#record(long, TimeUnit)}
+ * and never goes through the registry (no tag arrays or meter ids are built per request).
+ * <ul>
+ *     <li>{@code qiwitest.requests} - whole operations, tagged by request type and result code</li>
+ *     <li>{@code qiwitest.requests.rejected} - requests answered with HTTP 400</li>
+ *     <li>{@code qiwitest.codec} - body decode and encode, tagged by operation, body and format</li>
+ *     <li>{@code qiwitest.service} - {@code ClientService} calls made by the controller, tagged by method</li>
+ *     <li>{@code qiwitest.repository} - database round trips, tagged by query</li>
+ * </ul>
+ */
+@Component
+public class ApiMetrics {
+
+    private final MeterRegistry registry;
+    private final Counter rejected;
+
+    private final Timer requestDecode;
+    private final Timer batchDecode;
+    private final Timer responseEncode;
+    private final Timer batchEncode;
+
+    @Autowired
+    public ApiMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.rejected = Counter.builder("qiwitest.requests.rejected")
+            .description("Requests answered with HTTP 400")
+            .register(registry);
+        this.requestDecode = codecTimer("decode", "request", "xml");
+        this.batchDecode = codecTimer("decode", "batch", "xml");
+        this.responseEncode = codecTimer("encode", "response", "xml");
+        this.batchEncode = codecTimer("encode", "batch", "xml");
+    }
+
+    /**
+     * Create metrics that record nothing
+     *
+     * @return metrics backed by an empty composite registry
+     */
+    public static ApiMetrics disabled() {
+        return new ApiMetrics(new CompositeMeterRegistry());
+    }
+
+    /**
+     * Register the timers for a request type, one per result code. Meant to be called once per request type.
+     *
+     * @param requestType the request type
+     * @return the timers indexed by result code
+     */
+    public Timer[] requestTimers(String requestType) {
+        Timer[] timers = new Timer[ResultCodes.COUNT];
+        for (int code = 0; code < timers.length; code++) {
+            timers[code] = Timer.builder("qiwitest.requests")
+                .description("Operations processed, by request type and result code")
+                .tag("type", requestType)
+                .tag("result", String.valueOf(code))
+                .register(registry);
+        }
+        return timers;
+    }
+
+    /**
+     * Record a processed operation
+     *
+     * @param timers the timers of the request type
+     * @param resultCode the result code of the response
+     * @param startNanos {@link System#nanoTime()} when processing started
+     */
+    public static void recordRequest(Timer[] timers, int resultCode, long startNanos) {
+        if (resultCode >= 0 && resultCode < timers.length) {
+            timers[resultCode].record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void recordRejected() {
+        rejected.increment();
+    }
+
+    public Timer requestDecodeTimer() {
+        return requestDecode;
+    }
+
+    public Timer batchDecodeTimer() {
+        return batchDecode;
+    }
+
+    public Timer responseEncodeTimer() {
+        return responseEncode;
+    }
+
+    public Timer batchEncodeTimer() {
+        return batchEncode;
+    }
+
+    /**
+     * Register the timer for a service method. Meant to be called once and kept in a field.
+     */
+    public Timer serviceTimer(String method) {
+        return Timer.builder("qiwitest.service")
+            .description("ClientService calls made by the controller")
+            .tag("method", method)
+            .register(registry);
+    }
+
+    /**
+     * Register the timer for a repository query. Meant to be called once and kept in a field.
+     */
+    public Timer repositoryTimer(String query) {
+        return Timer.builder("qiwitest.repository")
+            .description("Database round trips")
+            .tag("query", query)
+            .register(registry);
+    }
+
+    /**
+     * Time a Mono from subscription until it completes, fails or is cancelled
+     */
+    public static <T> Mono<T> timed(Mono<T> mono, Timer timer) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return mono.doFinally(signal -> timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    /**
+     * Register the timer for a codec. Meant to be called once per codec.
+     *
+     * @param operation decode or encode
+     * @param body request, response or batch
+     * @param format xml, json or cbor
+     */
+    public Timer codecTimer(String operation, String body, String format) {
+        return Timer.builder("qiwitest.codec")
+            .description("Body decoding and encoding")
+            .tag("operation", operation)
+            .tag("body", body)
+            .tag("format", format)
+            .register(registry);
+    }
+}
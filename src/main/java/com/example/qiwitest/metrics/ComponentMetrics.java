@@ -0,0 +1,144 @@
+package com.example.qiwitest.metrics;
+
+import com.example.qiwitest.controller.AdmissionControl;
+import com.example.qiwitest.repository.ReplicaRouter;
+import com.example.qiwitest.service.ClientCache;
+import com.example.qiwitest.service.LedgerWriter;
+import com.example.qiwitest.service.LoginFilter;
+import com.example.qiwitest.service.LookupBatcher;
+import com.example.qiwitest.service.LookupCoalescer;
+import com.example.qiwitest.service.PasswordHasher;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Exposes the statistics the service components already keep. The values are read at scrape time,
+ * so nothing is recorded on the request path.
+ */
+@Component
+public class ComponentMetrics implements MeterBinder {
+
+    private final ClientCache clientCache;
+    private final LoginFilter loginFilter;
+    private final LookupCoalescer lookupCoalescer;
+    private final LookupBatcher lookupBatcher;
+    private final PasswordHasher passwordHasher;
+    private final LedgerWriter ledgerWriter;
+    private final ReplicaRouter replicaRouter;
+    private final AdmissionControl admissionControl;
+
+    @Autowired
+    public ComponentMetrics(ClientCache clientCache, LoginFilter loginFilter, LookupCoalescer lookupCoalescer,
+                            LookupBatcher lookupBatcher, PasswordHasher passwordHasher, LedgerWriter ledgerWriter,
+                            ReplicaRouter replicaRouter, AdmissionControl admissionControl) {
+        this.clientCache = clientCache;
+        this.loginFilter = loginFilter;
+        this.lookupCoalescer = lookupCoalescer;
+        this.lookupBatcher = lookupBatcher;
+        this.passwordHasher = passwordHasher;
+        this.ledgerWriter = ledgerWriter;
+        this.replicaRouter = replicaRouter;
+        this.admissionControl = admissionControl;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("qiwitest.cache.requests", clientCache, cache -> cache.stats().hitCount())
+            .tag("result", "hit")
+            .register(registry);
+        FunctionCounter.builder("qiwitest.cache.requests", clientCache, cache -> cache.stats().missCount())
+            .tag("result", "miss")
+            .register(registry);
+        Gauge.builder("qiwitest.cache.size", clientCache, ClientCache::estimatedSize)
+            .register(registry);
+
+        FunctionCounter.builder("qiwitest.login-filter.lookups", loginFilter,
+                filter -> filter.stats().definitelyAbsent())
+            .tag("result", "absent")
+            .register(registry);
+        FunctionCounter.builder("qiwitest.login-filter.lookups", loginFilter,
+                filter -> filter.stats().mightBePresent())
+            .tag("result", "might-be-present")
+            .register(registry);
+        FunctionCounter.builder("qiwitest.login-filter.false-positives", loginFilter,
+                filter -> filter.stats().falsePositives())
+            .register(registry);
+
+        FunctionCounter.builder("qiwitest.single-flight.lookups", lookupCoalescer, LookupCoalescer::executedCount)
+            .tag("result", "executed")
+            .register(registry);
+        FunctionCounter.builder("qiwitest.single-flight.lookups", lookupCoalescer, LookupCoalescer::coalescedCount)
+            .tag("result", "coalesced")
+            .register(registry);
+        Gauge.builder("qiwitest.single-flight.in-flight", lookupCoalescer, LookupCoalescer::inFlightCount)
+            .register(registry);
+
+        FunctionCounter.builder("qiwitest.lookup-batch.queries", lookupBatcher, LookupBatcher::queryCount)
+            .register(registry);
+        FunctionCounter.builder("qiwitest.lookup-batch.lookups", lookupBatcher, LookupBatcher::lookupCount)
+            .register(registry);
+        Gauge.builder("qiwitest.lookup-batch.queued", lookupBatcher, LookupBatcher::queuedCount)
+            .register(registry);
+
+        Gauge.builder("qiwitest.password.queue", passwordHasher, PasswordHasher::queueSize)
+            .register(registry);
+        Gauge.builder("qiwitest.password.active", passwordHasher, PasswordHasher::activeCount)
+            .register(registry);
+        FunctionCounter.builder("qiwitest.password.rejected", passwordHasher, PasswordHasher::rejectedCount)
+            .register(registry);
+
+        FunctionCounter.builder("qiwitest.ledger.batches", ledgerWriter, LedgerWriter::batchCount)
+            .register(registry);
+        FunctionCounter.builder("qiwitest.ledger.entries", ledgerWriter, LedgerWriter::entryCount)
+            .register(registry);
+        FunctionCounter.builder("qiwitest.ledger.retries", ledgerWriter, LedgerWriter::retryCount)
+            .register(registry);
+        FunctionCounter.builder("qiwitest.ledger.failures", ledgerWriter, LedgerWriter::failureCount)
+            .register(registry);
+
+        if (admissionControl.isEnabled()) {
+            FunctionCounter.builder("qiwitest.admission.admitted", admissionControl,
+                    AdmissionControl::admittedCount)
+                .register(registry);
+            FunctionCounter.builder("qiwitest.admission.shed", admissionControl,
+                    AdmissionControl::shedConcurrencyCount)
+                .tag("reason", "concurrency")
+                .register(registry);
+            FunctionCounter.builder("qiwitest.admission.shed", admissionControl,
+                    AdmissionControl::shedLoginRateCount)
+                .tag("reason", "login-rate")
+                .register(registry);
+            FunctionCounter.builder("qiwitest.admission.shed", admissionControl,
+                    AdmissionControl::shedGlobalRateCount)
+                .tag("reason", "global-rate")
+                .register(registry);
+            Gauge.builder("qiwitest.admission.running", admissionControl, AdmissionControl::runningCount)
+                .register(registry);
+            Gauge.builder("qiwitest.admission.logins", admissionControl, AdmissionControl::trackedLogins)
+                .register(registry);
+        }
+
+        if (replicaRouter.isEnabled()) {
+            FunctionCounter.builder("qiwitest.replica.reads", replicaRouter, ReplicaRouter::replicaReads)
+                .tag("target", "replica")
+                .register(registry);
+            FunctionCounter.builder("qiwitest.replica.reads", replicaRouter, ReplicaRouter::pinnedReads)
+                .tag("target", "primary-pinned")
+                .register(registry);
+            FunctionCounter.builder("qiwitest.replica.reads", replicaRouter, ReplicaRouter::unavailableReads)
+                .tag("target", "primary-no-replica")
+                .register(registry);
+            FunctionCounter.builder("qiwitest.replica.failovers", replicaRouter, ReplicaRouter::failovers)
+                .register(registry);
+            for (ReplicaRouter.Replica replica : replicaRouter.replicas()) {
+                Gauge.builder("qiwitest.replica.healthy", replica, r -> r.isHealthy() ? 1 : 0)
+                    .tag("replica", replica.name())
+                    .register(registry);
+            }
+        }
+    }
+}
@@ -2,7 +2,6 @@ package com.example.qiwitest.model;
 
 import org.springframework.data.annotation.Id;
 import org.springframework.data.relational.core.mapping.Table;
-import java.math.BigDecimal;
 
 @Table("CLIENTS")
 public class Client {
@@ -14,7 +13,7 @@ public class Client {
 
     private String password;
 
-    private BigDecimal balance = BigDecimal.ZERO;
+    private Money balance = Money.ZERO;
 
     // Default constructor required by JPA
     public Client() {
@@ -23,10 +22,10 @@ public class Client {
     public Client(String login, String password) {
         this.login = login;
         this.password = password;
-        this.balance = BigDecimal.ZERO;
+        this.balance = Money.ZERO;
     }
 
-    public Client(String login, String password, BigDecimal balance) {
+    public Client(String login, String password, Money balance) {
         this.login = login;
         this.password = password;
         this.balance = balance;
@@ -56,11 +55,11 @@ public class Client {
         this.password = password;
     }
 
-    public BigDecimal getBalance() {
+    public Money getBalance() {
         return balance;
     }
 
-    public void setBalance(BigDecimal balance) {
+    public void setBalance(Money balance) {
         this.balance = balance;
     }
 }
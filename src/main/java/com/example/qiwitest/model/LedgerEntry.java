@@ -0,0 +1,85 @@
+package com.example.qiwitest.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+import java.time.LocalDateTime;
+
+/**
+ * One balance movement. Ledger rows are only ever inserted, never updated or deleted.
+ */
+@Table("LEDGER")
+public class LedgerEntry {
+
+    @Id
+    private Long id;
+
+    private String login;
+
+    // Signed: positive for money coming in, negative for money going out
+    private Money amount;
+
+    private String operation;
+
+    // The other side of a transfer, null otherwise
+    private String counterparty;
+
+    private LocalDateTime createdAt;
+
+    public LedgerEntry() {
+    }
+
+    public LedgerEntry(String login, Money amount, String operation, String counterparty) {
+        this.login = login;
+        this.amount = amount;
+        this.operation = operation;
+        this.counterparty = counterparty;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    public void setLogin(String login) {
+        this.login = login;
+    }
+
+    public Money getAmount() {
+        return amount;
+    }
+
+    public void setAmount(Money amount) {
+        this.amount = amount;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public void setOperation(String operation) {
+        this.operation = operation;
+    }
+
+    public String getCounterparty() {
+        return counterparty;
+    }
+
+    public void setCounterparty(String counterparty) {
+        this.counterparty = counterparty;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.qiwitest.model;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An amount of money as a whole number of 1/10000 units, the four decimal places the API has always used.
+ * Balances and ledger amounts are stored the same way, as BIGINT (see {@code sql/migrate-money-to-units.sql}).
+ * <p>
+ * Arithmetic is exact and throws {@link ArithmeticException} instead of overflowing. The text form always has
+ * four decimal places, exactly like {@code BigDecimal.toString()} of a scale-4 value ({@code 0.0000},
+ * {@code 12.5000}), and {@link #formatTo(byte[], int)} writes it without allocating.
+ */
+public final class Money implements Comparable<Money> {
+
+    public static final int SCALE = 4;
+    public static final long UNITS_PER_WHOLE = 10_000;
+
+    // Longest text formatTo can write: -922337203685477.5808
+    public static final int MAX_LENGTH = 21;
+
+    // Digits before the decimal point of the largest amount, 922337203685477
+    static final int MAX_INTEGER_DIGITS = 15;
+
+    public static final Money ZERO = new Money(0);
+
+    private final long units;
+
+    private Money(long units) {
+        this.units = units;
+    }
+
+    /**
+     * @param units the amount in 1/10000 units
+     * @return the amount
+     */
+    public static Money ofUnits(long units) {
+        return units == 0 ? ZERO : new Money(units);
+    }
+
+    /**
+     * Convert a decimal amount exactly
+     *
+     * @param amount the amount
+     * @return the amount
+     * @throws ArithmeticException if the amount has more than four decimal places or does not fit in a long
+     */
+    public static Money of(BigDecimal amount) {
+        // Checked on the unscaled digits first, so an exponent such as 1E999999999 is never expanded
+        if (amount.signum() != 0 && (long) amount.precision() - amount.scale() > MAX_INTEGER_DIGITS) {
+            throw new ArithmeticException("Amount out of range: " + amount);
+        }
+        return ofUnits(amount.movePointRight(SCALE).longValueExact());
+    }
+
+    /**
+     * Parse a decimal amount. Plain decimals such as {@code 10}, {@code -0.5} or {@code 12.34500} are parsed
+     * in place; anything else {@link BigDecimal#BigDecimal(String)} accepts, such as {@code 1E+2}, is too.
+     *
+     * @param text the amount
+     * @return the amount
+     * @throws NumberFormatException if the text is not a number
+     * @throws ArithmeticException if the amount has more than four decimal places or does not fit in a long
+     */
+    public static Money parse(String text) {
+        int length = text.length();
+        int position = 0;
+        boolean negative = false;
+        if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+            negative = text.charAt(0) == '-';
+            position = 1;
+        }
+        long units = 0;
+        int digits = 0;
+        // -1 until the decimal point
+        int decimals = -1;
+        for (; position < length; position++) {
+            char c = text.charAt(position);
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                return of(new BigDecimal(text));
+            }
+            digits++;
+            if (decimals >= 0 && ++decimals > SCALE) {
+                if (c != '0') {
+                    throw new ArithmeticException("More than " + SCALE + " decimal places: " + text);
+                }
+                continue;
+            }
+            units = Math.addExact(Math.multiplyExact(units, 10), c - '0');
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("Not a number: " + text);
+        }
+        for (int scale = Math.max(decimals, 0); scale < SCALE; scale++) {
+            units = Math.multiplyExact(units, 10);
+        }
+        return ofUnits(negative ? -units : units);
+    }
+
+    /**
+     * @return the amount in 1/10000 units
+     */
+    public long units() {
+        return units;
+    }
+
+    public Money plus(Money other) {
+        return ofUnits(Math.addExact(units, other.units));
+    }
+
+    public Money minus(Money other) {
+        return ofUnits(Math.subtractExact(units, other.units));
+    }
+
+    public Money negate() {
+        return ofUnits(Math.negateExact(units));
+    }
+
+    public int signum() {
+        return Long.signum(units);
+    }
+
+    /**
+     * @return the number of characters {@link #formatTo(byte[], int)} writes
+     */
+    public int formattedLength() {
+        long whole = Math.abs(units / UNITS_PER_WHOLE);
+        int length = (units < 0 ? 2 : 1) + SCALE;
+        do {
+            length++;
+            whole /= 10;
+        } while (whole > 0);
+        return length;
+    }
+
+    /**
+     * Write the amount as ASCII text with four decimal places
+     *
+     * @param target the array to write to, with room for {@link #formattedLength()} bytes from the offset
+     * @param offset where to start writing
+     * @return the offset after the last byte written
+     */
+    public int formatTo(byte[] target, int offset) {
+        int end = offset + formattedLength();
+        long whole = units / UNITS_PER_WHOLE;
+        long fraction = units % UNITS_PER_WHOLE;
+        if (units < 0) {
+            target[offset] = '-';
+            whole = -whole;
+            fraction = -fraction;
+        }
+        int position = end;
+        for (int i = 0; i < SCALE; i++) {
+            target[--position] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        target[--position] = '.';
+        do {
+            target[--position] = (byte) ('0' + whole % 10);
+            whole /= 10;
+        } while (whole > 0);
+        return end;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(units, other.units);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money other && units == other.units;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(units);
+    }
+
+    @Override
+    public String toString() {
+        byte[] text = new byte[formattedLength()];
+        formatTo(text, 0);
+        return new String(text, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.qiwitest.operation;
+
+import com.example.qiwitest.dto.RequestDto;
+import com.example.qiwitest.dto.ResponseDto;
+import com.example.qiwitest.metrics.ApiMetrics;
+import com.example.qiwitest.model.Money;
+import com.example.qiwitest.service.BalanceUpdate;
+import com.example.qiwitest.service.ClientService;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Mono;
+
+/**
+ * Base for the operations that change a balance: checks the client's password, then applies the update.
+ */
+public abstract class BalanceUpdateOperation implements Operation {
+
+    public static final String AMOUNT = "amount";
+
+    protected static final Parameter AMOUNT_PARAMETER = new Parameter(AMOUNT, value -> parseAmount(value) != null);
+
+    protected final ClientService clientService;
+    private final Timer findByLoginTimer;
+    private final Timer isPasswordCorrectTimer;
+    private final Timer updateTimer;
+
+    protected BalanceUpdateOperation(ClientService clientService, ApiMetrics metrics, String updateMethod) {
+        this.clientService = clientService;
+        this.findByLoginTimer = metrics.serviceTimer("findByLogin");
+        this.isPasswordCorrectTimer = metrics.serviceTimer("isPasswordCorrect");
+        this.updateTimer = metrics.serviceTimer(updateMethod);
+    }
+
+    /**
+     * Apply the update for an authenticated client
+     *
+     * @param request the request
+     * @param amount the validated amount
+     * @return the outcome of the update
+     */
+    protected abstract Mono<BalanceUpdate> update(RequestDto request, Money amount);
+
+    @Override
+    public Mono<ResponseDto> execute(RequestDto request) {
+        Money amount = parseAmount(request.getExtraValue(AMOUNT));
+        return ApiMetrics.timed(clientService.findByLogin(request.getLogin()), findByLoginTimer)
+            .flatMap(client -> ApiMetrics.timed(
+                clientService.isPasswordCorrect(Mono.just(client), request.getPassword()), isPasswordCorrectTimer))
+            .flatMap(isCorrect -> isCorrect
+                ? ApiMetrics.timed(update(request, amount), updateTimer).map(BalanceUpdateOperation::updateResponse)
+                : Mono.just(new ResponseDto(ResultCodes.WRONG_PASSWORD)))
+            .switchIfEmpty(Mono.just(new ResponseDto(ResultCodes.CLIENT_DOES_NOT_EXIST)))
+            .onErrorReturn(new ResponseDto(ResultCodes.TECHNICAL_ERROR));
+    }
+
+    /**
+     * Parse a positive amount with at most four decimal places that fits in a {@link Money}
+     *
+     * @return the amount, or null if the value is missing or invalid
+     */
+    static Money parseAmount(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            Money amount = Money.parse(value.trim());
+            return amount.signum() > 0 ? amount : null;
+        } catch (NumberFormatException | ArithmeticException e) {
+            return null;
+        }
+    }
+
+    private static ResponseDto updateResponse(BalanceUpdate outcome) {
+        switch (outcome) {
+            case APPLIED:
+                return new ResponseDto(ResultCodes.OK);
+            case INSUFFICIENT_FUNDS:
+                return new ResponseDto(ResultCodes.INSUFFICIENT_FUNDS);
+            default:
+                return new ResponseDto(ResultCodes.CLIENT_DOES_NOT_EXIST);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.qiwitest.operation;
+
+import com.example.qiwitest.model.Client;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * State shared by the items of one batch: the clients loaded before the batch started and the logins
+ * created or changed by earlier items, whose prefetched state must no longer be used. Items run one
+ * after another, so no synchronization is needed.
+ */
+public final class BatchContext {
+
+    private final Map<String, Client> prefetched;
+    private final Set<String> created = new HashSet<>();
+    private final Set<String> changed = new HashSet<>();
+
+    public BatchContext(Map<String, Client> prefetched) {
+        this.prefetched = prefetched;
+    }
+
+    /**
+     * @return the client loaded before the batch, or null if there was none
+     */
+    public Client prefetched(String login) {
+        return prefetched.get(login);
+    }
+
+    /**
+     * @return true if no earlier item created or changed this login
+     */
+    public boolean isFresh(String login) {
+        return !changed.contains(login);
+    }
+
+    public boolean wasCreated(String login) {
+        return created.contains(login);
+    }
+
+    public void markCreated(String login) {
+        created.add(login);
+        changed.add(login);
+    }
+
+    public void markChanged(String login) {
+        changed.add(login);
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.qiwitest.operation;
+
+import com.example.qiwitest.dto.RequestDto;
+import com.example.qiwitest.dto.ResponseDto;
+import com.example.qiwitest.metrics.ApiMetrics;
+import com.example.qiwitest.service.ClientService;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * CREATE-AGT: create a client with a zero balance
+ */
+@Component
+public class CreateClientOperation implements Operation {
+
+    public static final String REQUEST_TYPE = "CREATE-AGT";
+
+    private final ClientService clientService;
+    private final Timer createIfAbsentTimer;
+
+    @Autowired
+    public CreateClientOperation(ClientService clientService, ApiMetrics metrics) {
+        this.clientService = clientService;
+        this.createIfAbsentTimer = metrics.serviceTimer("createIfAbsent");
+    }
+
+    @Override
+    public String requestType() {
+        return REQUEST_TYPE;
+    }
+
+    @Override
+    public List<Parameter> parameters() {
+        return List.of();
+    }
+
+    @Override
+    public Mono<ResponseDto> execute(RequestDto request) {
+        return ApiMetrics.timed(clientService.createIfAbsent(request.getLogin(), request.getPassword()), createIfAbsentTimer)
+            .map(created -> new ResponseDto(created ? ResultCodes.OK : ResultCodes.CLIENT_ALREADY_EXISTS))
+            .onErrorReturn(new ResponseDto(ResultCodes.TECHNICAL_ERROR));
+    }
+
+    /**
+     * A login that existed before the batch or was created by an earlier item is answered without a query
+     */
+    @Override
+    public Mono<ResponseDto> execute(RequestDto request, BatchContext batch) {
+        String login = request.getLogin();
+        if (batch.wasCreated(login) || (batch.isFresh(login) && batch.prefetched(login) != null)) {
+            return Mono.just(new ResponseDto(ResultCodes.CLIENT_ALREADY_EXISTS));
+        }
+        return execute(request)
+            .doOnNext(response -> {
+                if (response.getResultCode() == ResultCodes.OK) {
+                    batch.markCreated(login);
+                }
+            });
+    }
+}
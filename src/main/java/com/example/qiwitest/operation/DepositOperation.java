@@ -0,0 +1,41 @@
+package com.example.qiwitest.operation;
+
+import com.example.qiwitest.dto.RequestDto;
+import com.example.qiwitest.metrics.ApiMetrics;
+import com.example.qiwitest.model.Money;
+import com.example.qiwitest.service.BalanceUpdate;
+import com.example.qiwitest.service.ClientService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * DEPOSIT: add money to the client's balance
+ */
+@Component
+public class DepositOperation extends BalanceUpdateOperation {
+
+    public static final String REQUEST_TYPE = "DEPOSIT";
+
+    @Autowired
+    public DepositOperation(ClientService clientService, ApiMetrics metrics) {
+        super(clientService, metrics, "deposit");
+    }
+
+    @Override
+    public String requestType() {
+        return REQUEST_TYPE;
+    }
+
+    @Override
+    public List<Parameter> parameters() {
+        return List.of(AMOUNT_PARAMETER);
+    }
+
+    @Override
+    protected Mono<BalanceUpdate> update(RequestDto request, Money amount) {
+        return clientService.deposit(request.getLogin(), amount);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.qiwitest.operation;
+
+import com.example.qiwitest.dto.RequestDto;
+import com.example.qiwitest.dto.ResponseDto;
+import com.example.qiwitest.metrics.ApiMetrics;
+import com.example.qiwitest.model.Client;
+import com.example.qiwitest.service.ClientService;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * GET-BALANCE: return the balance of a client whose password matches
+ */
+@Component
+public class GetBalanceOperation implements Operation {
+
+    public static final String REQUEST_TYPE = "GET-BALANCE";
+
+    private final ClientService clientService;
+    private final Timer findByLoginTimer;
+    private final Timer isPasswordCorrectTimer;
+
+    @Autowired
+    public GetBalanceOperation(ClientService clientService, ApiMetrics metrics) {
+        this.clientService = clientService;
+        this.findByLoginTimer = metrics.serviceTimer("findByLogin");
+        this.isPasswordCorrectTimer = metrics.serviceTimer("isPasswordCorrect");
+    }
+
+    @Override
+    public String requestType() {
+        return REQUEST_TYPE;
+    }
+
+    @Override
+    public List<Parameter> parameters() {
+        return List.of();
+    }
+
+    @Override
+    public Mono<ResponseDto> execute(RequestDto request) {
+        return ApiMetrics.timed(clientService.findByLogin(request.getLogin()), findByLoginTimer)
+            .flatMap(client -> balanceResponse(client, request.getPassword()))
+            .switchIfEmpty(Mono.just(new ResponseDto(ResultCodes.CLIENT_DOES_NOT_EXIST)))
+            .onErrorReturn(new ResponseDto(ResultCodes.TECHNICAL_ERROR));
+    }
+
+    /**
+     * Uses the client loaded before the batch unless an earlier item created or changed it
+     */
+    @Override
+    public Mono<ResponseDto> execute(RequestDto request, BatchContext batch) {
+        String login = request.getLogin();
+        if (!batch.isFresh(login)) {
+            return execute(request);
+        }
+        Client client = batch.prefetched(login);
+        if (client == null) {
+            return Mono.just(new ResponseDto(ResultCodes.CLIENT_DOES_NOT_EXIST));
+        }
+        return balanceResponse(client, request.getPassword())
+            .onErrorReturn(new ResponseDto(ResultCodes.TECHNICAL_ERROR));
+    }
+
+    private Mono<ResponseDto> balanceResponse(Client client, String password) {
+        return ApiMetrics.timed(clientService.isPasswordCorrect(Mono.just(client), password), isPasswordCorrectTimer)
+            .flatMap(isCorrect -> {
+                if (isCorrect) {
+                    return clientService.getBalance(Mono.just(client))
+                        .map(balance -> {
+                            ResponseDto response = new ResponseDto(ResultCodes.OK);
+                            response.addExtra("balance", balance);
+                            return response;
+                        });
+                } else {
+                    return Mono.just(new ResponseDto(ResultCodes.WRONG_PASSWORD));
+                }
+            });
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.qiwitest.operation;
+
+import com.example.qiwitest.dto.RequestDto;
+import com.example.qiwitest.dto.ResponseDto;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Handler for one {@code request-type}. Every Operation bean is picked up by {@link OperationRegistry};
+ * adding a request type means adding a bean, nothing else.
+ * <p>
+ * Login and password are checked for every request before an operation sees it; {@link #parameters()}
+ * lists the other extras the operation needs.
+ */
+public interface Operation {
+
+    /**
+     * @return the {@code request-type} this operation handles
+     */
+    String requestType();
+
+    /**
+     * @return the extras this operation needs besides login and password
+     */
+    List<Parameter> parameters();
+
+    /**
+     * Check the request beyond the individual parameters, e.g. relations between them
+     *
+     * @param request a request whose parameters are all valid
+     * @return the name of the offending parameter, or null if the request is valid
+     */
+    default String checkRequest(RequestDto request) {
+        return null;
+    }
+
+    /**
+     * Execute a valid request
+     *
+     * @param request the request
+     * @return the response; errors are reported as result codes, the Mono does not fail
+     */
+    Mono<ResponseDto> execute(RequestDto request);
+
+    /**
+     * Execute a valid request as an item of a batch. By default the request is executed on its own and,
+     * if it succeeds, its login is marked as changed so later items do not use the prefetched client.
+     *
+     * @param request the request
+     * @param batch the state shared by the items of the batch
+     * @return the response
+     */
+    default Mono<ResponseDto> execute(RequestDto request, BatchContext batch) {
+        return execute(request)
+            .doOnNext(response -> {
+                if (response.getResultCode() == ResultCodes.OK) {
+                    batch.markChanged(request.getLogin());
+                }
+            });
+    }
+}
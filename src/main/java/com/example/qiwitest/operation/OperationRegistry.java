@@ -0,0 +1,63 @@
+package com.example.qiwitest.operation;
+
+import com.example.qiwitest.metrics.ApiMetrics;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All {@link Operation} beans keyed by request type. Dispatch is a single hash lookup however many
+ * operations there are; the request timers of each type are registered here once.
+ */
+@Component
+public class OperationRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(OperationRegistry.class);
+
+    private final Map<String, RegisteredOperation> operations;
+
+    @Autowired
+    public OperationRegistry(List<Operation> operations, ApiMetrics metrics) {
+        Map<String, RegisteredOperation> byType = new HashMap<>();
+        for (Operation operation : operations) {
+            String type = operation.requestType();
+            RegisteredOperation registered = new RegisteredOperation(operation, metrics.requestTimers(type));
+            if (byType.putIfAbsent(type, registered) != null) {
+                throw new IllegalStateException("More than one operation handles request type [" + type + "]: "
+                    + byType.get(type).operation().getClass().getName() + ", " + operation.getClass().getName());
+            }
+        }
+        this.operations = byType;
+        logger.info("Registered operations: {}", byType.keySet());
+    }
+
+    /**
+     * @param requestType the request type
+     * @return the operation handling the request type, or null if there is none
+     */
+    public RegisteredOperation find(String requestType) {
+        return operations.get(requestType);
+    }
+
+    /**
+     * An operation together with its request timers
+     */
+    public record RegisteredOperation(Operation operation, Timer[] timers) {
+
+        /**
+         * Record a processed request of this type
+         *
+         * @param resultCode the result code of the response
+         * @param startNanos {@link System#nanoTime()} when processing started
+         */
+        public void recordRequest(int resultCode, long startNanos) {
+            ApiMetrics.recordRequest(timers, resultCode, startNanos);
+        }
+    }
+}
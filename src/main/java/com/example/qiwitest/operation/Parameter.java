@@ -0,0 +1,23 @@
+package com.example.qiwitest.operation;
+
+import java.util.function.Predicate;
+
+/**
+ * An extra an operation needs besides login and password
+ *
+ * @param name the extra name
+ * @param validator accepts the valid values; never called with null
+ */
+public record Parameter(String name, Predicate<String> validator) {
+
+    /**
+     * A parameter that must be present, with any value
+     */
+    public static Parameter required(String name) {
+        return new Parameter(name, value -> true);
+    }
+
+    public boolean isValid(String value) {
+        return value != null && validator.test(value);
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.qiwitest.operation;
+
+/**
+ * The {@code result-code} values of the API
+ */
+public final class ResultCodes {
+
+    public static final int OK = 0;
+    public static final int CLIENT_ALREADY_EXISTS = 1;
+    public static final int TECHNICAL_ERROR = 2;
+    public static final int CLIENT_DOES_NOT_EXIST = 3;
+    public static final int WRONG_PASSWORD = 4;
+    public static final int INSUFFICIENT_FUNDS = 5;
+    public static final int OVERLOADED = 6;
+
+    // Number of result codes, for per-code meters
+    public static final int COUNT = 7;
+
+    private ResultCodes() {
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.qiwitest.operation;
+
+import com.example.qiwitest.dto.RequestDto;
+import com.example.qiwitest.dto.ResponseDto;
+import com.example.qiwitest.metrics.ApiMetrics;
+import com.example.qiwitest.model.Money;
+import com.example.qiwitest.service.BalanceUpdate;
+import com.example.qiwitest.service.ClientService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * TRANSFER: move money from the client to another client
+ */
+@Component
+public class TransferOperation extends BalanceUpdateOperation {
+
+    public static final String REQUEST_TYPE = "TRANSFER";
+    public static final String RECIPIENT = "recipient";
+
+    @Autowired
+    public TransferOperation(ClientService clientService, ApiMetrics metrics) {
+        super(clientService, metrics, "transfer");
+    }
+
+    @Override
+    public String requestType() {
+        return REQUEST_TYPE;
+    }
+
+    @Override
+    public List<Parameter> parameters() {
+        return List.of(AMOUNT_PARAMETER, Parameter.required(RECIPIENT));
+    }
+
+    @Override
+    public String checkRequest(RequestDto request) {
+        return request.getExtraValue(RECIPIENT).equals(request.getLogin()) ? RECIPIENT : null;
+    }
+
+    @Override
+    protected Mono<BalanceUpdate> update(RequestDto request, Money amount) {
+        return clientService.transfer(request.getLogin(), request.getExtraValue(RECIPIENT), amount);
+    }
+
+    /**
+     * Both sides of a successful transfer are changed for the rest of the batch
+     */
+    @Override
+    public Mono<ResponseDto> execute(RequestDto request, BatchContext batch) {
+        return execute(request)
+            .doOnNext(response -> {
+                if (response.getResultCode() == ResultCodes.OK) {
+                    batch.markChanged(request.getLogin());
+                    batch.markChanged(request.getExtraValue(RECIPIENT));
+                }
+            });
+    }
+}
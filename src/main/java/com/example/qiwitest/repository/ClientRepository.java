@@ -1,10 +1,15 @@
 package com.example.qiwitest.repository;
 
 import com.example.qiwitest.model.Client;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
+
 @Repository
 public interface ClientRepository extends ReactiveCrudRepository<Client, Long> {
 
@@ -15,4 +20,91 @@ public interface ClientRepository extends ReactiveCrudRepository<Client, Long> {
      * @return the client if found, empty otherwise
      */
     Mono<Client> findByLogin(String login);
+
+    /**
+     * Find all clients whose login is in the given collection
+     *
+     * @param logins the logins to search for
+     * @return the clients found, in no particular order
+     */
+    Flux<Client> findByLoginIn(Collection<String> logins);
+
+    /**
+     * Find all clients whose login is in the given array. The array is bound as a single parameter, so
+     * the statement is the same whatever the number of logins.
+     *
+     * @param logins the logins to search for
+     * @return the clients found, in no particular order
+     */
+    @Query("SELECT * FROM clients WHERE login = ANY(:logins)")
+    Flux<Client> findByLoginAny(String[] logins);
+
+    /**
+     * Insert a client with a zero balance unless the login is already taken, in a single statement.
+     * Unlike a lookup followed by a save this cannot race with a concurrent insert of the same login.
+     *
+     * @param login the client login
+     * @param password the client password
+     * @return 1 if the client was created, 0 if the login already existed
+     */
+    @Modifying
+    @Query("INSERT INTO clients (login, password, balance) VALUES (:login, :password, 0) ON CONFLICT DO NOTHING")
+    Mono<Integer> insertIfAbsent(String login, String password);
+
+    /**
+     * Replace a client's password, but only if it still has the expected value
+     *
+     * @param login the client login
+     * @param oldPassword the password currently stored
+     * @param newPassword the password to store
+     * @return the number of updated rows
+     */
+    @Modifying
+    @Query("UPDATE clients SET password = :newPassword WHERE login = :login AND password = :oldPassword")
+    Mono<Integer> updatePassword(String login, String oldPassword, String newPassword);
+
+    /**
+     * Add an amount (negative to withdraw) to a client's balance in one statement, unless the
+     * balance would become negative. Concurrent calls never lose updates or overdraw.
+     *
+     * @param login the client login
+     * @param amount the amount to add, in 1/10000 units (see {@link com.example.qiwitest.model.Money})
+     * @return 1 if the balance was changed, 0 if the client does not exist or has insufficient funds
+     */
+    @Modifying
+    @Query("UPDATE clients SET balance = balance + :amount WHERE login = :login AND balance + :amount >= 0")
+    Mono<Integer> addToBalance(String login, long amount);
+
+    /**
+     * Insert one ledger entry
+     *
+     * @param login the client login
+     * @param amount the signed amount, in 1/10000 units
+     * @param operation the operation that moved the money
+     * @param counterparty the other side of a transfer, null otherwise
+     * @return the number of inserted rows
+     */
+    @Modifying
+    @Query("INSERT INTO ledger (login, amount, operation, counterparty) "
+        + "VALUES (:login, :amount, :operation, :counterparty)")
+    Mono<Integer> insertLedgerEntry(String login, long amount, String operation, String counterparty);
+
+    /**
+     * Stream every login in the table
+     *
+     * @return all logins, in no particular order
+     */
+    @Query("SELECT login FROM clients")
+    Flux<String> findAllLogins();
+
+    /**
+     * Find the next clients by ID, for keyset pagination: the query walks the primary key index from the
+     * given ID whatever the table size, unlike an OFFSET
+     *
+     * @param after the ID to start after, 0 for the first page
+     * @param limit the maximum number of clients
+     * @return the clients with an ID above {@code after}, by ID
+     */
+    @Query("SELECT * FROM clients WHERE id > :after ORDER BY id LIMIT :limit")
+    Flux<Client> findPageAfter(long after, int limit);
 }
@@ -0,0 +1,98 @@
+package com.example.qiwitest.repository;
+
+import com.example.qiwitest.model.Client;
+import com.example.qiwitest.model.LedgerEntry;
+import com.example.qiwitest.model.Money;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.function.Function;
+
+/**
+ * The statements {@link com.example.qiwitest.service.ClientService} runs against {@code CLIENTS} (and
+ * {@code LEDGER}, inside a balance transaction) while serving requests. {@code qiwitest.persistence} selects
+ * the implementation: {@code r2dbc} (the default, {@link R2dbcClientStore}) or {@code jdbc}
+ * ({@link JdbcClientStore}, blocking JDBC on virtual threads).
+ * Both run the same SQL with the same results, so the API behaves the same either way.
+ */
+public interface ClientStore {
+
+    /**
+     * Find a client by login
+     *
+     * @param login the login to search for
+     * @return the client if found, empty otherwise
+     */
+    Mono<Client> findByLogin(String login);
+
+    /**
+     * Find all clients whose login is in the given collection
+     *
+     * @param logins the logins to search for
+     * @return the clients found, in no particular order
+     */
+    Flux<Client> findByLoginIn(Collection<String> logins);
+
+    /**
+     * Find all clients whose login is in the given array, bound as a single parameter
+     *
+     * @param logins the logins to search for
+     * @return the clients found, in no particular order
+     */
+    Flux<Client> findByLoginAny(String[] logins);
+
+    /**
+     * Insert a new client or update an existing one
+     *
+     * @param client the client to save
+     * @return the saved client, with its id
+     */
+    Mono<Client> save(Client client);
+
+    /**
+     * Insert a client with a zero balance unless the login is already taken, in a single statement
+     *
+     * @param login the client login
+     * @param password the client password
+     * @return 1 if the client was created, 0 if the login already existed
+     */
+    Mono<Integer> insertIfAbsent(String login, String password);
+
+    /**
+     * Replace a client's password, but only if it still has the expected value
+     *
+     * @param login the client login
+     * @param oldPassword the password currently stored
+     * @param newPassword the password to store
+     * @return the number of updated rows
+     */
+    Mono<Integer> updatePassword(String login, String oldPassword, String newPassword);
+
+    /**
+     * Add an amount (negative to withdraw) to a client's balance in one statement, unless the
+     * balance would become negative
+     *
+     * @param login the client login
+     * @param amount the amount to add
+     * @return 1 if the balance was changed, 0 if the client does not exist or has insufficient funds
+     */
+    Mono<Integer> addToBalance(String login, Money amount);
+
+    /**
+     * Insert a ledger entry on its own, so that it commits with the transaction the store runs in
+     *
+     * @param entry the entry to insert
+     * @return completes once the entry is inserted
+     */
+    Mono<Void> insertLedgerEntry(LedgerEntry entry);
+
+    /**
+     * Run statements in one transaction. It commits when the returned Mono completes and rolls back when it
+     * fails or is cancelled.
+     *
+     * @param work builds the statements from the store it is given, which runs them inside the transaction
+     * @return the result of the work
+     */
+    <T> Mono<T> inTransaction(Function<ClientStore, Mono<T>> work);
+}
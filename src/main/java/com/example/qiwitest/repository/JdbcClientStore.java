@@ -0,0 +1,205 @@
+package com.example.qiwitest.repository;
+
+import com.example.qiwitest.model.Client;
+import com.example.qiwitest.model.LedgerEntry;
+import com.example.qiwitest.model.Money;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.support.DataAccessUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * {@link ClientStore} on blocking JDBC. Every statement runs on a virtual thread of its own, so a statement
+ * waiting for the database parks a virtual thread instead of holding an event loop or a platform thread, and
+ * the number of statements running at a time is bounded by the connection pool (see
+ * {@link com.example.qiwitest.config.JdbcConfig}) rather than by a thread pool.
+ * <p>
+ * Statements are not routed by {@link ReplicaRouter} or {@link ShardRouter}; this store always uses the one
+ * database of {@code qiwitest.jdbc.url}.
+ */
+@Component
+@ConditionalOnProperty(name = "qiwitest.persistence", havingValue = "jdbc")
+public class JdbcClientStore implements ClientStore, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcClientStore.class);
+
+    private static final String COLUMNS = "SELECT id, login, password, balance FROM clients";
+    private static final String FIND_BY_LOGIN = COLUMNS + " WHERE login = :login";
+    private static final String FIND_BY_LOGIN_IN = COLUMNS + " WHERE login IN (:logins)";
+    private static final String FIND_BY_LOGIN_ANY = COLUMNS + " WHERE login = ANY(?)";
+    private static final String INSERT =
+        "INSERT INTO clients (login, password, balance) VALUES (:login, :password, :balance)";
+    private static final String UPDATE =
+        "UPDATE clients SET login = :login, password = :password, balance = :balance WHERE id = :id";
+    private static final String INSERT_IF_ABSENT =
+        "INSERT INTO clients (login, password, balance) VALUES (:login, :password, 0) ON CONFLICT DO NOTHING";
+    private static final String UPDATE_PASSWORD =
+        "UPDATE clients SET password = :newPassword WHERE login = :login AND password = :oldPassword";
+    private static final String ADD_TO_BALANCE =
+        "UPDATE clients SET balance = balance + :amount WHERE login = :login AND balance + :amount >= 0";
+    private static final String INSERT_LEDGER_ENTRY =
+        "INSERT INTO ledger (login, amount, operation, counterparty) "
+            + "VALUES (:login, :amount, :operation, :counterparty)";
+
+    private static final RowMapper<Client> CLIENT = (rs, row) -> {
+        Client client = new Client(rs.getString("login"), rs.getString("password"),
+            Money.ofUnits(rs.getLong("balance")));
+        client.setId(rs.getLong("id"));
+        return client;
+    };
+
+    private final DataSource dataSource;
+    private final NamedParameterJdbcTemplate jdbc;
+    private final Scheduler scheduler;
+    // True for the store handed to the work of a transaction: it runs everything on the transaction's connection
+    private final boolean transactional;
+
+    @Autowired
+    public JdbcClientStore(DataSource dataSource) {
+        this(dataSource, Schedulers.fromExecutorService(Executors.newVirtualThreadPerTaskExecutor(), "jdbc"), false);
+        logger.info("Client store: JDBC on virtual threads");
+    }
+
+    private JdbcClientStore(DataSource dataSource, Scheduler scheduler, boolean transactional) {
+        this.dataSource = dataSource;
+        this.jdbc = new NamedParameterJdbcTemplate(dataSource);
+        this.scheduler = scheduler;
+        this.transactional = transactional;
+    }
+
+    @Override
+    public Mono<Client> findByLogin(String login) {
+        return call(() -> DataAccessUtils.singleResult(jdbc.query(FIND_BY_LOGIN, Map.of("login", login), CLIENT)));
+    }
+
+    @Override
+    public Flux<Client> findByLoginIn(Collection<String> logins) {
+        return callMany(() -> jdbc.query(FIND_BY_LOGIN_IN, Map.of("logins", logins), CLIENT));
+    }
+
+    @Override
+    public Flux<Client> findByLoginAny(String[] logins) {
+        JdbcTemplate template = jdbc.getJdbcTemplate();
+        return callMany(() -> template.query(FIND_BY_LOGIN_ANY,
+            statement -> statement.setArray(1, statement.getConnection().createArrayOf("varchar", logins)), CLIENT));
+    }
+
+    @Override
+    public Mono<Client> save(Client client) {
+        return call(() -> {
+            MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("id", client.getId())
+                .addValue("login", client.getLogin())
+                .addValue("password", client.getPassword())
+                .addValue("balance", client.getBalance().units());
+            if (client.getId() != null) {
+                jdbc.update(UPDATE, parameters);
+                return client;
+            }
+            GeneratedKeyHolder keys = new GeneratedKeyHolder();
+            jdbc.update(INSERT, parameters, keys, new String[] {"id"});
+            client.setId(keys.getKeyAs(Long.class));
+            return client;
+        });
+    }
+
+    @Override
+    public Mono<Integer> insertIfAbsent(String login, String password) {
+        return call(() -> jdbc.update(INSERT_IF_ABSENT, Map.of("login", login, "password", password)));
+    }
+
+    @Override
+    public Mono<Integer> updatePassword(String login, String oldPassword, String newPassword) {
+        return call(() -> jdbc.update(UPDATE_PASSWORD,
+            Map.of("login", login, "oldPassword", oldPassword, "newPassword", newPassword)));
+    }
+
+    @Override
+    public Mono<Integer> addToBalance(String login, Money amount) {
+        return call(() -> jdbc.update(ADD_TO_BALANCE, Map.of("login", login, "amount", amount.units())));
+    }
+
+    @Override
+    public Mono<Void> insertLedgerEntry(LedgerEntry entry) {
+        // The counterparty may be null, which Map.of does not take
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+            .addValue("login", entry.getLogin())
+            .addValue("amount", entry.getAmount().units())
+            .addValue("operation", entry.getOperation())
+            .addValue("counterparty", entry.getCounterparty());
+        return call(() -> jdbc.update(INSERT_LEDGER_ENTRY, parameters)).then();
+    }
+
+    /**
+     * The transaction holds one pooled connection from begin to commit. The work's statements still run on
+     * virtual threads of their own, one after the other, all on that connection. Work started inside a
+     * transaction joins it.
+     */
+    @Override
+    public <T> Mono<T> inTransaction(Function<ClientStore, Mono<T>> work) {
+        if (transactional) {
+            return work.apply(this);
+        }
+        return Mono.usingWhen(
+            call(this::begin),
+            connection -> work.apply(
+                new JdbcClientStore(new SingleConnectionDataSource(connection, true), scheduler, true)),
+            connection -> call(() -> end(connection, true)),
+            (connection, e) -> call(() -> end(connection, false)),
+            connection -> call(() -> end(connection, false)));
+    }
+
+    private Connection begin() throws Exception {
+        Connection connection = dataSource.getConnection();
+        connection.setAutoCommit(false);
+        return connection;
+    }
+
+    private Void end(Connection connection, boolean commit) throws Exception {
+        // Closing returns the connection to the pool, which restores auto-commit
+        try (connection) {
+            if (commit) {
+                connection.commit();
+            } else {
+                connection.rollback();
+            }
+        }
+        return null;
+    }
+
+    private <T> Mono<T> call(Callable<T> statement) {
+        return Mono.fromCallable(statement).subscribeOn(scheduler);
+    }
+
+    private <T> Flux<T> callMany(Callable<List<T>> statement) {
+        return call(statement).flatMapIterable(Function.identity());
+    }
+
+    @Override
+    public void close() {
+        if (!transactional) {
+            scheduler.dispose();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.qiwitest.repository;
+
+import com.example.qiwitest.model.Client;
+import com.example.qiwitest.model.LedgerEntry;
+import com.example.qiwitest.model.Money;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.function.Function;
+
+/**
+ * {@link ClientStore} on R2DBC through {@link ClientRepository}. Statements take their connection from the
+ * Reactor context, so they follow {@link ReplicaRouter} and {@link ShardRouter}.
+ */
+@Component
+@ConditionalOnProperty(name = "qiwitest.persistence", havingValue = "r2dbc", matchIfMissing = true)
+public class R2dbcClientStore implements ClientStore {
+
+    private final ClientRepository clientRepository;
+    private final TransactionalOperator transactionalOperator;
+
+    @Autowired
+    public R2dbcClientStore(ClientRepository clientRepository, TransactionalOperator transactionalOperator) {
+        this.clientRepository = clientRepository;
+        this.transactionalOperator = transactionalOperator;
+    }
+
+    @Override
+    public Mono<Client> findByLogin(String login) {
+        return clientRepository.findByLogin(login);
+    }
+
+    @Override
+    public Flux<Client> findByLoginIn(Collection<String> logins) {
+        return clientRepository.findByLoginIn(logins);
+    }
+
+    @Override
+    public Flux<Client> findByLoginAny(String[] logins) {
+        return clientRepository.findByLoginAny(logins);
+    }
+
+    @Override
+    public Mono<Client> save(Client client) {
+        return clientRepository.save(client);
+    }
+
+    @Override
+    public Mono<Integer> insertIfAbsent(String login, String password) {
+        return clientRepository.insertIfAbsent(login, password);
+    }
+
+    @Override
+    public Mono<Integer> updatePassword(String login, String oldPassword, String newPassword) {
+        return clientRepository.updatePassword(login, oldPassword, newPassword);
+    }
+
+    @Override
+    public Mono<Integer> addToBalance(String login, Money amount) {
+        return clientRepository.addToBalance(login, amount.units());
+    }
+
+    @Override
+    public Mono<Void> insertLedgerEntry(LedgerEntry entry) {
+        return clientRepository.insertLedgerEntry(entry.getLogin(), entry.getAmount().units(), entry.getOperation(),
+            entry.getCounterparty()).then();
+    }
+
+    /**
+     * The transaction binds its connection to the subscription, so the statements of the work join it
+     * without being handed a different store
+     */
+    @Override
+    public <T> Mono<T> inTransaction(Function<ClientStore, Mono<T>> work) {
+        return transactionalOperator.transactional(Mono.defer(() -> work.apply(this)));
+    }
+}
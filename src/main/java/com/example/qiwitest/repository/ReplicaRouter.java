@@ -0,0 +1,327 @@
+package com.example.qiwitest.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ValidationDepth;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides which reads may go to a replica.
+ * <p>
+ * {@link #read(String, Mono)} marks a query as read-only in the Reactor context, and
+ * {@link ReplicaRoutingConnectionFactory} then takes its connection from one of the healthy replicas
+ * (round robin) instead of the primary. Reads fall back to the primary when:
+ * <ul>
+ *     <li>the login was written by this instance within the pin window, so a client always sees its own
+ *     writes even if the replicas lag behind;</li>
+ *     <li>no replica is healthy. Replicas are checked every {@code health-check-interval}; a replica is
+ *     healthy if it answers within {@code health-check-timeout} and, when a lag query is configured,
+ *     is no more than {@code max-staleness} behind the primary;</li>
+ *     <li>the replica query fails. The replica is taken out of rotation until its next successful check
+ *     and the query is run again on the primary. Without periodic checks a replica taken out is checked
+ *     every second until it is healthy again.</li>
+ * </ul>
+ * The pin window should be at least the largest lag tolerated, otherwise a read right after a write can
+ * still see the previous state.
+ */
+public class ReplicaRouter implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRouter.class);
+
+    /**
+     * Reactor context key marking a query that may run on a replica
+     */
+    static final String READ_ONLY = ReplicaRouter.class.getName() + ".READ_ONLY";
+
+    /**
+     * The replication lag of a PostgreSQL standby in seconds: 0 when it has replayed everything it received,
+     * so an idle primary does not make it look stale
+     */
+    public static final String POSTGRESQL_LAG_QUERY = "SELECT CASE "
+        + "WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 "
+        + "ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) END";
+
+    // How often a replica taken out of rotation is checked when there are no periodic checks
+    private static final Duration REPROBE_INTERVAL = Duration.ofSeconds(1);
+
+    private final List<Replica> replicas;
+    private final Cache<String, Boolean> pinned;
+    private final Duration healthCheckTimeout;
+    private final Duration maxStaleness;
+    private final String lagQuery;
+    private final Disposable healthCheck;
+
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder pinnedReads = new LongAdder();
+    private final LongAdder unavailableReads = new LongAdder();
+    private final LongAdder failovers = new LongAdder();
+
+    /**
+     * @param replicas the replica connection factories, may be empty
+     * @param pinWindow how long reads of a login go to the primary after this instance wrote it
+     * @param maxPinned the most logins pinned at once
+     * @param healthCheckInterval how often the replicas are checked, zero to never check them
+     * @param healthCheckTimeout how long a check may take before the replica is considered down
+     * @param maxStaleness the largest replication lag tolerated
+     * @param lagQuery a query returning the replication lag in seconds, or null to only check connectivity
+     *                 (max-staleness is then not enforced)
+     */
+    public ReplicaRouter(List<Replica> replicas, Duration pinWindow, long maxPinned, Duration healthCheckInterval,
+                         Duration healthCheckTimeout, Duration maxStaleness, String lagQuery) {
+        this.replicas = List.copyOf(replicas);
+        this.healthCheckTimeout = healthCheckTimeout;
+        this.maxStaleness = maxStaleness;
+        this.lagQuery = lagQuery == null || lagQuery.isBlank() ? null : lagQuery;
+        if (this.replicas.isEmpty()) {
+            this.pinned = null;
+            this.healthCheck = null;
+            logger.info("Read replicas disabled");
+            return;
+        }
+
+        this.pinned = Caffeine.newBuilder()
+            .maximumSize(maxPinned)
+            .expireAfterWrite(pinWindow)
+            .build();
+        this.healthCheck = healthCheckInterval.isZero() ? null : Flux.interval(Duration.ZERO, healthCheckInterval)
+            .onBackpressureDrop()
+            .concatMap(tick -> checkHealth())
+            .subscribe();
+        logger.info("Read replicas enabled: {}, pin-window={}, max-staleness={}, lag-query={}",
+            this.replicas.stream().map(Replica::name).toList(), pinWindow, maxStaleness, this.lagQuery);
+    }
+
+    /**
+     * Create a router that sends everything to the primary
+     *
+     * @return a disabled router
+     */
+    public static ReplicaRouter disabled() {
+        return new ReplicaRouter(List.of(), Duration.ZERO, 0, Duration.ZERO, Duration.ZERO, Duration.ZERO, null);
+    }
+
+    public boolean isEnabled() {
+        return !replicas.isEmpty();
+    }
+
+    public List<Replica> replicas() {
+        return replicas;
+    }
+
+    /**
+     * Run a read of one login on a replica unless the login is pinned to the primary
+     *
+     * @param login the login the query reads
+     * @param query the query; it is subscribed again on the primary if the replica fails
+     * @return the query result
+     */
+    public <T> Mono<T> read(String login, Mono<T> query) {
+        if (pinned == null) {
+            return query;
+        }
+        if (pinned.getIfPresent(login) != null) {
+            pinnedReads.increment();
+            return query;
+        }
+        return onReplica(query);
+    }
+
+    /**
+     * Run a read of many logins on a replica unless one of them is pinned to the primary
+     */
+    public <T> Mono<T> read(Collection<String> logins, Mono<T> query) {
+        if (pinned == null) {
+            return query;
+        }
+        for (String login : logins) {
+            if (pinned.getIfPresent(login) != null) {
+                pinnedReads.increment();
+                return query;
+            }
+        }
+        return onReplica(query);
+    }
+
+    /**
+     * Send the reads of a login to the primary for the pin window. Called after every write of the login.
+     */
+    public void pin(String login) {
+        if (pinned != null) {
+            pinned.put(login, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Check every replica once and update its health
+     *
+     * @return a Mono that completes when all replicas have been checked
+     */
+    public Mono<Void> checkHealth() {
+        return Flux.fromIterable(replicas)
+            .flatMap(this::check)
+            .then();
+    }
+
+    private Mono<Boolean> check(Replica replica) {
+        return Mono.usingWhen(replica.connectionFactory().create(), this::isUsable, Connection::close)
+            .timeout(healthCheckTimeout)
+            .onErrorResume(e -> {
+                logger.debug("Health check of replica {} failed: {}", replica.name(), e.toString());
+                return Mono.just(false);
+            })
+            .doOnNext(usable -> setHealthy(replica, usable, null));
+    }
+
+    /**
+     * @return the reads sent to a replica
+     */
+    public long replicaReads() {
+        return replicaReads.sum();
+    }
+
+    /**
+     * @return the reads sent to the primary because the login was recently written
+     */
+    public long pinnedReads() {
+        return pinnedReads.sum();
+    }
+
+    /**
+     * @return the reads sent to the primary because no replica was healthy
+     */
+    public long unavailableReads() {
+        return unavailableReads.sum();
+    }
+
+    /**
+     * @return the replica reads that failed and were run again on the primary
+     */
+    public long failovers() {
+        return failovers.sum();
+    }
+
+    /**
+     * Pick the replica for the next read-only connection
+     *
+     * @return the name of a healthy replica, or null to use the primary
+     */
+    String nextReplica() {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy) {
+                replicaReads.increment();
+                return replica.name();
+            }
+        }
+        unavailableReads.increment();
+        return null;
+    }
+
+    void markDown(Replica replica, Throwable error) {
+        setHealthy(replica, false, error);
+        // Without periodic checks nothing else would bring the replica back
+        if (healthCheck == null && replica.probing.compareAndSet(false, true)) {
+            replica.reprobe = Flux.interval(REPROBE_INTERVAL)
+                .onBackpressureDrop()
+                .concatMap(tick -> check(replica))
+                .takeUntil(healthy -> healthy)
+                .doFinally(signal -> replica.probing.set(false))
+                .subscribe();
+        }
+    }
+
+    private <T> Mono<T> onReplica(Mono<T> query) {
+        return query.contextWrite(context -> context.put(READ_ONLY, Boolean.TRUE))
+            .onErrorResume(e -> {
+                failovers.increment();
+                logger.warn("Replica read failed, retrying on the primary: {}", e.toString());
+                return query;
+            });
+    }
+
+    private Mono<Boolean> isUsable(Connection connection) {
+        if (lagQuery == null) {
+            return Mono.from(connection.validate(ValidationDepth.REMOTE));
+        }
+        return Flux.from(connection.createStatement(lagQuery).execute())
+            .flatMap(result -> result.map((row, metadata) -> Optional.ofNullable(row.get(0, Number.class))))
+            .next()
+            // No lag reported (e.g. nothing replayed yet) counts as up to date
+            .map(lag -> lag.map(Number::doubleValue).orElse(0.0) * 1000 <= maxStaleness.toMillis());
+    }
+
+    private void setHealthy(Replica replica, boolean healthy, Throwable error) {
+        if (replica.healthy != healthy) {
+            replica.healthy = healthy;
+            if (healthy) {
+                logger.info("Replica {} is back in rotation", replica.name());
+            } else {
+                logger.warn("Replica {} taken out of rotation{}", replica.name(),
+                    error == null ? "" : ": " + error);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (healthCheck != null) {
+            healthCheck.dispose();
+        }
+        for (Replica replica : replicas) {
+            Disposable reprobe = replica.reprobe;
+            if (reprobe != null) {
+                reprobe.dispose();
+            }
+            if (replica.connectionFactory() instanceof Disposable disposable) {
+                disposable.dispose();
+            }
+        }
+    }
+
+    /**
+     * A replica and its last known health
+     */
+    public static final class Replica {
+
+        private final String name;
+        private final ConnectionFactory connectionFactory;
+        private volatile boolean healthy = true;
+        // Set while a replica taken out of rotation is being checked until it is back
+        private final AtomicBoolean probing = new AtomicBoolean();
+        private volatile Disposable reprobe;
+
+        public Replica(String name, ConnectionFactory connectionFactory) {
+            this.name = name;
+            this.connectionFactory = connectionFactory;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public ConnectionFactory connectionFactory() {
+            return connectionFactory;
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.qiwitest.repository;
+
+import com.example.qiwitest.repository.ReplicaRouter.Replica;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import org.reactivestreams.Publisher;
+import org.springframework.r2dbc.connection.lookup.AbstractRoutingConnectionFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hands out primary connections, or replica connections for queries that {@link ReplicaRouter#read} marked
+ * as read-only. Transactions bind their connection when they start, so everything inside a transaction
+ * stays on the primary.
+ */
+public class ReplicaRoutingConnectionFactory extends AbstractRoutingConnectionFactory implements AutoCloseable {
+
+    private final ConnectionFactory primary;
+    private final ReplicaRouter router;
+
+    public ReplicaRoutingConnectionFactory(ConnectionFactory primary, ReplicaRouter router) {
+        this.primary = primary;
+        this.router = router;
+
+        Map<String, ConnectionFactory> targets = new HashMap<>();
+        for (Replica replica : router.replicas()) {
+            targets.put(replica.name(), new FailureDetectingConnectionFactory(replica, router));
+        }
+        setTargetConnectionFactories(targets);
+        setDefaultTargetConnectionFactory(primary);
+        afterPropertiesSet();
+    }
+
+    public ConnectionFactory primary() {
+        return primary;
+    }
+
+    @Override
+    protected Mono<Object> determineCurrentLookupKey() {
+        return Mono.deferContextual(context -> context.hasKey(ReplicaRouter.READ_ONLY)
+            ? Mono.justOrEmpty(router.nextReplica())
+            : Mono.empty());
+    }
+
+    @Override
+    public void close() {
+        if (primary instanceof Disposable disposable) {
+            disposable.dispose();
+        }
+    }
+
+    /**
+     * Takes the replica out of rotation as soon as a connection cannot be obtained from it,
+     * rather than waiting for the next health check
+     */
+    private static final class FailureDetectingConnectionFactory implements ConnectionFactory {
+
+        private final Replica replica;
+        private final ReplicaRouter router;
+
+        FailureDetectingConnectionFactory(Replica replica, ReplicaRouter router) {
+            this.replica = replica;
+            this.router = router;
+        }
+
+        @Override
+        public Publisher<? extends Connection> create() {
+            return Mono.from(replica.connectionFactory().create())
+                .doOnError(e -> router.markDown(replica, e));
+        }
+
+        @Override
+        public ConnectionFactoryMetadata getMetadata() {
+            return replica.connectionFactory().getMetadata();
+        }
+    }
+}
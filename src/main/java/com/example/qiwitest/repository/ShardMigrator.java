@@ -0,0 +1,148 @@
+package com.example.qiwitest.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Moves clients to their new shard while the application keeps serving them (see {@link ShardRouter}).
+ * <p>
+ * Each previous shard is scanned in id order, one page at a time. A client whose shard changes is written
+ * to its new shard and then deleted from the previous one, but only if the row there still has the values
+ * that were copied. If it was changed in the meantime (updates go to the previous shard while it has the
+ * row) the delete does nothing and the client is copied again in the next pass. Passes repeat until one
+ * finishes without such retries, so a migration converges even under write load.
+ */
+public class ShardMigrator {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardMigrator.class);
+
+    static final int MAX_PASSES = 10;
+
+    private final DatabaseClient databaseClient;
+    private final ShardRouter router;
+    private final int pageSize;
+
+    /**
+     * @param databaseClient a client over the {@link ShardRoutingConnectionFactory}
+     * @param router the router, which must be migrating
+     * @param pageSize the number of rows read per query
+     */
+    public ShardMigrator(DatabaseClient databaseClient, ShardRouter router, int pageSize) {
+        this.databaseClient = databaseClient;
+        this.router = router;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Move every client that belongs on another shard
+     *
+     * @return the totals over all passes
+     */
+    public Mono<Report> migrate() {
+        if (!router.isMigrating()) {
+            return Mono.error(new IllegalStateException("Not migrating: set qiwitest.shard.previous-count"));
+        }
+        return migrate(new Report(0, 0, 0, 0));
+    }
+
+    private Mono<Report> migrate(Report total) {
+        return pass()
+            .flatMap(pass -> {
+                Report next = total.plus(pass);
+                logger.info("Shard migration pass {}: scanned {}, moved {}, changed while copying {}",
+                    next.passes(), pass.scanned(), pass.moved(), pass.retried());
+                return pass.retried() > 0 && next.passes() < MAX_PASSES ? migrate(next) : Mono.just(next);
+            });
+    }
+
+    private Mono<Report> pass() {
+        List<String> previousShards = router.databases().subList(0, router.previousCount());
+        return Flux.fromIterable(previousShards)
+            .concatMap(database -> scan(database, 0))
+            .reduce(new Report(0, 0, 0, 1), Report::plus);
+    }
+
+    /**
+     * Move the clients of one database with ids above {@code afterId}, page by page
+     */
+    private Flux<Report> scan(String database, long afterId) {
+        return router.onDatabase(database, databaseClient
+                .sql("SELECT id, login, password, balance FROM clients WHERE id > :after ORDER BY id LIMIT :limit")
+                .bind("after", afterId)
+                .bind("limit", pageSize)
+                .map(row -> new Row(row.get("id", Long.class), row.get("login", String.class),
+                    row.get("password", String.class), row.get("balance", Long.class)))
+                .all())
+            .collectList()
+            .flatMapMany(page -> {
+                if (page.isEmpty()) {
+                    return Flux.empty();
+                }
+                Mono<Report> moved = Flux.fromIterable(page)
+                    .concatMap(row -> move(database, row))
+                    .reduce(new Report(page.size(), 0, 0, 0), Report::plus);
+                return page.size() < pageSize
+                    ? moved.flux()
+                    : moved.concatWith(Flux.defer(() -> scan(database, page.get(page.size() - 1).id())));
+            });
+    }
+
+    private Mono<Report> move(String from, Row row) {
+        String to = router.databaseOf(row.login());
+        if (to.equals(from)) {
+            return Mono.just(new Report(0, 0, 0, 0));
+        }
+        Mono<Long> update = router.onDatabase(to, databaseClient
+            .sql("UPDATE clients SET password = :password, balance = :balance WHERE login = :login")
+            .bind("login", row.login())
+            .bind("password", row.password())
+            .bind("balance", row.balance())
+            .fetch()
+            .rowsUpdated());
+        Mono<Long> insert = router.onDatabase(to, databaseClient
+            .sql("INSERT INTO clients (login, password, balance) VALUES (:login, :password, :balance) "
+                + "ON CONFLICT DO NOTHING")
+            .bind("login", row.login())
+            .bind("password", row.password())
+            .bind("balance", row.balance())
+            .fetch()
+            .rowsUpdated());
+        Mono<Long> delete = router.onDatabase(from, databaseClient
+            .sql("DELETE FROM clients WHERE login = :login AND password = :password AND balance = :balance")
+            .bind("login", row.login())
+            .bind("password", row.password())
+            .bind("balance", row.balance())
+            .fetch()
+            .rowsUpdated());
+
+        return update
+            .flatMap(rows -> rows > 0 ? Mono.just(rows) : insert)
+            .then(delete)
+            .map(rows -> rows > 0 ? new Report(0, 1, 0, 0) : new Report(0, 0, 1, 0));
+    }
+
+    /**
+     * Migration counts
+     *
+     * @param scanned rows read from previous shards
+     * @param moved clients moved to their new shard
+     * @param retried clients that changed while being copied and were left for the next pass
+     * @param passes the number of passes
+     */
+    public record Report(long scanned, long moved, long retried, int passes) {
+
+        Report plus(Report other) {
+            return new Report(scanned + other.scanned, moved + other.moved, retried + other.retried,
+                passes + other.passes);
+        }
+    }
+
+    // The balance is copied as stored, in 1/10000 units
+    private record Row(Long id, String login, String password, Long balance) {
+    }
+}
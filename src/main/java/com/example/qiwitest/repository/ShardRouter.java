@@ -0,0 +1,253 @@
+package com.example.qiwitest.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Places each client on one of N shard databases by a hash of its login.
+ * <p>
+ * Queries are pinned to a database through the Reactor context and {@link ShardRoutingConnectionFactory}
+ * hands out a connection of that database; queries without a shard (the ledger, for instance) use shard 0.
+ * Every login lives on exactly one shard and every shard has a unique index on login, so CREATE-AGT stays
+ * unique across the whole cluster.
+ * <p>
+ * The shard is chosen with jump consistent hashing (Lamping and Veach) over a 64-bit FNV-1a hash of the
+ * login, so growing from N to N+1 shards moves only about 1/(N+1) of the clients, all of them to the new
+ * shard. The hash must never change, or clients would be looked for on the wrong shard.
+ * <p>
+ * <b>Resharding.</b> While {@code previousCount} is set the router is migrating from the previous shard
+ * count to the current one. A client then sits on its previous shard, its new shard or (briefly, while
+ * being copied) both, and the previous shard stays authoritative until {@link ShardMigrator} removes the
+ * row there:
+ * <ul>
+ *     <li>reads try the previous shard first, then the new one;</li>
+ *     <li>updates try the previous shard first and only go to the new shard if the login does not exist
+ *     there, so a client is never changed on its new shard while its previous copy still exists. An update
+ *     refused on the previous shard (insufficient funds, a stale password) stays refused;</li>
+ *     <li>creates go to the new shard, unless the login still exists on its previous shard.</li>
+ * </ul>
+ */
+public class ShardRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardRouter.class);
+
+    /**
+     * Reactor context key holding the database a query must run on
+     */
+    static final String SHARD = ShardRouter.class.getName() + ".SHARD";
+
+    private final List<String> databases;
+    private final int shardCount;
+    private final int previousCount;
+
+    /**
+     * @param databases the names of the shard databases; shard i is database i
+     * @param shardCount the number of shards in use
+     * @param previousCount the number of shards being migrated from, 0 when not migrating
+     */
+    public ShardRouter(List<String> databases, int shardCount, int previousCount) {
+        if (!databases.isEmpty() && (shardCount < 1 || shardCount > databases.size()
+                || previousCount < 0 || previousCount > databases.size())) {
+            throw new IllegalArgumentException("Cannot use " + shardCount + " shards (previously " + previousCount
+                + ") with " + databases.size() + " databases");
+        }
+        this.databases = List.copyOf(databases);
+        this.shardCount = shardCount;
+        this.previousCount = previousCount == shardCount ? 0 : previousCount;
+        if (isEnabled()) {
+            logger.info("Sharding enabled: {} of {}{}", shardCount, this.databases,
+                isMigrating() ? ", migrating from " + previousCount + " shards" : "");
+        }
+    }
+
+    /**
+     * Create a router for a single, unsharded database
+     *
+     * @return a disabled router
+     */
+    public static ShardRouter disabled() {
+        return new ShardRouter(List.of(), 1, 0);
+    }
+
+    public boolean isEnabled() {
+        return !databases.isEmpty();
+    }
+
+    public boolean isMigrating() {
+        return isEnabled() && previousCount > 0;
+    }
+
+    public int shardCount() {
+        return shardCount;
+    }
+
+    public int previousCount() {
+        return previousCount;
+    }
+
+    public List<String> databases() {
+        return databases;
+    }
+
+    /**
+     * The shard of a login for a given number of shards
+     */
+    public static int shardOf(String login, int shardCount) {
+        return jumpHash(hash(login), shardCount);
+    }
+
+    /**
+     * The database a login belongs on once any migration is finished
+     */
+    public String databaseOf(String login) {
+        return databases.get(shardOf(login, shardCount));
+    }
+
+    /**
+     * The database a login is being migrated from, or null when it does not move
+     */
+    String previousDatabaseOf(String login) {
+        if (previousCount == 0) {
+            return null;
+        }
+        int previous = shardOf(login, previousCount);
+        return previous == shardOf(login, shardCount) ? null : databases.get(previous);
+    }
+
+    /**
+     * Whether two logins can be changed in one local transaction
+     */
+    public boolean sameShard(String login, String other) {
+        return !isEnabled() || (!isMigrating() && shardOf(login, shardCount) == shardOf(other, shardCount));
+    }
+
+    /**
+     * Run a query on a given database
+     */
+    public <T> Mono<T> onDatabase(String database, Mono<T> query) {
+        return query.contextWrite(context -> context.put(SHARD, database));
+    }
+
+    public <T> Flux<T> onDatabase(String database, Flux<T> query) {
+        return query.contextWrite(context -> context.put(SHARD, database));
+    }
+
+    /**
+     * Run a query on the shard of a login, ignoring any migration
+     */
+    public <T> Mono<T> onShardOf(String login, Mono<T> query) {
+        return isEnabled() ? onDatabase(databaseOf(login), query) : query;
+    }
+
+    /**
+     * Run a lookup of one login on its shard
+     */
+    public <T> Mono<T> read(String login, Mono<T> query) {
+        if (!isEnabled()) {
+            return query;
+        }
+        String previous = previousDatabaseOf(login);
+        Mono<T> current = onDatabase(databaseOf(login), query);
+        return previous == null ? current : onDatabase(previous, query).switchIfEmpty(current);
+    }
+
+    /**
+     * Run an update of one login on its shard. While migrating, an update that changes no row on the previous
+     * shard only goes on to the new shard if the login no longer exists on the previous one: a conditional
+     * update also changes no row when it is refused, and the copy on the new shard must not be changed then.
+     *
+     * @param exists checks whether the login exists
+     * @param query returns the number of changed rows
+     */
+    public Mono<Integer> update(String login, Mono<Boolean> exists, Mono<Integer> query) {
+        if (!isEnabled()) {
+            return query;
+        }
+        String previous = previousDatabaseOf(login);
+        Mono<Integer> current = onDatabase(databaseOf(login), query);
+        return previous == null ? current
+            : onDatabase(previous, query).flatMap(rows -> rows > 0 ? Mono.just(rows)
+                : onDatabase(previous, exists).flatMap(found -> found ? Mono.just(rows) : current));
+    }
+
+    /**
+     * Insert a login on its shard unless it already exists there or on the shard it is migrating from
+     *
+     * @param exists checks whether the login exists
+     * @param insert inserts the login, returning the number of inserted rows
+     */
+    public Mono<Integer> insertIfAbsent(String login, Mono<Boolean> exists, Mono<Integer> insert) {
+        if (!isEnabled()) {
+            return insert;
+        }
+        String previous = previousDatabaseOf(login);
+        Mono<Integer> current = onDatabase(databaseOf(login), insert);
+        return previous == null ? current
+            : onDatabase(previous, exists).flatMap(found -> found ? Mono.just(0) : current);
+    }
+
+    /**
+     * Run a lookup of many logins with one query per shard. While migrating, the results of previous shards
+     * come last, so when a client is found on both its copy on the previous shard is seen last.
+     *
+     * @param query builds the query for the logins of one shard
+     */
+    public <T> Flux<T> readMany(Collection<String> logins, Function<List<String>, Flux<T>> query) {
+        if (!isEnabled()) {
+            return query.apply(logins instanceof List<String> list ? list : new ArrayList<>(logins));
+        }
+        Map<String, List<String>> current = new LinkedHashMap<>();
+        Map<String, List<String>> previous = new LinkedHashMap<>();
+        for (String login : logins) {
+            current.computeIfAbsent(databaseOf(login), database -> new ArrayList<>()).add(login);
+            String from = previousDatabaseOf(login);
+            if (from != null) {
+                previous.computeIfAbsent(from, database -> new ArrayList<>()).add(login);
+            }
+        }
+        return Flux.fromIterable(current.entrySet())
+            .concatWith(Flux.fromIterable(previous.entrySet()))
+            .concatMap(shard -> onDatabase(shard.getKey(), query.apply(shard.getValue())));
+    }
+
+    /**
+     * Run a query on every database, for admin scans. Shards are queried concurrently and the results
+     * interleave; while migrating a client may be returned twice.
+     */
+    public <T> Flux<T> fanOut(Supplier<Flux<T>> query) {
+        if (!isEnabled()) {
+            return query.get();
+        }
+        return Flux.fromIterable(databases).flatMap(database -> onDatabase(database, query.get()));
+    }
+
+    static long hash(String login) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < login.length(); i++) {
+            hash ^= login.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    static int jumpHash(long key, int buckets) {
+        long bucket = -1;
+        long next = 0;
+        while (next < buckets) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+}
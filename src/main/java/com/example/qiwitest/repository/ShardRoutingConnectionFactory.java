@@ -0,0 +1,47 @@
+package com.example.qiwitest.repository;
+
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.r2dbc.connection.lookup.AbstractRoutingConnectionFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Hands out connections of the shard database that {@link ShardRouter} put in the Reactor context, or of
+ * shard 0 for queries without one. A transaction binds the connection it starts with, so it must be
+ * started inside the shard context and must only touch clients of that shard.
+ */
+public class ShardRoutingConnectionFactory extends AbstractRoutingConnectionFactory implements AutoCloseable {
+
+    private final Map<String, ConnectionFactory> shards;
+
+    /**
+     * @param shards the connection factory of every shard database, by name, in shard order
+     */
+    public ShardRoutingConnectionFactory(Map<String, ConnectionFactory> shards) {
+        this.shards = shards;
+        setTargetConnectionFactories(shards);
+        setDefaultTargetConnectionFactory(shards.values().iterator().next());
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    public Map<String, ConnectionFactory> shards() {
+        return shards;
+    }
+
+    @Override
+    protected Mono<Object> determineCurrentLookupKey() {
+        return Mono.deferContextual(context -> Mono.justOrEmpty(context.getOrEmpty(ShardRouter.SHARD)));
+    }
+
+    @Override
+    public void close() {
+        for (ConnectionFactory shard : shards.values()) {
+            if (shard instanceof Disposable disposable) {
+                disposable.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.qiwitest.service;
+
+/**
+ * Outcome of a balance mutation
+ */
+public enum BalanceUpdate {
+
+    /** The balance was changed */
+    APPLIED,
+
+    /** The change would have made a balance negative; nothing was changed */
+    INSUFFICIENT_FUNDS,
+
+    /** A client taking part in the operation does not exist; nothing was changed */
+    CLIENT_NOT_FOUND
+}
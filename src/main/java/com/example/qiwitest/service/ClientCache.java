@@ -0,0 +1,128 @@
+package com.example.qiwitest.service;
+
+import com.example.qiwitest.model.Client;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Near-cache of {@link Client} records keyed by login.
+ * <p>
+ * Entries are bounded by count (Caffeine's W-TinyLFU policy decides what to evict) and by age.
+ * Every write path in {@link ClientService} invalidates the entry. A load takes the login's version
+ * before it reads the database and only caches its result if the login was not invalidated since,
+ * so a load that raced with a write cannot put back the state from before it.
+ * Only existing clients are cached; unknown logins always go to the database.
+ */
+@Component
+public class ClientCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClientCache.class);
+
+    // Invalidation counters, striped by login hash: a collision only makes a put skip caching
+    private static final int VERSION_STRIPES = 1024;
+
+    private final Cache<String, Client> cache;
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    @Autowired
+    public ClientCache(@Value("${qiwitest.cache.enabled:true}") boolean enabled,
+                       @Value("${qiwitest.cache.maximum-size:100000}") long maximumSize,
+                       @Value("${qiwitest.cache.expire-after-write:5s}") Duration expireAfterWrite) {
+        if (enabled) {
+            this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+            logger.info("Client cache enabled: maximum-size={}, expire-after-write={}", maximumSize, expireAfterWrite);
+        } else {
+            this.cache = null;
+            logger.info("Client cache disabled");
+        }
+    }
+
+    /**
+     * Create a cache that never holds anything
+     *
+     * @return a disabled cache
+     */
+    public static ClientCache disabled() {
+        return new ClientCache(false, 0, Duration.ZERO);
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * Get the cached client for a login
+     *
+     * @param login the login
+     * @return the client or null if it is not cached
+     */
+    public Client get(String login) {
+        return cache == null ? null : cache.getIfPresent(login);
+    }
+
+    /**
+     * Get the version of a login, to be taken before loading it from the database
+     *
+     * @param login the login
+     * @return a value that changes whenever the login is invalidated
+     */
+    public long version(String login) {
+        return versions.get(stripe(login));
+    }
+
+    /**
+     * Cache a loaded client unless its login was invalidated after the load started
+     *
+     * @param client the loaded client
+     * @param version the version of its login taken before the load
+     */
+    public void put(Client client, long version) {
+        String login = client.getLogin();
+        if (cache == null || login == null || versions.get(stripe(login)) != version) {
+            return;
+        }
+        cache.put(login, client);
+        // An invalidation between the check and the put may have run before the entry was there
+        if (versions.get(stripe(login)) != version) {
+            cache.asMap().remove(login, client);
+        }
+    }
+
+    public void invalidate(String login) {
+        if (cache != null) {
+            versions.incrementAndGet(stripe(login));
+            cache.invalidate(login);
+        }
+    }
+
+    /**
+     * Get hit, miss and eviction statistics
+     *
+     * @return the statistics, all zero when the cache is disabled
+     */
+    public CacheStats stats() {
+        return cache == null ? CacheStats.empty() : cache.stats();
+    }
+
+    public long estimatedSize() {
+        return cache == null ? 0 : cache.estimatedSize();
+    }
+
+    private static int stripe(String login) {
+        int hash = login.hashCode();
+        return (hash ^ (hash >>> 16)) & (VERSION_STRIPES - 1);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.qiwitest.service;
+
+import com.example.qiwitest.model.Client;
+import com.example.qiwitest.repository.ClientRepository;
+import com.example.qiwitest.repository.ShardRouter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Reads the whole {@code CLIENTS} table page by page, by ID.
+ * <p>
+ * Each page is one short keyset query ({@code id > last ORDER BY id LIMIT page-size}), so no cursor or
+ * connection is held between pages and the export can be resumed from the last ID received. A page is queried
+ * when the one before it is emitted and held until the subscriber asks for it, so at most one page is read
+ * ahead and memory does not grow with the table.
+ * <p>
+ * IDs are per database: with sharding every shard is exported on its own, and while shards are migrating a
+ * client being copied may be exported from both.
+ */
+@Component
+public class ClientExporter {
+
+    private final ClientRepository clientRepository;
+    private final ShardRouter shardRouter;
+    private final int pageSize;
+
+    @Autowired
+    public ClientExporter(ClientRepository clientRepository, ShardRouter shardRouter,
+                          @Value("${qiwitest.export.page-size:1000}") int pageSize) {
+        this.clientRepository = clientRepository;
+        this.shardRouter = shardRouter;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Stream the clients of one shard
+     *
+     * @param shard the shard, 0 without sharding
+     * @param after the ID to start after, 0 for all clients
+     * @return non-empty pages of clients, by ID
+     * @throws IllegalArgumentException if there is no such shard
+     */
+    public Flux<List<Client>> pages(int shard, long after) {
+        int shards = shardRouter.isEnabled() ? shardRouter.databases().size() : 1;
+        if (shard < 0 || shard >= shards) {
+            throw new IllegalArgumentException("No shard " + shard + ", there are " + shards);
+        }
+        if (after < 0) {
+            throw new IllegalArgumentException("Invalid ID " + after);
+        }
+        String database = shardRouter.isEnabled() ? shardRouter.databases().get(shard) : null;
+        return page(database, after)
+            .expand(page -> page.size() < pageSize ? Mono.empty() : page(database, page.get(page.size() - 1).getId()))
+            .filter(page -> !page.isEmpty());
+    }
+
+    private Mono<List<Client>> page(String database, long after) {
+        Mono<List<Client>> page = clientRepository.findPageAfter(after, pageSize).collectList();
+        return database == null ? page : shardRouter.onDatabase(database, page);
+    }
+}
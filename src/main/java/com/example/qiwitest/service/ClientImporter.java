@@ -0,0 +1,363 @@
+package com.example.qiwitest.service;
+
+import com.example.qiwitest.model.Money;
+import com.example.qiwitest.repository.ShardRouter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Wrapped;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates clients in bulk from CSV lines of {@code login,password[,balance]}, an optional header line and
+ * double-quoted fields as in RFC 4180.
+ * <p>
+ * Lines are read as the caller produces them and loaded {@code chunk-size} rows at a time with PostgreSQL
+ * {@code COPY} into a temporary table of the connection, from where one {@code INSERT ... ON CONFLICT DO
+ * NOTHING} moves them into {@code CLIENTS}. At most {@code max-in-flight} chunks are loaded at once and no
+ * more lines are requested meanwhile, so memory is bounded by the chunks in flight whatever the input size.
+ * <p>
+ * A row whose login already exists, or appeared earlier in the input, is reported and skipped, as is a row
+ * that cannot be parsed; neither fails the import. Passwords are stored as given: a plaintext password is
+ * replaced with its hash on the client's first login (see {@link ClientService#isPasswordCorrect}). A password
+ * with the hash prefix would be taken for a hash, so it is only accepted if it is a hash the
+ * {@link PasswordHasher} can verify.
+ * With sharding, each chunk is split by shard; imports are refused while shards are being migrated.
+ */
+@Component
+public class ClientImporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClientImporter.class);
+
+    static final String CONFLICT = "login exists";
+
+    private static final int MAX_LENGTH = 255;
+
+    private static final String CREATE_STAGING = "CREATE TEMPORARY TABLE IF NOT EXISTS client_import ("
+        + "line BIGINT NOT NULL, login VARCHAR(255) NOT NULL, password VARCHAR(255) NOT NULL, balance BIGINT NOT NULL)";
+    private static final String CLEAR_STAGING = "TRUNCATE client_import";
+    private static final String COPY =
+        "COPY client_import (line, login, password, balance) FROM STDIN WITH (FORMAT csv)";
+    // Inserts the first row of each login unless the login exists, and returns every other row
+    private static final String MERGE = "WITH inserted AS ("
+        + "INSERT INTO clients (login, password, balance) "
+        + "SELECT DISTINCT ON (login) login, password, balance FROM client_import ORDER BY login, line "
+        + "ON CONFLICT DO NOTHING RETURNING login) "
+        + "SELECT s.line, s.login FROM (SELECT line, login, "
+        + "row_number() OVER (PARTITION BY login ORDER BY line) AS n FROM client_import) s "
+        + "LEFT JOIN inserted i ON i.login = s.login AND s.n = 1 "
+        + "WHERE i.login IS NULL";
+
+    private final DatabaseClient databaseClient;
+    private final ShardRouter shardRouter;
+    private final LoginFilter loginFilter;
+    private final PasswordHasher passwordHasher;
+    private final int chunkSize;
+    private final int maxInFlight;
+    private final int maxReported;
+
+    @Autowired
+    public ClientImporter(DatabaseClient databaseClient, ShardRouter shardRouter, LoginFilter loginFilter,
+                          PasswordHasher passwordHasher,
+                          @Value("${qiwitest.import.chunk-size:10000}") int chunkSize,
+                          @Value("${qiwitest.import.max-in-flight:2}") int maxInFlight,
+                          @Value("${qiwitest.import.max-reported:1000}") int maxReported) {
+        this.databaseClient = databaseClient;
+        this.shardRouter = shardRouter;
+        this.loginFilter = loginFilter;
+        this.passwordHasher = passwordHasher;
+        this.chunkSize = chunkSize;
+        this.maxInFlight = maxInFlight;
+        this.maxReported = maxReported;
+    }
+
+    /**
+     * Import the clients of a CSV input
+     *
+     * @param lines the lines of the input, without line terminators
+     * @return the outcome, once every row is loaded; fails if a chunk could not be loaded, leaving the
+     * chunks loaded before it in place, and with {@link MigrationInProgressException} while shards are migrating
+     */
+    public Mono<Report> importCsv(Flux<String> lines) {
+        if (shardRouter.isMigrating()) {
+            return Mono.error(new MigrationInProgressException());
+        }
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            Tally tally = new Tally(maxReported);
+            return lines
+                .index()
+                .<Row>handle((indexed, sink) -> {
+                    long line = indexed.getT1() + 1;
+                    String text = indexed.getT2();
+                    if (text.isBlank() || line == 1 && isHeader(text)) {
+                        return;
+                    }
+                    try {
+                        sink.next(parse(line, text));
+                    } catch (IllegalArgumentException e) {
+                        tally.invalid(new Rejected(line, null, e.getMessage()));
+                    }
+                })
+                .buffer(chunkSize)
+                .flatMap(this::load, maxInFlight)
+                .doOnNext(tally::loaded)
+                .then(Mono.fromSupplier(tally::report))
+                .doOnNext(report -> logger.info("Imported {} of {} clients in {} ms: {} conflicts, {} invalid rows",
+                    report.imported(), report.rows(), (System.nanoTime() - start) / 1_000_000,
+                    report.conflicts(), report.invalid()))
+                .doOnError(e -> logger.error("Client import failed after {} rows", tally.rows(), e));
+        });
+    }
+
+    private static boolean isHeader(String text) {
+        return text.regionMatches(true, 0, "login,", 0, 6) || text.regionMatches(true, 0, "\"login\",", 0, 8);
+    }
+
+    /**
+     * Parse one CSV line
+     *
+     * @throws IllegalArgumentException if the line is not a valid row
+     */
+    Row parse(long line, String text) {
+        List<String> fields = fields(text);
+        if (fields.size() < 2 || fields.size() > 3) {
+            throw new IllegalArgumentException("expected login,password[,balance]");
+        }
+        String login = fields.get(0);
+        String password = fields.get(1);
+        if (login.isBlank() || login.length() > MAX_LENGTH) {
+            throw new IllegalArgumentException("invalid login");
+        }
+        if (password.isEmpty() || password.length() > MAX_LENGTH) {
+            throw new IllegalArgumentException("invalid password");
+        }
+        if (passwordHasher.isHashed(password) && !passwordHasher.isWellFormed(password)) {
+            throw new IllegalArgumentException("invalid password hash");
+        }
+        Money balance = Money.ZERO;
+        if (fields.size() == 3 && !fields.get(2).isBlank()) {
+            try {
+                balance = Money.parse(fields.get(2).trim());
+            } catch (NumberFormatException | ArithmeticException e) {
+                throw new IllegalArgumentException("invalid balance");
+            }
+            if (balance.signum() < 0) {
+                throw new IllegalArgumentException("invalid balance");
+            }
+        }
+        return new Row(line, login, password, balance.units());
+    }
+
+    private static List<String> fields(String text) {
+        List<String> fields = new ArrayList<>(3);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quote");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private Mono<Chunk> load(List<Row> rows) {
+        // Registered before the insert so the filter never misses a committed login
+        for (Row row : rows) {
+            loginFilter.add(row.login());
+        }
+        if (!shardRouter.isEnabled()) {
+            return copy(rows);
+        }
+        Map<String, List<Row>> byDatabase = new LinkedHashMap<>();
+        for (Row row : rows) {
+            byDatabase.computeIfAbsent(shardRouter.databaseOf(row.login()), database -> new ArrayList<>()).add(row);
+        }
+        return Flux.fromIterable(byDatabase.entrySet())
+            .flatMap(shard -> shardRouter.onDatabase(shard.getKey(), copy(shard.getValue())))
+            .reduce(Chunk::plus);
+    }
+
+    private Mono<Chunk> copy(List<Row> rows) {
+        return databaseClient.inConnection(connection -> execute(connection, CREATE_STAGING)
+            .then(execute(connection, CLEAR_STAGING))
+            .then(Mono.defer(() -> postgres(connection).copyIn(COPY, Mono.just(csv(rows)))))
+            .thenMany(Flux.from(connection.createStatement(MERGE).execute())
+                .flatMap(result -> result.map((row, metadata) ->
+                    new Rejected(row.get("line", Long.class), row.get("login", String.class), CONFLICT))))
+            .collectList()
+            .map(conflicts -> new Chunk(rows.size(), conflicts)));
+    }
+
+    private static Mono<Void> execute(Connection connection, String sql) {
+        return Flux.from(connection.createStatement(sql).execute())
+            .flatMap(Result::getRowsUpdated)
+            .then();
+    }
+
+    private static PostgresqlConnection postgres(Connection connection) {
+        Object current = connection;
+        while (!(current instanceof PostgresqlConnection) && current instanceof Wrapped<?> wrapped) {
+            current = wrapped.unwrap();
+        }
+        if (current instanceof PostgresqlConnection postgres) {
+            return postgres;
+        }
+        throw new IllegalStateException("Bulk import needs PostgreSQL, not " + connection.getClass().getName());
+    }
+
+    /**
+     * The rows as {@code COPY} CSV input, text fields always quoted
+     */
+    static ByteBuf csv(List<Row> rows) {
+        StringBuilder csv = new StringBuilder(rows.size() * 48);
+        for (Row row : rows) {
+            csv.append(row.line()).append(',');
+            quote(csv, row.login()).append(',');
+            quote(csv, row.password()).append(',');
+            csv.append(row.balance()).append('\n');
+        }
+        return Unpooled.copiedBuffer(csv, StandardCharsets.UTF_8);
+    }
+
+    private static StringBuilder quote(StringBuilder csv, String value) {
+        csv.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                csv.append('"');
+            }
+            csv.append(c);
+        }
+        return csv.append('"');
+    }
+
+    /**
+     * A row to import
+     *
+     * @param line the line number in the input, from 1
+     * @param balance the balance in 1/10000 units
+     */
+    record Row(long line, String login, String password, long balance) {
+    }
+
+    /**
+     * A row that was not imported
+     *
+     * @param line the line number in the input, from 1
+     * @param login the login, null if the line could not be parsed
+     * @param reason why the row was skipped
+     */
+    public record Rejected(long line, String login, String reason) {
+    }
+
+    /**
+     * Import counts
+     *
+     * @param rows data rows read
+     * @param imported clients created
+     * @param conflicts rows skipped because the login already existed
+     * @param invalid rows skipped because they could not be parsed
+     * @param rejected the first skipped rows, up to {@code max-reported}, in no particular order
+     */
+    public record Report(long rows, long imported, long conflicts, long invalid, List<Rejected> rejected) {
+    }
+
+    /**
+     * Raised when an import is requested while shards are migrating; the import can be retried once they are done
+     */
+    public static class MigrationInProgressException extends RuntimeException {
+
+        MigrationInProgressException() {
+            super("Clients cannot be imported while shards are migrating");
+        }
+    }
+
+    private record Chunk(int rows, List<Rejected> conflicts) {
+
+        Chunk plus(Chunk other) {
+            List<Rejected> both = new ArrayList<>(conflicts.size() + other.conflicts.size());
+            both.addAll(conflicts);
+            both.addAll(other.conflicts);
+            return new Chunk(rows + other.rows, both);
+        }
+    }
+
+    /**
+     * Counts of one import; invalid rows are counted on the reading side, chunks as they complete
+     */
+    private static class Tally {
+
+        private final int maxReported;
+        private final List<Rejected> rejected = new ArrayList<>();
+        private long rows;
+        private long conflicts;
+        private long invalid;
+
+        Tally(int maxReported) {
+            this.maxReported = maxReported;
+        }
+
+        synchronized void invalid(Rejected row) {
+            rows++;
+            invalid++;
+            report(row);
+        }
+
+        synchronized void loaded(Chunk chunk) {
+            rows += chunk.rows();
+            conflicts += chunk.conflicts().size();
+            for (Rejected row : chunk.conflicts()) {
+                report(row);
+            }
+        }
+
+        synchronized long rows() {
+            return rows;
+        }
+
+        synchronized Report report() {
+            return new Report(rows, rows - conflicts - invalid, conflicts, invalid, List.copyOf(rejected));
+        }
+
+        private void report(Rejected row) {
+            if (rejected.size() < maxReported) {
+                rejected.add(row);
+            }
+        }
+    }
+}
@@ -1,37 +1,141 @@
 package com.example.qiwitest.service;
 
 import com.example.qiwitest.model.Client;
-import com.example.qiwitest.repository.ClientRepository;
+import com.example.qiwitest.model.LedgerEntry;
+import com.example.qiwitest.model.Money;
+import com.example.qiwitest.metrics.ApiMetrics;
+import com.example.qiwitest.repository.ClientStore;
+import com.example.qiwitest.repository.ReplicaRouter;
+import com.example.qiwitest.repository.ShardRouter;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
-import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 @Service
 public class ClientService {
 
     private static final Logger logger = LoggerFactory.getLogger(ClientService.class);
 
-    private final ClientRepository clientRepository;
+    // Upper bound on the number of logins bound into a single IN (...) query
+    static final int LOGIN_QUERY_CHUNK = 500;
+
+    private final ClientStore clientStore;
+    private final ClientCache clientCache;
+    private final LoginFilter loginFilter;
+    private final LookupCoalescer lookupCoalescer;
+    private final LookupBatcher lookupBatcher;
+
+    // Creates currently running in this process, keyed by login
+    private final ConcurrentMap<String, Mono<Boolean>> pendingCreates = new ConcurrentHashMap<>();
+
+    private final PasswordHasher passwordHasher;
+    private final LedgerWriter ledgerWriter;
+    private final ReplicaRouter replicaRouter;
+    private final ShardRouter shardRouter;
+
+    private final Timer findByLoginTimer;
+    private final Timer findByLoginInTimer;
+    private final Timer saveTimer;
+    private final Timer insertIfAbsentTimer;
+    private final Timer updatePasswordTimer;
+    private final Timer addToBalanceTimer;
 
     @Autowired
-    public ClientService(ClientRepository clientRepository) {
-        this.clientRepository = clientRepository;
+    public ClientService(ClientStore clientStore, ClientCache clientCache, LoginFilter loginFilter,
+                         LookupCoalescer lookupCoalescer, LookupBatcher lookupBatcher, PasswordHasher passwordHasher,
+                         LedgerWriter ledgerWriter, ReplicaRouter replicaRouter, ShardRouter shardRouter,
+                         ApiMetrics metrics) {
+        this.clientStore = clientStore;
+        this.clientCache = clientCache;
+        this.loginFilter = loginFilter;
+        this.lookupCoalescer = lookupCoalescer;
+        this.lookupBatcher = lookupBatcher;
+        this.passwordHasher = passwordHasher;
+        this.ledgerWriter = ledgerWriter;
+        this.replicaRouter = replicaRouter;
+        this.shardRouter = shardRouter;
+        this.findByLoginTimer = metrics.repositoryTimer("findByLogin");
+        this.findByLoginInTimer = metrics.repositoryTimer("findByLoginIn");
+        this.saveTimer = metrics.repositoryTimer("save");
+        this.insertIfAbsentTimer = metrics.repositoryTimer("insertIfAbsent");
+        this.updatePasswordTimer = metrics.repositoryTimer("updatePassword");
+        this.addToBalanceTimer = metrics.repositoryTimer("addToBalance");
     }
 
     /**
-     * Find a client by login
+     * Find a client by login. The lookup may be served by a read replica (see {@link ReplicaRouter}),
+     * concurrent lookups of the same login share one query (see {@link LookupCoalescer}) and concurrent lookups
+     * of different logins are sent as one query (see {@link LookupBatcher}).
      * 
      * @param login the login to search for
      * @return the client if found, empty Mono otherwise
      */
     public Mono<Client> findByLogin(String login) {
-        return clientRepository.findByLogin(login)
-            .doOnError(e -> logger.error("Error finding client by login: {}", login, e));
+        Client cached = clientCache.get(login);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        if (!loginFilter.mightContain(login)) {
+            return Mono.empty();
+        }
+        long version = clientCache.version(login);
+        Mono<Client> lookup = lookupBatcher.isEnabled() ? lookupBatcher.find(login) : replicaRouter.read(login,
+            ApiMetrics.timed(shardRouter.read(login, clientStore.findByLogin(login)), findByLoginTimer));
+        return lookupCoalescer.lookup(login, lookup
+            .doOnNext(client -> clientCache.put(client, version))
+            .switchIfEmpty(Mono.fromRunnable(loginFilter::recordFalsePositive))
+            .doOnError(e -> logger.error("Error finding client by login: {}", login, e)));
+    }
+
+    /**
+     * Find the clients for many logins using as few queries as possible
+     *
+     * @param logins the logins to search for, duplicates are ignored
+     * @return the found clients keyed by login; logins without a client are absent
+     */
+    public Mono<Map<String, Client>> findByLogins(Collection<String> logins) {
+        Map<String, Client> found = new HashMap<>();
+        Map<String, Long> versions = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String login : new LinkedHashSet<>(logins)) {
+            Client cached = clientCache.get(login);
+            if (cached != null) {
+                found.put(login, cached);
+            } else if (loginFilter.mightContain(login)) {
+                versions.put(login, clientCache.version(login));
+                missing.add(login);
+            }
+        }
+        if (missing.isEmpty()) {
+            return Mono.just(found);
+        }
+
+        List<List<String>> chunks = new ArrayList<>();
+        for (int from = 0; from < missing.size(); from += LOGIN_QUERY_CHUNK) {
+            chunks.add(missing.subList(from, Math.min(from + LOGIN_QUERY_CHUNK, missing.size())));
+        }
+        return Flux.fromIterable(chunks)
+            .concatMap(chunk -> replicaRouter.read(chunk, ApiMetrics.timed(
+                shardRouter.readMany(chunk, clientStore::findByLoginIn).collectList(), findByLoginInTimer)))
+            .flatMapIterable(clients -> clients)
+            .doOnNext(client -> clientCache.put(client, versions.getOrDefault(client.getLogin(), -1L)))
+            .collect(() -> found, (map, client) -> map.put(client.getLogin(), client))
+            .doOnError(e -> logger.error("Error finding clients by {} logins", missing.size(), e));
     }
 
     /**
@@ -41,15 +145,72 @@ public class ClientService {
      * @param password the client password
      * @return the created client
      */
-    @Transactional
     public Mono<Client> createClient(String login, String password) {
-        return Mono.just(new Client(login, password))
-            .flatMap(clientRepository::save)
+        return passwordHasher.hash(password)
+            .map(hash -> {
+                // Registered before the insert so the filter never misses a committed login
+                loginFilter.add(login);
+                return new Client(login, hash);
+            })
+            .flatMap(client -> ApiMetrics.timed(shardRouter.onShardOf(login, clientStore.save(client)), saveTimer))
+            .doOnSuccess(saved -> written(login))
             .doOnError(e -> logger.error("Error creating client with login: {}", login, e));
     }
 
     /**
-     * Check if the password is correct for the given client
+     * Create a client unless the login is already taken, with a single INSERT ... ON CONFLICT statement.
+     * Concurrent calls for the same login in this process share one insert; only the caller that
+     * started it can observe {@code true}. The login is looked up first (through the cache) and the password
+     * only hashed if it is not found, so requests for an existing login cannot tie up the hashing pool.
+     *
+     * @param login the client login
+     * @param password the client password
+     * @return true if the client was created, false if the login already existed
+     */
+    public Mono<Boolean> createIfAbsent(String login, String password) {
+        return Mono.defer(() -> {
+            Sinks.One<Boolean> outcome = Sinks.one();
+            Mono<Boolean> shared = outcome.asMono();
+            Mono<Boolean> inFlight = pendingCreates.putIfAbsent(login, shared);
+            if (inFlight != null) {
+                // Someone else is creating this login right now, so it is not ours to create.
+                // If their insert was cancelled, try again ourselves.
+                return inFlight
+                    .map(created -> false)
+                    .onErrorResume(CancellationException.class, e -> createIfAbsent(login, password));
+            }
+
+            // Hashing is far dearer than a lookup, so a login that is known to exist is not hashed for nothing
+            return findByLogin(login).hasElement()
+                .flatMap(exists -> exists ? Mono.just(0) : passwordHasher.hash(password)
+                    .flatMap(hash -> {
+                        // Registered before the insert so the filter never misses a committed login
+                        loginFilter.add(login);
+                        Mono<Integer> insert = shardRouter.insertIfAbsent(login,
+                            clientStore.findByLogin(login).hasElement(), clientStore.insertIfAbsent(login, hash));
+                        return ApiMetrics.timed(insert, insertIfAbsentTimer);
+                    }))
+                .map(rows -> rows > 0)
+                .doOnSuccess(created -> {
+                    written(login);
+                    pendingCreates.remove(login, shared);
+                    outcome.tryEmitValue(created != null && created);
+                })
+                .doOnError(e -> {
+                    logger.error("Error creating client with login: {}", login, e);
+                    pendingCreates.remove(login, shared);
+                    outcome.tryEmitError(e);
+                })
+                .doOnCancel(() -> {
+                    pendingCreates.remove(login, shared);
+                    outcome.tryEmitError(new CancellationException("Create cancelled for login " + login));
+                });
+        });
+    }
+
+    /**
+     * Check if the password is correct for the given client.
+     * A legacy plaintext password is replaced with its hash after the first successful check.
      * 
      * @param clientMono the client mono
      * @param password the password to check
@@ -57,18 +218,202 @@ public class ClientService {
      */
     public Mono<Boolean> isPasswordCorrect(Mono<Client> clientMono, String password) {
         return clientMono
-            .map(client -> password.equals(client.getPassword()))
+            .flatMap(client -> passwordHasher.verify(client.getLogin(), client.getPassword(), password)
+                .flatMap(correct -> correct && !passwordHasher.isHashed(client.getPassword())
+                    ? migratePassword(client, password).thenReturn(true)
+                    : Mono.just(correct)))
             .defaultIfEmpty(false);
     }
 
+    private Mono<Void> migratePassword(Client client, String password) {
+        String login = client.getLogin();
+        return passwordHasher.hash(password)
+            .flatMap(hash -> ApiMetrics.timed(shardRouter.update(login,
+                Mono.defer(() -> clientStore.findByLogin(login)).hasElement(),
+                clientStore.updatePassword(login, client.getPassword(), hash)), updatePasswordTimer))
+            .doOnNext(rows -> {
+                written(login);
+                logger.debug("Migrated plaintext password of client {} ({} rows)", login, rows);
+            })
+            // The login itself succeeded; the migration is retried on the next login
+            .onErrorResume(e -> {
+                logger.warn("Could not migrate plaintext password of client {}: {}", login, e.toString());
+                return Mono.empty();
+            })
+            .then();
+    }
+
+    /**
+     * Add money to a client's balance
+     *
+     * @param login the client login
+     * @param amount the positive amount to add
+     * @return APPLIED, or CLIENT_NOT_FOUND if there is no such client
+     */
+    public Mono<BalanceUpdate> deposit(String login, Money amount) {
+        return addAndRecord(login, amount, "DEPOSIT")
+            .map(applied -> applied ? BalanceUpdate.APPLIED : BalanceUpdate.CLIENT_NOT_FOUND)
+            .doFinally(signal -> written(login))
+            .doOnError(e -> logger.error("Error depositing to client with login: {}", login, e));
+    }
+
+    /**
+     * Take money from a client's balance, never letting it go negative
+     *
+     * @param login the client login
+     * @param amount the positive amount to take
+     * @return APPLIED, or INSUFFICIENT_FUNDS if the balance is too low or the client does not exist
+     */
+    public Mono<BalanceUpdate> withdraw(String login, Money amount) {
+        return addAndRecord(login, amount.negate(), "WITHDRAW")
+            .map(applied -> applied ? BalanceUpdate.APPLIED : BalanceUpdate.INSUFFICIENT_FUNDS)
+            .doFinally(signal -> written(login))
+            .doOnError(e -> logger.error("Error withdrawing from client with login: {}", login, e));
+    }
+
+    /**
+     * Add an amount to a balance and record it in the ledger. Without shards the ledger entry is inserted in
+     * the transaction of the update, so a balance never changes without its entry; with shards the ledger
+     * lives on shard 0, so the entry is group-committed by the {@link LedgerWriter} once the update has.
+     *
+     * @return true if the balance was changed, false if the update matched no row
+     */
+    private Mono<Boolean> addAndRecord(String login, Money amount, String operation) {
+        LedgerEntry entry = new LedgerEntry(login, amount, operation, null);
+        if (isLedgerInTransaction()) {
+            return clientStore.inTransaction(store -> addToBalance(store, login, amount)
+                .flatMap(rows -> rows > 0 ? store.insertLedgerEntry(entry).thenReturn(true) : Mono.just(false)));
+        }
+        return addToBalance(login, amount)
+            .flatMap(rows -> rows > 0 ? ledgerWriter.append(entry).thenReturn(true) : Mono.just(false));
+    }
+
+    private boolean isLedgerInTransaction() {
+        return ledgerWriter.isEnabled() && !shardRouter.isEnabled();
+    }
+
+    /**
+     * Move money between two clients in one transaction. Both rows are updated with conditional
+     * single-statement updates in login order, so concurrent transfers lock rows in the same order
+     * and cannot deadlock. Without shards the two ledger entries are inserted in the same transaction;
+     * with shards they are group-committed by the {@link LedgerWriter} after it, and the transfer fails if
+     * they cannot be written.
+     * <p>
+     * When the clients are on different shards (or a resharding is in progress) no local transaction
+     * can cover both rows. The sender is then debited first and refunded if the recipient does not exist,
+     * so the money is briefly missing from both balances but never created. If the credit fails otherwise
+     * (a timeout, a dropped connection) it may still have committed, so nothing is refunded: the debit is
+     * recorded in the ledger and the transfer is logged as in doubt, for reconciliation.
+     *
+     * @param from the login to take the money from
+     * @param to the login to give the money to
+     * @param amount the positive amount to move
+     * @return APPLIED, INSUFFICIENT_FUNDS or CLIENT_NOT_FOUND (for the recipient); nothing changes unless APPLIED
+     */
+    public Mono<BalanceUpdate> transfer(String from, String to, Money amount) {
+        if (!loginFilter.mightContain(to)) {
+            return Mono.just(BalanceUpdate.CLIENT_NOT_FOUND);
+        }
+        LedgerEntry debitEntry = new LedgerEntry(from, amount.negate(), "TRANSFER", to);
+        LedgerEntry creditEntry = new LedgerEntry(to, amount, "TRANSFER", from);
+        boolean ledgerInTransaction = isLedgerInTransaction();
+        Mono<Void> transfer;
+        if (shardRouter.sameShard(from, to)) {
+            // The transaction takes its connection from the shard in the context, so it must be set outside
+            transfer = shardRouter.onShardOf(from, clientStore.inTransaction(store -> (from.compareTo(to) < 0
+                    ? debit(store, from, amount).then(credit(store, to, amount))
+                    : credit(store, to, amount).then(debit(store, from, amount)))
+                .then(ledgerInTransaction
+                    ? store.insertLedgerEntry(debitEntry).then(store.insertLedgerEntry(creditEntry))
+                    : Mono.empty())));
+        } else {
+            transfer = debit(clientStore, from, amount).then(credit(clientStore, to, amount)
+                .onErrorResume(e -> e instanceof RollbackException
+                    ? refund(from, to, amount).then(Mono.error(e))
+                    : inDoubt(from, to, amount).then(Mono.error(e))));
+        }
+
+        return transfer
+            .then(ledgerInTransaction ? Mono.empty()
+                : Mono.when(ledgerWriter.append(debitEntry), ledgerWriter.append(creditEntry)))
+            .thenReturn(BalanceUpdate.APPLIED)
+            .onErrorResume(RollbackException.class, e -> Mono.just(e.outcome))
+            .doFinally(signal -> {
+                written(from);
+                written(to);
+            })
+            .doOnError(e -> logger.error("Error transferring from {} to {}", from, to, e));
+    }
+
+    private Mono<Void> debit(ClientStore store, String login, Money amount) {
+        return addToBalance(store, login, amount.negate())
+            .flatMap(rows -> rows > 0
+                ? Mono.<Void>empty() : Mono.error(new RollbackException(BalanceUpdate.INSUFFICIENT_FUNDS)));
+    }
+
+    private Mono<Void> credit(ClientStore store, String login, Money amount) {
+        return addToBalance(store, login, amount)
+            .flatMap(rows -> rows > 0
+                ? Mono.<Void>empty() : Mono.error(new RollbackException(BalanceUpdate.CLIENT_NOT_FOUND)));
+    }
+
+    private Mono<Void> refund(String from, String to, Money amount) {
+        return addToBalance(from, amount)
+            .doOnError(e -> logger.error("Could not refund {} to {} after a failed transfer to {}",
+                amount, from, to, e))
+            .then();
+    }
+
+    /**
+     * Record a cross-shard transfer whose debit committed but whose credit may or may not have: refunding
+     * could create money, so the debit goes to the ledger and the transfer is left for reconciliation
+     */
+    private Mono<Void> inDoubt(String from, String to, Money amount) {
+        logger.error("Transfer in doubt: {} debited from {}, credit to {} failed with an unknown outcome",
+            amount, from, to);
+        return ledgerWriter.append(new LedgerEntry(from, amount.negate(), "TRANSFER", to));
+    }
+
+    /**
+     * Drop the cached copy of a client that was just written and read it from the primary for a while,
+     * so the next lookup cannot bring back the old state from a lagging replica or a lookup still running
+     */
+    private void written(String login) {
+        clientCache.invalidate(login);
+        lookupCoalescer.forget(login);
+        replicaRouter.pin(login);
+    }
+
+    private Mono<Integer> addToBalance(String login, Money amount) {
+        return addToBalance(clientStore, login, amount);
+    }
+
+    private Mono<Integer> addToBalance(ClientStore store, String login, Money amount) {
+        return ApiMetrics.timed(shardRouter.update(login, Mono.defer(() -> store.findByLogin(login)).hasElement(),
+            store.addToBalance(login, amount)), addToBalanceTimer);
+    }
+
     /**
      * Get the balance for the given client
      * 
      * @param clientMono the client mono
      * @return the client's balance or empty Mono if client not found
      */
-    public Mono<BigDecimal> getBalance(Mono<Client> clientMono) {
+    public Mono<Money> getBalance(Mono<Client> clientMono) {
         return clientMono
             .map(Client::getBalance);
     }
+
+    /**
+     * Signals a business outcome that must roll back the surrounding transaction
+     */
+    private static class RollbackException extends RuntimeException {
+
+        private final BalanceUpdate outcome;
+
+        RollbackException(BalanceUpdate outcome) {
+            super(outcome.name(), null, false, false);
+            this.outcome = outcome;
+        }
+    }
 }
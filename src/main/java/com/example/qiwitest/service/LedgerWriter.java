@@ -0,0 +1,315 @@
+package com.example.qiwitest.service;
+
+import com.example.qiwitest.model.LedgerEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Appends {@link LedgerEntry} rows with group commit.
+ * <p>
+ * Entries from concurrent requests are queued and written together: a batch is flushed when it reaches
+ * {@code batch-size} entries or when {@code window} has passed since its first entry, whichever comes
+ * first, as one multi-row INSERT. At most {@code max-in-flight} batches are written at a time; entries
+ * arriving meanwhile wait for the next batch, so under load the batches grow instead of the number of
+ * statements. The Mono returned by {@link #append} completes only once the INSERT holding the entry has
+ * committed.
+ * <p>
+ * A failed INSERT is run again after {@code retry-delay}, up to {@code max-attempts} runs in all, while its
+ * requests keep waiting and its write slot stays taken, so a database outage holds requests back rather than
+ * answering them without their entries. If the last run fails too, the requests of the batch fail with its
+ * error and the entries are logged with all their fields, for reconciliation.
+ * <p>
+ * A batch is only cut when a write slot can take it; until then entries keep queueing. Should the pipeline
+ * still fail, the requests waiting in it fail and a new pipeline takes the next entries. {@link #close} stops
+ * taking entries and waits until the queued ones are written.
+ */
+@Component
+public class LedgerWriter implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LedgerWriter.class);
+
+    private static final String INSERT_PREFIX = "INSERT INTO ledger (login, amount, operation, counterparty) VALUES ";
+
+    // Upper bound on how long close() waits for the queued entries, on top of the retries of a batch
+    private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(10);
+
+    private final DatabaseClient databaseClient;
+    private final int batchSize;
+    private final Duration window;
+    private final int maxInFlight;
+    private final Duration retryDelay;
+    private final int maxAttempts;
+
+    // INSERT statements by number of rows, built on first use
+    private final AtomicReferenceArray<String> statements;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong entries = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private final boolean enabled;
+    private volatile Pipeline pipeline;
+    private volatile boolean closed;
+
+    @Autowired
+    public LedgerWriter(DatabaseClient databaseClient,
+                        @Value("${qiwitest.ledger.enabled:true}") boolean enabled,
+                        @Value("${qiwitest.ledger.batch-size:256}") int batchSize,
+                        @Value("${qiwitest.ledger.window:2ms}") Duration window,
+                        @Value("${qiwitest.ledger.max-in-flight:2}") int maxInFlight,
+                        @Value("${qiwitest.ledger.retry-delay:200ms}") Duration retryDelay,
+                        @Value("${qiwitest.ledger.max-attempts:3}") int maxAttempts) {
+        this.databaseClient = databaseClient;
+        this.batchSize = batchSize;
+        this.window = window;
+        this.maxInFlight = maxInFlight;
+        this.retryDelay = retryDelay;
+        this.maxAttempts = maxAttempts;
+        this.enabled = enabled;
+        this.statements = new AtomicReferenceArray<>(batchSize + 1);
+        if (enabled) {
+            this.pipeline = new Pipeline();
+            logger.info("Ledger group commit enabled: batch-size={}, window={}, max-in-flight={}, max-attempts={}",
+                batchSize, window, maxInFlight, maxAttempts);
+        } else {
+            logger.info("Ledger disabled");
+        }
+    }
+
+    /**
+     * Create a writer that drops every entry
+     *
+     * @return a disabled writer
+     */
+    public static LedgerWriter disabled() {
+        return new LedgerWriter(null, false, 1, Duration.ZERO, 1, Duration.ZERO, 1);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queue an entry for the next group commit
+     *
+     * @param entry the entry to write
+     * @return a Mono that completes once the entry is committed, or fails if it could not be written
+     */
+    public Mono<Void> append(LedgerEntry entry) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        return Mono.create(callback -> {
+            if (closed) {
+                callback.error(new IllegalStateException("Ledger writer is closed"));
+            } else {
+                pipeline.submit(new Pending(entry, callback));
+            }
+        });
+    }
+
+    /**
+     * @return the number of INSERT statements written so far
+     */
+    public long batchCount() {
+        return batches.get();
+    }
+
+    /**
+     * @return the number of entries written so far
+     */
+    public long entryCount() {
+        return entries.get();
+    }
+
+    /**
+     * @return the number of INSERT statements run again after failing
+     */
+    public long retryCount() {
+        return retries.get();
+    }
+
+    /**
+     * @return the number of entries that could not be written in {@code max-attempts} runs
+     */
+    public long failureCount() {
+        return failures.get();
+    }
+
+    private Mono<Void> write(Pipeline owner, List<Pending> batch) {
+        return insert(batch)
+            .retryWhen(Retry.fixedDelay(maxAttempts - 1, retryDelay)
+                .doBeforeRetry(signal -> {
+                    retries.incrementAndGet();
+                    logger.warn("Could not write {} ledger entries, attempt {} of {}: {}", batch.size(),
+                        signal.totalRetries() + 1, maxAttempts, signal.failure().toString());
+                })
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+            .doOnSuccess(ignored -> {
+                batches.incrementAndGet();
+                entries.addAndGet(batch.size());
+                for (Pending pending : batch) {
+                    owner.succeed(pending);
+                }
+            })
+            // One failed batch must not stop the pipeline
+            .onErrorResume(e -> {
+                logger.error("Could not write {} ledger entries in {} attempts", batch.size(), maxAttempts, e);
+                for (Pending pending : batch) {
+                    owner.fail(pending, e);
+                }
+                return Mono.empty();
+            });
+    }
+
+    private Mono<Void> insert(List<Pending> batch) {
+        return Mono.defer(() -> {
+            DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(statement(batch.size()));
+            for (int i = 0; i < batch.size(); i++) {
+                LedgerEntry entry = batch.get(i).entry;
+                spec = spec.bind("l" + i, entry.getLogin())
+                    .bind("a" + i, entry.getAmount().units())
+                    .bind("o" + i, entry.getOperation());
+                spec = entry.getCounterparty() == null
+                    ? spec.bindNull("c" + i, String.class)
+                    : spec.bind("c" + i, entry.getCounterparty());
+            }
+            return spec.then();
+        });
+    }
+
+    /**
+     * Fail the request of an entry that could not be written. Its balance change may have committed without
+     * it, so the entry is logged in full for reconciliation.
+     */
+    private void failed(Pending pending, Throwable e) {
+        failures.incrementAndGet();
+        LedgerEntry entry = pending.entry;
+        logger.error("Ledger entry not written: login={}, amount={}, operation={}, counterparty={}",
+            entry.getLogin(), entry.getAmount(), entry.getOperation(), entry.getCounterparty());
+        pending.callback.error(e);
+    }
+
+    private String statement(int rows) {
+        String sql = statements.get(rows);
+        if (sql == null) {
+            StringBuilder builder = new StringBuilder(INSERT_PREFIX.length() + rows * 24).append(INSERT_PREFIX);
+            for (int i = 0; i < rows; i++) {
+                if (i > 0) {
+                    builder.append(", ");
+                }
+                builder.append("(:l").append(i)
+                    .append(", :a").append(i)
+                    .append(", :o").append(i)
+                    .append(", :c").append(i)
+                    .append(')');
+            }
+            sql = builder.toString();
+            statements.set(rows, sql);
+        }
+        return sql;
+    }
+
+    /**
+     * Stop taking entries and wait until the queued ones are written or have failed
+     */
+    @Override
+    public void close() {
+        if (!enabled || closed) {
+            return;
+        }
+        closed = true;
+        Pipeline current = pipeline;
+        current.sink.complete();
+        Duration timeout = retryDelay.multipliedBy(maxAttempts).plus(CLOSE_TIMEOUT);
+        try {
+            if (!current.done.await(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                logger.error("Ledger writer closed with {} entries not written", current.pending.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Whatever is left, or submitted while closing, will not be written any more
+        current.failure = new IllegalStateException("Ledger writer is closed");
+        for (Pending entry : current.pending) {
+            current.fail(entry, current.failure);
+        }
+    }
+
+    private record Pending(LedgerEntry entry, MonoSink<Void> callback) {
+    }
+
+    /**
+     * One subscription of the group commit pipeline and the entries submitted to it but not yet written.
+     * An entry is completed by whoever removes it from {@code pending}, so it is completed exactly once
+     * even when the pipeline fails while it is being written.
+     */
+    private final class Pipeline {
+
+        private final Set<Pending> pending = ConcurrentHashMap.newKeySet();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile FluxSink<Pending> sink;
+        private volatile Throwable failure;
+
+        Pipeline() {
+            Flux.<Pending>create(sink -> this.sink = sink)
+                // Without fair backpressure a window closing while every write slot is busy fails the buffer
+                .bufferTimeout(batchSize, window, true)
+                .flatMap(batch -> write(this, batch), maxInFlight)
+                .doFinally(signal -> done.countDown())
+                .subscribe(null, this::failed);
+        }
+
+        void submit(Pending entry) {
+            pending.add(entry);
+            sink.next(entry);
+            // Lost the race with a failure or close that already drained the pending entries
+            Throwable e = failure;
+            if (e != null) {
+                fail(entry, e);
+            }
+        }
+
+        void succeed(Pending entry) {
+            if (pending.remove(entry)) {
+                entry.callback.success();
+            }
+        }
+
+        void fail(Pending entry, Throwable e) {
+            if (pending.remove(entry)) {
+                LedgerWriter.this.failed(entry, e);
+            }
+        }
+
+        private void failed(Throwable e) {
+            logger.error("Ledger pipeline failed, failing {} queued entries and restarting", pending.size(), e);
+            failure = e;
+            if (!closed) {
+                pipeline = new Pipeline();
+            }
+            for (Pending entry : pending) {
+                fail(entry, e);
+            }
+        }
+    }
+}
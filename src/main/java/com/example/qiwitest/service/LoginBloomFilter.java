@@ -0,0 +1,105 @@
+package com.example.qiwitest.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, thread-safe Bloom filter over logins.
+ * <p>
+ * Bits live in an {@link AtomicLongArray}, so {@link #put(String)} may run concurrently with lookups
+ * and never loses a bit. Bit positions are derived from two 64-bit hashes of the login
+ * (Kirsch-Mitzenmacher double hashing), computed straight from the string's chars without allocating.
+ */
+public class LoginBloomFilter {
+
+    private static final double LN2 = Math.log(2);
+
+    private final AtomicLongArray words;
+    private final long bitSize;
+    private final int hashCount;
+    private final AtomicLong insertions = new AtomicLong();
+
+    /**
+     * Create a filter sized for the given load
+     *
+     * @param expectedInsertions the number of logins the filter is sized for
+     * @param falsePositiveProbability the target false positive rate at that size
+     * @param maxBytes upper bound on the memory used by the bit array
+     */
+    public LoginBloomFilter(long expectedInsertions, double falsePositiveProbability, long maxBytes) {
+        long n = Math.max(1, expectedInsertions);
+        long optimalBits = (long) Math.ceil(-n * Math.log(falsePositiveProbability) / (LN2 * LN2));
+        long bits = Math.max(64, Math.min(optimalBits, maxBytes * Byte.SIZE));
+        int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, (bits + 63) / 64);
+        this.words = new AtomicLongArray(wordCount);
+        this.bitSize = (long) wordCount * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / n * LN2));
+    }
+
+    public void put(String login) {
+        long h1 = hash(login, 0x9E3779B97F4A7C15L);
+        long h2 = hash(login, 0xC2B2AE3D27D4EB4FL) | 1;
+        boolean changed = false;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitSize);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            if ((current & mask) == 0) {
+                words.getAndUpdate(word, value -> value | mask);
+                changed = true;
+            }
+        }
+        if (changed) {
+            insertions.incrementAndGet();
+        }
+    }
+
+    public boolean mightContain(String login) {
+        long h1 = hash(login, 0x9E3779B97F4A7C15L);
+        long h2 = hash(login, 0xC2B2AE3D27D4EB4FL) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitSize);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Approximate number of distinct logins added; duplicates that set no new bit are not counted
+     */
+    public long approximateCount() {
+        return insertions.get();
+    }
+
+    public long bitSize() {
+        return bitSize;
+    }
+
+    public int hashCount() {
+        return hashCount;
+    }
+
+    /**
+     * Expected false positive rate for the current number of insertions
+     */
+    public double expectedFalsePositiveProbability() {
+        return Math.pow(1 - Math.exp(-(double) hashCount * approximateCount() / bitSize), hashCount);
+    }
+
+    static long hash(String value, long seed) {
+        long h = seed ^ (value.length() * 0xFF51AFD7ED558CCDL);
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * 0x100000001B3L;
+        }
+        // MurmurHash3 finalizer
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,268 @@
+package com.example.qiwitest.service;
+
+import com.example.qiwitest.repository.ClientRepository;
+import com.example.qiwitest.repository.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Answers "definitely absent" for unknown logins without a database round trip.
+ * <p>
+ * A {@link LoginBloomFilter} is built from {@code CLIENTS.LOGIN} once the application is ready and
+ * receives every login created afterwards. Until the first build completes every login is reported
+ * as possibly present. Logins are added before their row is inserted and remembered for
+ * {@code replay-window}, so an insert that commits while a rebuild scans the table is replayed
+ * into the new filter instead of becoming a false negative.
+ * <p>
+ * Logins created elsewhere (by another instance, an import on another node or plain SQL) only reach the
+ * filter with the next rebuild, so until then they are reported absent. The filter is therefore off by default
+ * and only meant for a single instance that creates all clients; {@code rebuild-interval} bounds how long a
+ * login created elsewhere is missed, and 0 turns the rebuilds off.
+ */
+@Component
+public class LoginFilter implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoginFilter.class);
+
+    private final ClientRepository clientRepository;
+    private final ShardRouter shardRouter;
+    private final boolean enabled;
+    private final long expectedInsertions;
+    private final double falsePositiveProbability;
+    private final long maxBytes;
+    private final Duration rebuildInterval;
+    private final Duration replayWindow;
+
+    private volatile LoginBloomFilter active;
+    private volatile LoginBloomFilter building;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private final ConcurrentLinkedQueue<RecentAdd> recentAdds = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong definitelyAbsent = new AtomicLong();
+    private final AtomicLong mightBePresent = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    private Disposable periodicRebuild;
+
+    @Autowired
+    public LoginFilter(ClientRepository clientRepository,
+                       ShardRouter shardRouter,
+                       @Value("${qiwitest.login-filter.enabled:false}") boolean enabled,
+                       @Value("${qiwitest.login-filter.expected-insertions:10000000}") long expectedInsertions,
+                       @Value("${qiwitest.login-filter.false-positive-probability:0.01}")
+                       double falsePositiveProbability,
+                       @Value("${qiwitest.login-filter.max-bytes:268435456}") long maxBytes,
+                       @Value("${qiwitest.login-filter.rebuild-interval:1m}") Duration rebuildInterval,
+                       @Value("${qiwitest.login-filter.replay-window:1m}") Duration replayWindow) {
+        this.clientRepository = clientRepository;
+        this.shardRouter = shardRouter;
+        this.enabled = enabled;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.maxBytes = maxBytes;
+        this.rebuildInterval = rebuildInterval;
+        this.replayWindow = replayWindow;
+    }
+
+    /**
+     * Create a filter that always answers "might be present"
+     *
+     * @return a disabled filter
+     */
+    public static LoginFilter disabled() {
+        return new LoginFilter(null, ShardRouter.disabled(), false, 0, 0.01, 0, Duration.ZERO, Duration.ZERO);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            return;
+        }
+        rebuild().subscribe();
+        if (!rebuildInterval.isZero()) {
+            periodicRebuild = Flux.interval(rebuildInterval, rebuildInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> rebuild().onErrorResume(e -> Mono.empty()))
+                .subscribe();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (periodicRebuild != null) {
+            periodicRebuild.dispose();
+        }
+    }
+
+    /**
+     * Check whether a login may exist
+     *
+     * @param login the login
+     * @return false only if the login definitely does not exist
+     */
+    public boolean mightContain(String login) {
+        LoginBloomFilter filter = active;
+        if (filter == null) {
+            return true;
+        }
+        if (filter.mightContain(login)) {
+            mightBePresent.incrementAndGet();
+            return true;
+        }
+        definitelyAbsent.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Record that the filter reported a login as possibly present but the database had no such client
+     */
+    public void recordFalsePositive() {
+        if (active != null) {
+            falsePositives.incrementAndGet();
+        }
+    }
+
+    /**
+     * Add a login. Must be called before the client row is inserted.
+     *
+     * @param login the login
+     */
+    public void add(String login) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        recentAdds.add(new RecentAdd(login, now));
+        pruneRecentAdds(now);
+
+        LoginBloomFilter filter = active;
+        if (filter != null) {
+            filter.put(login);
+        }
+        LoginBloomFilter next = building;
+        if (next != null) {
+            next.put(login);
+        }
+    }
+
+    /**
+     * Build a new filter from the CLIENTS table and swap it in once complete.
+     * A rebuild that is already running is not restarted.
+     *
+     * @return a Mono completing when the new filter is active
+     */
+    public Mono<Void> rebuild() {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> {
+            if (!rebuilding.compareAndSet(false, true)) {
+                logger.debug("Login filter rebuild already in progress");
+                return Mono.<Void>empty();
+            }
+            LoginBloomFilter previous = active;
+            long size = Math.max(expectedInsertions, previous == null ? 0 : previous.approximateCount() * 2);
+            LoginBloomFilter next = new LoginBloomFilter(size, falsePositiveProbability, maxBytes);
+            long startedAt = System.nanoTime();
+            building = next;
+
+            return shardRouter.fanOut(clientRepository::findAllLogins)
+                .doOnNext(next::put)
+                .then(Mono.fromRunnable(() -> {
+                    replayRecentAdds(next, startedAt - replayWindow.toNanos());
+                    active = next;
+                    building = null;
+                    falsePositives.set(0);
+                    mightBePresent.set(0);
+                    definitelyAbsent.set(0);
+                    logger.info("Login filter built: ~{} logins, {} bits, {} hashes, expected fpp {}",
+                        next.approximateCount(), next.bitSize(), next.hashCount(),
+                        next.expectedFalsePositiveProbability());
+                    if (next.approximateCount() > size) {
+                        logger.warn("Login filter holds more logins than it was sized for ({} > {})",
+                            next.approximateCount(), size);
+                    }
+                }))
+                .doOnError(e -> logger.error("Error building login filter", e))
+                .doFinally(signal -> {
+                    building = null;
+                    rebuilding.set(false);
+                })
+                .then();
+        });
+    }
+
+    public boolean isReady() {
+        return active != null;
+    }
+
+    /**
+     * Get lookup and false positive statistics since the last rebuild
+     *
+     * @return the statistics
+     */
+    public Stats stats() {
+        LoginBloomFilter filter = active;
+        if (filter == null) {
+            return new Stats(false, 0, 0, 0, 0, 0, 0);
+        }
+        return new Stats(true, definitelyAbsent.get(), mightBePresent.get(), falsePositives.get(),
+            filter.approximateCount(), filter.bitSize() / Byte.SIZE, filter.expectedFalsePositiveProbability());
+    }
+
+    private void replayRecentAdds(LoginBloomFilter filter, long since) {
+        for (RecentAdd recent : recentAdds) {
+            if (recent.nanos() - since >= 0) {
+                filter.put(recent.login());
+            }
+        }
+    }
+
+    private void pruneRecentAdds(long now) {
+        long oldest = now - replayWindow.toNanos();
+        Iterator<RecentAdd> iterator = recentAdds.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().nanos() - oldest >= 0) {
+                break;
+            }
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Lookup statistics of the login filter
+     *
+     * @param ready whether a filter has been built
+     * @param definitelyAbsent lookups answered without the database
+     * @param mightBePresent lookups passed on to the database
+     * @param falsePositives passed-on lookups that found no client
+     * @param approximateCount logins in the filter
+     * @param sizeBytes memory used by the bit array
+     * @param expectedFalsePositiveProbability false positive rate predicted for the current fill
+     */
+    public record Stats(boolean ready, long definitelyAbsent, long mightBePresent, long falsePositives,
+                        long approximateCount, long sizeBytes, double expectedFalsePositiveProbability) {
+
+        public double observedFalsePositiveRate() {
+            long negatives = definitelyAbsent + falsePositives;
+            return negatives == 0 ? 0 : (double) falsePositives / negatives;
+        }
+    }
+
+    private record RecentAdd(String login, long nanos) {
+    }
+}
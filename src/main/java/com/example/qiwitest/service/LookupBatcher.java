@@ -0,0 +1,327 @@
+package com.example.qiwitest.service;
+
+import com.example.qiwitest.metrics.ApiMetrics;
+import com.example.qiwitest.model.Client;
+import com.example.qiwitest.repository.ClientStore;
+import com.example.qiwitest.repository.ReplicaRouter;
+import com.example.qiwitest.repository.ShardRouter;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Turns concurrent lookups of different logins into one {@code login = ANY(:logins)} query, so they share a
+ * round trip and a pooled connection.
+ * <p>
+ * The batching adapts to load. A lookup arriving while no batch query is running is sent at once, alone,
+ * so at low load nothing waits. While a query is running, lookups queue up and are sent together when
+ * {@code max-batch-size} logins are waiting, when the oldest has waited {@code window}, or when a running
+ * query finishes and frees one of the {@code max-in-flight} slots, whichever comes first. Under load the
+ * batches therefore grow instead of the number of queries.
+ * <p>
+ * A lookup whose caller cancels (or times out) while it is queued is left out of the next batch and no longer
+ * counts towards {@code max-batch-size}; a query whose lookups have all been cancelled is disposed.
+ */
+@Component
+public class LookupBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(LookupBatcher.class);
+
+    private final ClientStore clientStore;
+    private final ReplicaRouter replicaRouter;
+    private final ShardRouter shardRouter;
+    private final Timer findByLoginAnyTimer;
+
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final long windowNanos;
+    private final int maxInFlight;
+
+    private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Serializes drain(): only the caller that moves it from 0 drains, the others leave work for it
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicBoolean timerArmed = new AtomicBoolean();
+
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+
+    @Autowired
+    public LookupBatcher(ClientStore clientStore, ReplicaRouter replicaRouter, ShardRouter shardRouter,
+                         ApiMetrics metrics,
+                         @Value("${qiwitest.lookup-batch.enabled:true}") boolean enabled,
+                         @Value("${qiwitest.lookup-batch.max-batch-size:128}") int maxBatchSize,
+                         @Value("${qiwitest.lookup-batch.window:200us}") Duration window,
+                         @Value("${qiwitest.lookup-batch.max-in-flight:4}") int maxInFlight) {
+        this.clientStore = clientStore;
+        this.replicaRouter = replicaRouter;
+        this.shardRouter = shardRouter;
+        this.findByLoginAnyTimer = metrics.repositoryTimer("findByLoginAny");
+        this.enabled = enabled;
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = window.toNanos();
+        this.maxInFlight = maxInFlight;
+        if (enabled) {
+            logger.info("Lookup batching enabled: max-batch-size={}, window={}, max-in-flight={}",
+                maxBatchSize, window, maxInFlight);
+        } else {
+            logger.info("Lookup batching disabled");
+        }
+    }
+
+    /**
+     * Create a batcher that is never used; {@link ClientService} then looks up every login on its own
+     *
+     * @return a disabled batcher
+     */
+    public static LookupBatcher disabled() {
+        return new LookupBatcher(null, ReplicaRouter.disabled(), ShardRouter.disabled(), ApiMetrics.disabled(),
+            false, 1, Duration.ZERO, 1);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queue a lookup for the next batch
+     *
+     * @param login the login to look up
+     * @return the client, or empty if there is none
+     */
+    public Mono<Client> find(String login) {
+        return Mono.create(sink -> {
+            Pending pending = new Pending(login, sink, System.nanoTime());
+            sink.onCancel(pending::cancel);
+            queued.incrementAndGet();
+            queue.offer(pending);
+            drain();
+        });
+    }
+
+    /**
+     * @return the number of batch queries sent so far
+     */
+    public long queryCount() {
+        return queries.sum();
+    }
+
+    /**
+     * @return the number of lookups answered by batch queries so far
+     */
+    public long lookupCount() {
+        return lookups.sum();
+    }
+
+    public int queuedCount() {
+        return queued.get();
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            while (true) {
+                Pending oldest = queue.peek();
+                // Only drain() removes entries, so the head cannot change under us
+                while (oldest != null && oldest.isCancelled()) {
+                    queue.poll();
+                    oldest = queue.peek();
+                }
+                int running = inFlight.get();
+                if (oldest == null || running >= maxInFlight) {
+                    // A finishing query drains again
+                    break;
+                }
+                if (running > 0 && queued.get() < maxBatchSize
+                        && System.nanoTime() - oldest.enqueuedAt() < windowNanos) {
+                    armTimer(oldest.enqueuedAt() + windowNanos - System.nanoTime());
+                    break;
+                }
+                Batch batch = new Batch(Math.max(Math.min(queued.get(), maxBatchSize), 0));
+                Pending pending;
+                while (batch.size() < maxBatchSize && (pending = queue.poll()) != null) {
+                    // A cancelled lookup is skipped; it has already left the queued count
+                    batch.add(pending);
+                }
+                queued.addAndGet(-batch.size());
+                if (batch.size() == 0) {
+                    continue;
+                }
+                inFlight.incrementAndGet();
+                send(batch);
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void armTimer(long delayNanos) {
+        if (timerArmed.compareAndSet(false, true)) {
+            Schedulers.parallel().schedule(() -> {
+                timerArmed.set(false);
+                drain();
+            }, Math.max(delayNanos, 0), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void send(Batch batch) {
+        // Logins asked for more than once in the batch are queried once
+        Map<String, List<MonoSink<Client>>> waiting = new LinkedHashMap<>();
+        for (Pending pending : batch.entries) {
+            waiting.computeIfAbsent(pending.login, login -> new ArrayList<>(1)).add(pending.sink);
+        }
+        List<String> logins = new ArrayList<>(waiting.keySet());
+
+        // While resharding a client may come back from two shards; its previous shard comes last and wins
+        Mono<Map<String, Client>> query = replicaRouter.read(logins, ApiMetrics.timed(
+            shardRouter.readMany(logins, chunk -> clientStore.findByLoginAny(chunk.toArray(String[]::new)))
+                .collectMap(Client::getLogin),
+            findByLoginAnyTimer));
+
+        batch.query = query.subscribe(
+            found -> {
+                if (!batch.complete()) {
+                    return;
+                }
+                waiting.forEach((login, sinks) -> {
+                    Client client = found.get(login);
+                    for (MonoSink<Client> sink : sinks) {
+                        if (client == null) {
+                            sink.success();
+                        } else {
+                            sink.success(client);
+                        }
+                    }
+                });
+                finished(batch.size());
+            },
+            e -> {
+                if (!batch.complete()) {
+                    return;
+                }
+                logger.error("Error looking up {} clients", logins.size(), e);
+                for (Pending pending : batch.entries) {
+                    pending.sink.error(e);
+                }
+                finished(batch.size());
+            });
+        batch.release();
+    }
+
+    private void finished(int batchSize) {
+        queries.increment();
+        lookups.add(batchSize);
+        inFlight.decrementAndGet();
+        drain();
+    }
+
+    private static final int QUEUED = 0;
+    private static final int TAKEN = 1;
+    private static final int CANCELLED = 2;
+
+    /**
+     * One lookup. It is either taken into a batch or cancelled while queued, whichever happens first.
+     */
+    private final class Pending {
+
+        private final String login;
+        private final MonoSink<Client> sink;
+        private final long enqueuedAt;
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+        private volatile Batch batch;
+
+        Pending(String login, MonoSink<Client> sink, long enqueuedAt) {
+            this.login = login;
+            this.sink = sink;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        long enqueuedAt() {
+            return enqueuedAt;
+        }
+
+        boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        boolean take(Batch batch) {
+            // Set first, so a cancel that sees TAKEN also sees the batch
+            this.batch = batch;
+            return state.compareAndSet(QUEUED, TAKEN);
+        }
+
+        void cancel() {
+            if (state.compareAndSet(QUEUED, CANCELLED)) {
+                queued.decrementAndGet();
+            } else if (state.get() == TAKEN) {
+                batch.release();
+            }
+        }
+    }
+
+    /**
+     * The lookups of one query. The query is disposed once every lookup in it has been cancelled; the sender
+     * holds one reference until the query is subscribed, so that cannot happen before.
+     */
+    private final class Batch {
+
+        private final List<Pending> entries;
+        private final AtomicInteger live = new AtomicInteger(1);
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile Disposable query;
+
+        Batch(int capacity) {
+            this.entries = new ArrayList<>(capacity);
+        }
+
+        int size() {
+            return entries.size();
+        }
+
+        void add(Pending pending) {
+            // Counted before it is taken, so a cancel right after the take finds it counted
+            live.incrementAndGet();
+            if (pending.take(this)) {
+                entries.add(pending);
+            } else {
+                live.decrementAndGet();
+            }
+        }
+
+        /**
+         * @return true for the one caller that settles the batch, by its result or by cancelling it
+         */
+        boolean complete() {
+            return done.compareAndSet(false, true);
+        }
+
+        void release() {
+            if (live.decrementAndGet() == 0 && complete()) {
+                query.dispose();
+                finished(entries.size());
+            }
+        }
+    }
+}
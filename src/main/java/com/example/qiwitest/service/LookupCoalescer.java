@@ -0,0 +1,129 @@
+package com.example.qiwitest.service;
+
+import com.example.qiwitest.model.Client;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single-flight for client lookups: callers that ask for a login while a database lookup of it is already
+ * running wait for that lookup instead of starting their own.
+ * <p>
+ * Nothing is kept once a lookup finishes, so this adds no staleness: a caller only ever gets a result
+ * that was read after it asked, or that it would have raced with anyway. A write to the login
+ * ({@link #forget}) also detaches the running lookup, so later callers read again. When the lookup fails
+ * every waiting caller gets the error; when the caller that started it cancels, the others start over.
+ */
+@Component
+public class LookupCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(LookupCoalescer.class);
+
+    private final boolean enabled;
+
+    // Lookups currently running, keyed by login
+    private final ConcurrentMap<String, Mono<Client>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    @Autowired
+    public LookupCoalescer(@Value("${qiwitest.single-flight.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+        logger.info("Lookup single-flight {}", enabled ? "enabled" : "disabled");
+    }
+
+    /**
+     * Create a coalescer that runs every lookup on its own
+     *
+     * @return a disabled coalescer
+     */
+    public static LookupCoalescer disabled() {
+        return new LookupCoalescer(false);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Run a lookup of a login, or join the one already running
+     *
+     * @param login the login
+     * @param query the database lookup, subscribed to at most once per flight
+     * @return the client found by the shared lookup
+     */
+    public Mono<Client> lookup(String login, Mono<Client> query) {
+        if (!enabled) {
+            return query;
+        }
+        return Mono.defer(() -> {
+            Sinks.One<Client> outcome = Sinks.one();
+            Mono<Client> shared = outcome.asMono();
+            Mono<Client> running = inFlight.putIfAbsent(login, shared);
+            if (running != null) {
+                coalesced.increment();
+                // If the caller that started it went away, try again ourselves
+                return running.onErrorResume(CancellationException.class, e -> lookup(login, query));
+            }
+
+            executed.increment();
+            return query
+                .doOnSuccess(client -> {
+                    inFlight.remove(login, shared);
+                    if (client == null) {
+                        outcome.tryEmitEmpty();
+                    } else {
+                        outcome.tryEmitValue(client);
+                    }
+                })
+                .doOnError(e -> {
+                    inFlight.remove(login, shared);
+                    outcome.tryEmitError(e);
+                })
+                .doOnCancel(() -> {
+                    inFlight.remove(login, shared);
+                    outcome.tryEmitError(new CancellationException("Lookup cancelled for login " + login));
+                });
+        });
+    }
+
+    /**
+     * Make later lookups of a login read again rather than join the one running, which may have read the
+     * client before it was written
+     *
+     * @param login the login that was written
+     */
+    public void forget(String login) {
+        if (enabled) {
+            inFlight.remove(login);
+        }
+    }
+
+    /**
+     * @return the number of lookups that went to the database
+     */
+    public long executedCount() {
+        return executed.sum();
+    }
+
+    /**
+     * @return the number of lookups that joined one already running
+     */
+    public long coalescedCount() {
+        return coalesced.sum();
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.qiwitest.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hashes and verifies passwords with PBKDF2-HMAC-SHA256.
+ * <p>
+ * The key derivation is deliberately slow, so it never runs on the calling (Netty event loop) thread:
+ * it is executed by a fixed-size pool with a bounded queue. When the queue is full the work is rejected,
+ * the caller gets a {@link RejectedExecutionException} and the rejection is counted.
+ * Successful verifications are remembered for a short TTL as a keyed digest of the password, so repeated
+ * logins of hot clients skip the key derivation entirely.
+ * <p>
+ * Stored values look like {@code pbkdf2-sha256$<iterations>$<salt>$<hash>}. Anything else is a legacy
+ * plaintext password that {@link ClientService} replaces with a hash after the first successful login.
+ * A stored value with the prefix that is malformed, or whose iteration count is outside 1 to
+ * {@value #MAX_ITERATION_FACTOR} times the configured count, never matches, so it cannot pin a hashing thread.
+ */
+@Component
+public class PasswordHasher implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PasswordHasher.class);
+
+    static final String PREFIX = "pbkdf2-sha256$";
+
+    // Stored iteration counts above this multiple of the configured count are refused
+    static final int MAX_ITERATION_FACTOR = 10;
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final int iterations;
+    private final ThreadPoolExecutor executor;
+    private final Scheduler scheduler;
+    private final Cache<String, VerifiedPassword> verified;
+    private final SecureRandom random = new SecureRandom();
+    private final SecretKeySpec digestKey;
+    private final ThreadLocal<Mac> digestMac;
+    private final AtomicLong rejected = new AtomicLong();
+
+    @Autowired
+    public PasswordHasher(@Value("${qiwitest.password.iterations:100000}") int iterations,
+                          @Value("${qiwitest.password.threads:0}") int threads,
+                          @Value("${qiwitest.password.queue-capacity:1000}") int queueCapacity,
+                          @Value("${qiwitest.password.verify-cache-ttl:30s}") Duration verifyCacheTtl,
+                          @Value("${qiwitest.password.verify-cache-size:100000}") long verifyCacheSize) {
+        this.iterations = iterations;
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+            runnable -> {
+                Thread thread = new Thread(runnable, "password-hash-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            (runnable, pool) -> {
+                rejected.incrementAndGet();
+                throw new RejectedExecutionException("Password hashing queue is full");
+            });
+        this.scheduler = Schedulers.fromExecutorService(executor, "password-hash");
+        this.verified = Caffeine.newBuilder()
+            .maximumSize(verifyCacheSize)
+            .expireAfterWrite(verifyCacheTtl)
+            .build();
+
+        byte[] key = new byte[32];
+        random.nextBytes(key);
+        this.digestKey = new SecretKeySpec(key, "HmacSHA256");
+        this.digestMac = ThreadLocal.withInitial(this::newDigestMac);
+        logger.info("Password hashing: {} iterations, {} threads, queue capacity {}", iterations, poolSize, queueCapacity);
+    }
+
+    /**
+     * Hash a password on the hashing pool
+     *
+     * @param password the plaintext password
+     * @return the encoded hash
+     */
+    public Mono<String> hash(String password) {
+        return Mono.fromCallable(() -> encode(password)).subscribeOn(scheduler);
+    }
+
+    /**
+     * Check a password against a stored value. Hashed values are verified on the hashing pool unless
+     * the same password was verified recently; legacy plaintext values are compared directly.
+     *
+     * @param login the client login, used as the verification cache key
+     * @param stored the stored hash or legacy plaintext password
+     * @param password the password to check
+     * @return true if the password matches
+     */
+    public Mono<Boolean> verify(String login, String stored, String password) {
+        if (stored == null || password == null) {
+            return Mono.just(false);
+        }
+        if (!isHashed(stored)) {
+            return Mono.just(MessageDigest.isEqual(
+                stored.getBytes(StandardCharsets.UTF_8), password.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        byte[] digest = digest(password);
+        VerifiedPassword recent = verified.getIfPresent(login);
+        if (recent != null && recent.stored().equals(stored) && MessageDigest.isEqual(recent.digest(), digest)) {
+            return Mono.just(true);
+        }
+        return Mono.fromCallable(() -> matches(stored, password))
+            .subscribeOn(scheduler)
+            .doOnNext(matches -> {
+                if (matches) {
+                    verified.put(login, new VerifiedPassword(stored, digest));
+                }
+            });
+    }
+
+    public boolean isHashed(String stored) {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    /**
+     * Check that a hashed value can be verified: well-formed, with an iteration count in the accepted range
+     *
+     * @param stored a value with the hash prefix
+     * @return false if verifying it would always fail
+     */
+    public boolean isWellFormed(String stored) {
+        return isHashed(stored) && parse(stored) != null;
+    }
+
+    /**
+     * Number of hash or verify tasks rejected because the queue was full
+     */
+    public long rejectedCount() {
+        return rejected.get();
+    }
+
+    public int queueSize() {
+        return executor.getQueue().size();
+    }
+
+    public int activeCount() {
+        return executor.getActiveCount();
+    }
+
+    @Override
+    public void close() {
+        scheduler.dispose();
+    }
+
+    String encode(String password) throws GeneralSecurityException {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] hash = derive(password, salt, iterations);
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    boolean matches(String stored, String password) throws GeneralSecurityException {
+        StoredHash hash = parse(stored);
+        if (hash == null) {
+            logger.warn("Refusing to verify a malformed stored password hash");
+            return false;
+        }
+        return MessageDigest.isEqual(hash.hash(), derive(password, hash.salt(), hash.iterations()));
+    }
+
+    /**
+     * @return the parts of a stored hash, or null if it is malformed or its iteration count is out of range
+     */
+    private StoredHash parse(String stored) {
+        String[] parts = stored.substring(PREFIX.length()).split("\\$", -1);
+        if (parts.length != 3) {
+            return null;
+        }
+        try {
+            int count = Integer.parseInt(parts[0]);
+            if (count < 1 || count > (long) iterations * MAX_ITERATION_FACTOR) {
+                return null;
+            }
+            Base64.Decoder decoder = Base64.getDecoder();
+            byte[] salt = decoder.decode(parts[1]);
+            byte[] hash = decoder.decode(parts[2]);
+            return salt.length == 0 || hash.length != HASH_BITS / Byte.SIZE ? null : new StoredHash(count, salt, hash);
+        } catch (IllegalArgumentException e) {
+            // Not a number or not Base64
+            return null;
+        }
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private byte[] digest(String password) {
+        return digestMac.get().doFinal(password.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newDigestMac() {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(digestKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private record VerifiedPassword(String stored, byte[] digest) {
+    }
+
+    private record StoredHash(int iterations, byte[] salt, byte[] hash) {
+    }
+}
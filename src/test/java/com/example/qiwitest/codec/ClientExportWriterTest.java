@@ -0,0 +1,61 @@
+package com.example.qiwitest.codec;
+
+import com.example.qiwitest.model.Client;
+import com.example.qiwitest.model.Money;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ClientExportWriterTest {
+
+    @Test
+    public void shouldWriteDocument() {
+        // Arrange
+        DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+
+        // Act
+        String document = text(ClientExportWriter.header(bufferFactory, 0))
+            + text(ClientExportWriter.page(bufferFactory,
+                List.of(client(1, "alice", "10.5"), client(20, "bob", "0"))))
+            + text(ClientExportWriter.footer(bufferFactory));
+
+        // Assert
+        assertEquals("""
+            <?xml version="1.0" encoding="UTF-8"?>
+            <clients after="0">
+            <client id="1" login="alice" balance="10.5000"/>
+            <client id="20" login="bob" balance="0.0000"/>
+            </clients>
+            """, document);
+    }
+
+    @Test
+    public void shouldEscapeLoginsAndSizePagesExactly() {
+        // Arrange
+        List<Client> clients = List.of(client(Long.MAX_VALUE, "a\"<&>", "-1"),
+            client(7, "жук", "922337203685477.5807"));
+
+        // Act
+        DataBuffer page = ClientExportWriter.page(DefaultDataBufferFactory.sharedInstance, clients);
+
+        // Assert
+        assertEquals(ClientExportWriter.encodedLength(clients), page.readableByteCount());
+        assertEquals("<client id=\"9223372036854775807\" login=\"a&quot;&lt;&amp;&gt;\" balance=\"-1.0000\"/>\n"
+            + "<client id=\"7\" login=\"жук\" balance=\"922337203685477.5807\"/>\n", text(page));
+    }
+
+    private static Client client(long id, String login, String balance) {
+        Client client = new Client(login, "secret", Money.parse(balance));
+        client.setId(id);
+        return client;
+    }
+
+    private static String text(DataBuffer buffer) {
+        return buffer.toString(StandardCharsets.UTF_8);
+    }
+}
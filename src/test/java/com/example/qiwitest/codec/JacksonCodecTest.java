@@ -0,0 +1,132 @@
+package com.example.qiwitest.codec;
+
+import com.example.qiwitest.dto.BatchRequestDto;
+import com.example.qiwitest.dto.BatchResponseDto;
+import com.example.qiwitest.dto.RequestDto;
+import com.example.qiwitest.dto.ResponseDto;
+import com.example.qiwitest.model.Money;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JacksonCodecTest {
+
+    private final JacksonRequestDecoder jsonDecoder =
+            new JacksonRequestDecoder(new JsonFactory(), MediaType.APPLICATION_JSON);
+    private final JacksonResponseEncoder jsonEncoder =
+            new JacksonResponseEncoder(new JsonFactory(), MediaType.APPLICATION_JSON);
+
+    @Test
+    public void shouldDecodeJsonRequest() {
+        RequestDto request = decode(RequestDto.class, """
+                {"request-type": "DEPOSIT", "comment": {"nested": [1, 2]},
+                 "extra": {"login": "123456", "password": "pwd", "amount": 10.5}}""");
+
+        assertEquals("DEPOSIT", request.getRequestType());
+        assertEquals("123456", request.getLogin());
+        assertEquals("pwd", request.getPassword());
+        assertEquals("10.5", request.getExtraValue("amount"));
+    }
+
+    @Test
+    public void shouldDecodeJsonBatch() {
+        BatchRequestDto batch = decode(BatchRequestDto.class, """
+                {"requests": [
+                  {"request-type": "CREATE-AGT", "extra": {"login": "1", "password": "a"}},
+                  {"request-type": "GET-BALANCE", "extra": {"login": "2", "password": "b"}}]}""");
+
+        assertEquals(2, batch.getRequests().size());
+        assertEquals("CREATE-AGT", batch.getRequests().get(0).getRequestType());
+        assertEquals("2", batch.getRequests().get(1).getLogin());
+    }
+
+    @Test
+    public void shouldRejectMalformedJson() {
+        assertThrows(DecodingException.class, () -> decode(RequestDto.class, "[\"request-type\"]"));
+        assertThrows(DecodingException.class, () -> decode(RequestDto.class, "{\"request-type\": "));
+    }
+
+    @Test
+    public void shouldEncodeJsonResponse() {
+        ResponseDto response = new ResponseDto(0);
+        response.addExtra("balance", "10.5000");
+
+        assertEquals("{\"result-code\":0,\"extra\":{\"balance\":\"10.5000\"}}", encode(jsonEncoder, response));
+        assertEquals("{\"result-code\":3,\"extra\":{}}", encode(jsonEncoder, new ResponseDto(3)));
+
+        ResponseDto amount = new ResponseDto(0);
+        amount.addExtra("balance", Money.parse("10.5"));
+        assertEquals("{\"result-code\":0,\"extra\":{\"balance\":\"10.5000\"}}", encode(jsonEncoder, amount));
+    }
+
+    @Test
+    public void shouldEncodeJsonBatch() {
+        BatchResponseDto batch = new BatchResponseDto(List.of(new ResponseDto(0), new ResponseDto(1)));
+
+        assertEquals("{\"responses\":[{\"result-code\":0,\"extra\":{}},{\"result-code\":1,\"extra\":{}}]}",
+                encode(jsonEncoder, batch));
+    }
+
+    @Test
+    public void shouldRoundTripCbor() {
+        CBORFactory cbor = new CBORFactory();
+        JacksonResponseEncoder encoder = new JacksonResponseEncoder(cbor, MediaType.APPLICATION_CBOR);
+        JacksonRequestDecoder decoder = new JacksonRequestDecoder(cbor, MediaType.APPLICATION_CBOR);
+        ResponseDto response = new ResponseDto(0);
+        response.addExtra("login", "123456");
+        response.addExtra("password", "pwd");
+        response.addExtra("amount", Money.parse("0.25"));
+
+        // A response has the same shape as a request apart from the result code, so it decodes as one
+        DataBuffer buffer = encoder.encodeValue(response, DefaultDataBufferFactory.sharedInstance,
+                ResolvableType.forClass(ResponseDto.class), MediaType.APPLICATION_CBOR, Collections.emptyMap());
+        RequestDto decoded = (RequestDto) decoder.decode(buffer, ResolvableType.forClass(RequestDto.class),
+                MediaType.APPLICATION_CBOR, Collections.emptyMap());
+
+        assertEquals("123456", decoded.getLogin());
+        assertEquals("pwd", decoded.getPassword());
+        assertEquals("0.2500", decoded.getExtraValue("amount"));
+    }
+
+    @Test
+    public void shouldOnlyHandleApiTypesInItsFormat() {
+        assertTrue(jsonDecoder.canDecode(ResolvableType.forClass(RequestDto.class), MediaType.APPLICATION_JSON));
+        assertTrue(jsonDecoder.canDecode(ResolvableType.forClass(BatchRequestDto.class), MediaType.APPLICATION_JSON));
+        assertFalse(jsonDecoder.canDecode(ResolvableType.forClass(String.class), MediaType.APPLICATION_JSON));
+        assertFalse(jsonDecoder.canDecode(ResolvableType.forClass(RequestDto.class), MediaType.APPLICATION_XML));
+        assertTrue(jsonEncoder.canEncode(ResolvableType.forClass(BatchResponseDto.class), MediaType.APPLICATION_JSON));
+        assertFalse(jsonEncoder.canEncode(ResolvableType.forClass(ResponseDto.class), MediaType.APPLICATION_CBOR));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T decode(Class<T> type, String json) {
+        DataBuffer buffer = DefaultDataBufferFactory.sharedInstance.wrap(json.getBytes(StandardCharsets.UTF_8));
+        return (T) jsonDecoder.decode(buffer, ResolvableType.forClass(type), MediaType.APPLICATION_JSON,
+                Collections.emptyMap());
+    }
+
+    private static String encode(JacksonResponseEncoder encoder, Object value) {
+        DataBuffer buffer = encoder.encodeValue(value, DefaultDataBufferFactory.sharedInstance,
+                ResolvableType.forInstance(value), MediaType.APPLICATION_JSON, Collections.emptyMap());
+        try {
+            return buffer.toString(StandardCharsets.UTF_8);
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.qiwitest.codec;
+
+import com.example.qiwitest.dto.RequestDto;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RequestDtoDecoderTest {
+
+    private final RequestDtoDecoder decoder = new RequestDtoDecoder();
+
+    @Test
+    public void shouldDecodeKnownExtras() {
+        RequestDto request = decode("""
+                <?xml version="1.0" encoding="UTF-8"?>
+                <request>
+                        <request-type>GET-BALANCE</request-type>
+                        <extra name="login">123456</extra>
+                        <extra name="password">pwd</extra>
+                </request>""");
+
+        assertEquals("GET-BALANCE", request.getRequestType());
+        assertEquals("123456", request.getLogin());
+        assertEquals("pwd", request.getPassword());
+        assertEquals("123456", request.getExtraValue("login"));
+        assertTrue(request.getOtherExtras().isEmpty());
+    }
+
+    @Test
+    public void shouldKeepUnknownExtrasAndSkipUnknownElements() {
+        RequestDto request = decode("""
+                <request>
+                        <request-type>CREATE-AGT</request-type>
+                        <comment><nested>ignored</nested></comment>
+                        <extra name="login">123456</extra>
+                        <extra name="channel">web</extra>
+                        <extra name="password">pwd</extra>
+                </request>""");
+
+        assertEquals("CREATE-AGT", request.getRequestType());
+        assertEquals("pwd", request.getPassword());
+        assertEquals("web", request.getExtraValue("channel"));
+        assertNull(request.getExtraValue("missing"));
+    }
+
+    @Test
+    public void shouldLeaveMissingFieldsNull() {
+        RequestDto request = decode("<request><extra name=\"login\">123456</extra></request>");
+
+        assertNull(request.getRequestType());
+        assertNull(request.getPassword());
+    }
+
+    @Test
+    public void shouldRejectUnexpectedRoot() {
+        assertThrows(DecodingException.class, () -> decode("<response><result-code>0</result-code></response>"));
+    }
+
+    @Test
+    public void shouldRejectMalformedXml() {
+        assertThrows(DecodingException.class, () -> decode("<request><request-type>GET-BALANCE</request>"));
+    }
+
+    @Test
+    public void shouldOnlyDecodeRequestDto() {
+        assertTrue(decoder.canDecode(ResolvableType.forClass(RequestDto.class), MimeTypeUtils.APPLICATION_XML));
+        assertFalse(decoder.canDecode(ResolvableType.forClass(String.class), MimeTypeUtils.APPLICATION_XML));
+        assertFalse(decoder.canDecode(ResolvableType.forClass(RequestDto.class), MimeTypeUtils.APPLICATION_JSON));
+    }
+
+    private RequestDto decode(String xml) {
+        return decoder.decode(DefaultDataBufferFactory.sharedInstance.wrap(xml.getBytes(StandardCharsets.UTF_8)),
+                ResolvableType.forClass(RequestDto.class), MimeTypeUtils.APPLICATION_XML, Collections.emptyMap());
+    }
+}
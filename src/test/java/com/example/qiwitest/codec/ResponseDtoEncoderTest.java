@@ -0,0 +1,96 @@
+package com.example.qiwitest.codec;
+
+import com.example.qiwitest.dto.ResponseDto;
+import com.example.qiwitest.model.Money;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResponseDtoEncoderTest {
+
+    @Test
+    public void shouldEncodeResultCodeOnly() {
+        assertEquals("<response><result-code>3</result-code><extra/></response>",
+                encode(new ResponseDtoEncoder(), new ResponseDto(3)));
+    }
+
+    @Test
+    public void shouldEncodeBalanceExtra() {
+        ResponseDto response = new ResponseDto(0);
+        response.addExtra("balance", "0.0000");
+
+        assertEquals("<response><result-code>0</result-code>"
+                        + "<extra><extra name=\"balance\">0.0000</extra></extra></response>",
+                encode(new ResponseDtoEncoder(), response));
+    }
+
+    @Test
+    public void shouldEncodeAmountExtraWithFourDecimals() {
+        ResponseDto response = new ResponseDto(0);
+        response.addExtra("balance", Money.ZERO);
+        response.addExtra("limit", Money.parse("922337203685477.5807"));
+
+        assertEquals("<response><result-code>0</result-code><extra><extra name=\"balance\">0.0000</extra>"
+                        + "<extra name=\"limit\">922337203685477.5807</extra></extra></response>",
+                encode(new ResponseDtoEncoder(), response));
+    }
+
+    @Test
+    public void shouldEncodeUncachedResultCode() {
+        assertEquals("<response><result-code>42</result-code><extra/></response>",
+                encode(new ResponseDtoEncoder(), new ResponseDto(42)));
+    }
+
+    @Test
+    public void shouldEscapeExtraValues() {
+        ResponseDto response = new ResponseDto(0);
+        response.addExtra("note", "a<b & \"c\" \u00e9");
+
+        assertEquals("<response><result-code>0</result-code>"
+                        + "<extra><extra name=\"note\">a&lt;b &amp; &quot;c&quot; \u00e9</extra></extra></response>",
+                encode(new ResponseDtoEncoder(), response));
+    }
+
+    @Test
+    public void shouldIndentWhenRequested() {
+        ResponseDto response = new ResponseDto(0);
+        response.addExtra("balance", "0.0000");
+
+        assertEquals("""
+                <response>
+                  <result-code>0</result-code>
+                  <extra>
+                    <extra name="balance">0.0000</extra>
+                  </extra>
+                </response>
+                """, encode(new ResponseDtoEncoder(true), response));
+    }
+
+    @Test
+    public void shouldOnlyEncodeResponseDto() {
+        ResponseDtoEncoder encoder = new ResponseDtoEncoder();
+        assertTrue(encoder.canEncode(ResolvableType.forClass(ResponseDto.class), MimeTypeUtils.APPLICATION_XML));
+        assertFalse(encoder.canEncode(ResolvableType.forClass(String.class), MimeTypeUtils.APPLICATION_XML));
+    }
+
+    private String encode(ResponseDtoEncoder encoder, ResponseDto response) {
+        DataBuffer buffer = encoder.encodeValue(response, DefaultDataBufferFactory.sharedInstance,
+                ResolvableType.forClass(ResponseDto.class), MimeTypeUtils.APPLICATION_XML, Collections.emptyMap());
+        try {
+            assertEquals(buffer.capacity(), buffer.readableByteCount());
+            return buffer.toString(StandardCharsets.UTF_8);
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+}
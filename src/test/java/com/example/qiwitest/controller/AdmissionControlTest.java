@@ -0,0 +1,144 @@
+package com.example.qiwitest.controller;
+
+import com.example.qiwitest.config.CodecConfig;
+import com.example.qiwitest.config.RouterConfig;
+import com.example.qiwitest.metrics.ApiMetrics;
+import com.example.qiwitest.operation.CreateClientOperation;
+import com.example.qiwitest.operation.OperationRegistry;
+import com.example.qiwitest.service.ClientService;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AdmissionControlTest {
+
+    @Test
+    public void shouldShedFloodingLoginButNotOthers() {
+        // Arrange: two requests of burst per login, refilled at one per minute
+        AdmissionControl admission = admission(100, 1.0 / 60, 2, 1_000);
+
+        // Act & Assert
+        assert admission.tryAcquire(List.of("flood"));
+        assert admission.tryAcquire(List.of("flood"));
+        assert !admission.tryAcquire(List.of("flood"));
+        assert admission.tryAcquire(List.of("calm"));
+
+        // A batch takes one token per item
+        assert admission.tryAcquire(List.of("batch", "batch"));
+        assert !admission.tryAcquire(List.of("batch", "other"));
+        assert admission.tryAcquire(List.of("other"));
+
+        assert admission.shedLoginRateCount() == 2;
+        assert admission.admittedCount() == 5;
+        assert admission.trackedLogins() == 4;
+    }
+
+    @Test
+    public void shouldShedOverGlobalRate() {
+        // Arrange: three requests of global burst
+        AdmissionControl admission = admission(100, 1_000, 1_000, 3);
+
+        // Act & Assert
+        assert admission.tryAcquire(List.of("a", "b", "c"));
+        assert !admission.tryAcquire(List.of("d"));
+        assert admission.shedGlobalRateCount() == 1;
+    }
+
+    @Test
+    public void shouldGiveBackTokensOfShedRequest() {
+        // Arrange: a bucket of two tokens of one second each
+        AdmissionControl.TokenBucket bucket = new AdmissionControl.TokenBucket();
+        long second = 1_000_000_000L;
+
+        // Act & Assert
+        assert bucket.tryTake(0, second, 2 * second);
+        assert bucket.tryTake(0, second, 2 * second);
+        assert !bucket.tryTake(0, second, 2 * second);
+        bucket.giveBack(second);
+        assert bucket.tryTake(0, second, 2 * second);
+
+        // Tokens come back with time
+        assert bucket.tryTake(second, second, 2 * second);
+        assert !bucket.tryTake(second, second, 2 * second);
+    }
+
+    @Test
+    public void shouldShedBeyondMaxConcurrency() {
+        // Arrange
+        AdmissionControl admission = admission(1, 1_000, 1_000, 1_000);
+        Sinks.One<String> running = Sinks.one();
+
+        // Act: the first request holds the only slot until it completes
+        StepVerifier first = StepVerifier.create(admission.admit(List.of("a"), running.asMono(), Mono.just("shed")))
+            .expectNext("done")
+            .expectComplete()
+            .verifyLater();
+        StepVerifier.create(admission.admit(List.of("b"), Mono.just("done"), Mono.just("shed")))
+            .expectNext("shed")
+            .verifyComplete();
+        running.tryEmitValue("done");
+
+        // Assert
+        first.verify();
+        StepVerifier.create(admission.admit(List.of("b"), Mono.just("done"), Mono.just("shed")))
+            .expectNext("done")
+            .verifyComplete();
+        assert admission.shedConcurrencyCount() == 1;
+        assert admission.runningCount() == 0;
+    }
+
+    @Test
+    public void shouldAnswerShedRequestWithShedResultCode() {
+        // Arrange: one request of burst per login
+        ApiMetrics metrics = ApiMetrics.disabled();
+        ClientService clientService = Mockito.mock(ClientService.class);
+        when(clientService.createIfAbsent("123456", "pwd")).thenReturn(Mono.just(true));
+        OperationRegistry registry = new OperationRegistry(List.of(new CreateClientOperation(clientService, metrics)),
+            metrics);
+        ApiHandler handler = new ApiHandler(registry, clientService, 1000, admission(100, 1.0 / 60, 1, 1_000),
+            metrics);
+        CodecConfig codecs = new CodecConfig(false, metrics);
+        WebTestClient client = WebTestClient.bindToRouterFunction(new RouterConfig().apiRoutes(handler))
+            .handlerStrategies(HandlerStrategies.builder().codecs(codecs::configureHttpMessageCodecs).build())
+            .build();
+
+        // Act & Assert
+        post(client).xpath("/response/result-code").isEqualTo("0");
+        post(client).xpath("/response/result-code").isEqualTo("6");
+
+        verify(clientService, times(1)).createIfAbsent("123456", "pwd");
+    }
+
+    private static WebTestClient.BodyContentSpec post(WebTestClient client) {
+        return client.post()
+            .uri("/")
+            .contentType(MediaType.APPLICATION_XML)
+            .bodyValue("""
+                <?xml version="1.0" encoding="UTF-8"?>
+                <request>
+                        <request-type>CREATE-AGT</request-type>
+                        <extra name="login">123456</extra>
+                        <extra name="password">pwd</extra>
+                </request>""")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody();
+    }
+
+    private static AdmissionControl admission(int maxConcurrency, double loginRate, int loginBurst, int globalBurst) {
+        return new AdmissionControl(true, maxConcurrency, loginRate, loginBurst, 1.0 / 60, globalBurst,
+            Duration.ofMinutes(1), 1_000, 6);
+    }
+}
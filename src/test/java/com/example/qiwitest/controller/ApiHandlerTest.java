@@ -0,0 +1,534 @@
+package com.example.qiwitest.controller;
+
+import com.example.qiwitest.config.RouterConfig;
+import com.example.qiwitest.metrics.ApiMetrics;
+import com.example.qiwitest.model.Client;
+import com.example.qiwitest.model.Money;
+import com.example.qiwitest.operation.CreateClientOperation;
+import com.example.qiwitest.operation.DepositOperation;
+import com.example.qiwitest.operation.GetBalanceOperation;
+import com.example.qiwitest.operation.OperationRegistry;
+import com.example.qiwitest.operation.TransferOperation;
+import com.example.qiwitest.operation.WithdrawOperation;
+import com.example.qiwitest.service.BalanceUpdate;
+import com.example.qiwitest.service.ClientService;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@WebFluxTest
+@Import({ApiHandlerTest.TestConfig.class, RouterConfig.class, ApiHandler.class, OperationRegistry.class,
+    CreateClientOperation.class, GetBalanceOperation.class, DepositOperation.class, WithdrawOperation.class,
+    TransferOperation.class})
+public class ApiHandlerTest {
+
+    @Configuration
+    static class TestConfig {
+        @Bean
+        public ClientService clientService() {
+            return Mockito.mock(ClientService.class);
+        }
+
+        @Bean
+        public AdmissionControl admissionControl() {
+            return AdmissionControl.disabled();
+        }
+
+        @Bean
+        public SimpleMeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        public ApiMetrics apiMetrics(SimpleMeterRegistry meterRegistry) {
+            return new ApiMetrics(meterRegistry);
+        }
+    }
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private ClientService clientService;
+
+    @Autowired
+    private SimpleMeterRegistry meterRegistry;
+
+    private Client testClient;
+
+    @BeforeEach
+    public void setUp() {
+        testClient = new Client("123456", "pwd", Money.parse("0.0000"));
+    }
+
+    @Test
+    public void shouldCreateNewClientSuccess() {
+        // Arrange
+        when(clientService.createIfAbsent("123456", "pwd")).thenReturn(Mono.just(true));
+
+        // Act & Assert
+        webTestClient.post()
+                .uri("/")
+                .contentType(MediaType.APPLICATION_XML)
+                .bodyValue(createClientXml())
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_XML)
+                .expectBody()
+                .xpath("/response/result-code").isEqualTo("0");
+    }
+
+    @Test
+    public void shouldNotCreateNewClientWithExistingLogin() {
+        // Arrange
+        when(clientService.createIfAbsent("123456", "pwd")).thenReturn(Mono.just(false));
+
+        // Act & Assert
+        webTestClient.post()
+                .uri("/")
+                .contentType(MediaType.APPLICATION_XML)
+                .bodyValue(createClientXml())
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_XML)
+                .expectBody()
+                .xpath("/response/result-code").isEqualTo("1");
+    }
+
+    @Test
+    public void shouldReturnTechnicalErrorWhenCreateFails() {
+        // Arrange
+        when(clientService.createIfAbsent("123456", "pwd")).thenReturn(Mono.error(new IllegalStateException("db down")));
+
+        // Act & Assert
+        webTestClient.post()
+                .uri("/")
+                .contentType(MediaType.APPLICATION_XML)
+                .bodyValue(createClientXml())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .xpath("/response/result-code").isEqualTo("2");
+    }
+
+    @Test
+    public void shouldAnswerUnsupportedMediaTypeWithAcceptedTypes() {
+        for (String uri : new String[] {"/", "/batch"}) {
+            webTestClient.post()
+                    .uri(uri)
+                    .contentType(MediaType.TEXT_PLAIN)
+                    .bodyValue(createClientXml())
+                    .exchange()
+                    .expectStatus().isEqualTo(HttpStatus.UNSUPPORTED_MEDIA_TYPE)
+                    .expectHeader().valueEquals(HttpHeaders.ACCEPT,
+                        "application/xml, application/json, application/cbor");
+        }
+    }
+
+    @Test
+    public void shouldAnswerNotAcceptableForUnsupportedAccept() {
+        // Arrange
+        clearInvocations(clientService);
+
+        // Act & Assert: the operation is not run
+        for (String uri : new String[] {"/", "/batch"}) {
+            webTestClient.post()
+                    .uri(uri)
+                    .contentType(MediaType.APPLICATION_XML)
+                    .accept(MediaType.TEXT_HTML)
+                    .bodyValue(createClientXml())
+                    .exchange()
+                    .expectStatus().isEqualTo(HttpStatus.NOT_ACCEPTABLE);
+        }
+        verify(clientService, never()).createIfAbsent(any(), any());
+    }
+
+    @Test
+    public void shouldReturnBalanceForExistingClient() {
+        // Arrange
+        when(clientService.findByLogin("123456")).thenReturn(Mono.just(testClient));
+        when(clientService.isPasswordCorrect(any(Mono.class), any(String.class))).thenReturn(Mono.just(true));
+        when(clientService.getBalance(any(Mono.class))).thenReturn(Mono.just(Money.parse("0.0000")));
+
+        // Act & Assert
+        webTestClient.post()
+                .uri("/")
+                .contentType(MediaType.APPLICATION_XML)
+                .bodyValue(getBalanceXml())
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_XML)
+                .expectBody()
+                .xpath("/response/result-code").isEqualTo("0")
+                .xpath("/response/extra/extra[@name='balance']").isEqualTo("0.0000");
+    }
+
+    @Test
+    public void shouldReturnErrorForNoClient() {
+        // Arrange
+        when(clientService.findByLogin("123456")).thenReturn(Mono.empty());
+
+        // Act & Assert
+        webTestClient.post()
+                .uri("/")
+                .contentType(MediaType.APPLICATION_XML)
+                .bodyValue(getBalanceXml())
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_XML)
+                .expectBody()
+                .xpath("/response/result-code").isEqualTo("3");
+    }
+
+    @Test
+    public void shouldRecordRequestByTypeAndResultCode() {
+        // Arrange
+        when(clientService.findByLogin("123456")).thenReturn(Mono.empty());
+        Timer timer = meterRegistry.get("qiwitest.requests")
+                .tags("type", "GET-BALANCE", "result", "3")
+                .timer();
+        long before = timer.count();
+
+        // Act
+        webTestClient.post()
+                .uri("/")
+                .contentType(MediaType.APPLICATION_XML)
+                .bodyValue(getBalanceXml())
+                .exchange()
+                .expectStatus().isOk();
+
+        // Assert
+        assert timer.count() == before + 1;
+        assert meterRegistry.get("qiwitest.service").tag("method", "findByLogin").timer().count() > 0;
+    }
+
+    @Test
+    public void shouldReturnErrorForWrongPassword() {
+        // Arrange
+        when(clientService.findByLogin("123456")).thenReturn(Mono.just(testClient));
+        when(clientService.isPasswordCorrect(any(Mono.class), any(String.class))).thenReturn(Mono.just(false));
+
+        // Act & Assert
+        webTestClient.post()
+                .uri("/")
+                .contentType(MediaType.APPLICATION_XML)
+                .bodyValue(getBalanceXml())
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_XML)
+                .expectBody()
+                .xpath("/response/result-code").isEqualTo("4");
+    }
+
+    @Test
+    public void shouldReturnErrorForUnknownType() {
+        // Act & Assert
+        webTestClient.post()
+                .uri("/")
+                .contentType(MediaType.APPLICATION_XML)
+                .bodyValue(unknownRequestXml())
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void shouldReturnErrorForMissingParameter() {
+        // Act & Assert
+        webTestClient.post()
+                .uri("/")
+                .contentType(MediaType.APPLICATION_XML)
+                .bodyValue(missingParamXml())
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void shouldProcessBatchInOrder() {
+        // Arrange
+        Client other = new Client("654321", "secret", Money.parse("10.5000"));
+        when(clientService.findByLogins(any())).thenReturn(Mono.just(Map.of("123456", testClient, "654321", other)));
+        when(clientService.isPasswordCorrect(any(Mono.class), any(String.class))).thenReturn(Mono.just(true));
+        when(clientService.getBalance(any(Mono.class))).thenReturn(Mono.just(Money.parse("0.0000")));
+        when(clientService.createIfAbsent("777777", "pwd")).thenReturn(Mono.just(true));
+
+        // Act & Assert
+        webTestClient.post()
+                .uri("/batch")
+                .contentType(MediaType.APPLICATION_XML)
+                .bodyValue(batchXml())
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_XML)
+                .expectBody()
+                .xpath("/responses/response").nodeCount(4)
+                .xpath("/responses/response[1]/result-code").isEqualTo("0")
+                .xpath("/responses/response[1]/extra/extra[@name='balance']").isEqualTo("0.0000")
+                .xpath("/responses/response[2]/result-code").isEqualTo("3")
+                .xpath("/responses/response[3]/result-code").isEqualTo("0")
+                .xpath("/responses/response[4]/result-code").isEqualTo("1");
+    }
+
+    @Test
+    public void shouldRejectBatchWithInvalidItem() {
+        // Act & Assert
+        webTestClient.post()
+                .uri("/batch")
+                .contentType(MediaType.APPLICATION_XML)
+                .bodyValue("""
+                        <requests>
+                                <request>
+                                        <request-type>GET-BALANCE</request-type>
+                                        <extra name="login">123456</extra>
+                                </request>
+                        </requests>""")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    private String batchXml() {
+        return """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <requests>
+                        <request>
+                                <request-type>GET-BALANCE</request-type>
+                                <extra name="login">123456</extra>
+                                <extra name="password">pwd</extra>
+                        </request>
+                        <request>
+                                <request-type>GET-BALANCE</request-type>
+                                <extra name="login">000000</extra>
+                                <extra name="password">pwd</extra>
+                        </request>
+                        <request>
+                                <request-type>CREATE-AGT</request-type>
+                                <extra name="login">777777</extra>
+                                <extra name="password">pwd</extra>
+                        </request>
+                        <request>
+                                <request-type>CREATE-AGT</request-type>
+                                <extra name="login">777777</extra>
+                                <extra name="password">pwd</extra>
+                        </request>
+                </requests>""";
+    }
+
+    @Test
+    public void shouldDepositForAuthenticatedClient() {
+        // Arrange
+        when(clientService.findByLogin("123456")).thenReturn(Mono.just(testClient));
+        when(clientService.isPasswordCorrect(any(), any())).thenReturn(Mono.just(true));
+        when(clientService.deposit("123456", Money.parse("10.5000"))).thenReturn(Mono.just(BalanceUpdate.APPLIED));
+
+        // Act & Assert
+        webTestClient.post()
+                .uri("/")
+                .contentType(MediaType.APPLICATION_XML)
+                .bodyValue(amountXml("DEPOSIT", "10.5"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .xpath("/response/result-code").isEqualTo("0");
+    }
+
+    @Test
+    public void shouldReturnInsufficientFundsForWithdraw() {
+        // Arrange
+        when(clientService.findByLogin("123456")).thenReturn(Mono.just(testClient));
+        when(clientService.isPasswordCorrect(any(), any())).thenReturn(Mono.just(true));
+        when(clientService.withdraw("123456", Money.parse("10.0000"))).thenReturn(Mono.just(BalanceUpdate.INSUFFICIENT_FUNDS));
+
+        // Act & Assert
+        webTestClient.post()
+                .uri("/")
+                .contentType(MediaType.APPLICATION_XML)
+                .bodyValue(amountXml("WITHDRAW", "10"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .xpath("/response/result-code").isEqualTo("5");
+    }
+
+    @Test
+    public void shouldRejectInvalidAmount() {
+        webTestClient.post()
+                .uri("/")
+                .contentType(MediaType.APPLICATION_XML)
+                .bodyValue(amountXml("DEPOSIT", "-1"))
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        webTestClient.post()
+                .uri("/")
+                .contentType(MediaType.APPLICATION_XML)
+                .bodyValue(amountXml("DEPOSIT", "0.00001"))
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void shouldRejectTransferToSelf() {
+        webTestClient.post()
+                .uri("/")
+                .contentType(MediaType.APPLICATION_XML)
+                .bodyValue("""
+                        <?xml version="1.0" encoding="UTF-8"?>
+                        <request>
+                                <request-type>TRANSFER</request-type>
+                                <extra name="login">123456</extra>
+                                <extra name="password">pwd</extra>
+                                <extra name="amount">1</extra>
+                                <extra name="recipient">123456</extra>
+                        </request>""")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void shouldAnswerJsonRequestInJson() {
+        // Arrange
+        when(clientService.findByLogin("123456")).thenReturn(Mono.just(testClient));
+        when(clientService.isPasswordCorrect(any(Mono.class), any(String.class))).thenReturn(Mono.just(true));
+        when(clientService.getBalance(any(Mono.class))).thenReturn(Mono.just(Money.parse("0.0000")));
+
+        // Act & Assert
+        webTestClient.post()
+                .uri("/")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"request-type\":\"GET-BALANCE\",\"extra\":{\"login\":\"123456\",\"password\":\"pwd\"}}")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$['result-code']").isEqualTo(0)
+                .jsonPath("$.extra.balance").isEqualTo("0.0000");
+    }
+
+    @Test
+    public void shouldAnswerInAcceptedFormat() {
+        // Arrange
+        when(clientService.createIfAbsent("123456", "pwd")).thenReturn(Mono.just(true));
+
+        // Act & Assert
+        webTestClient.post()
+                .uri("/")
+                .contentType(MediaType.APPLICATION_XML)
+                .accept(MediaType.valueOf("application/xml;q=0.5"), MediaType.APPLICATION_JSON)
+                .bodyValue(createClientXml())
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$['result-code']").isEqualTo(0);
+    }
+
+    @Test
+    public void shouldKeepXmlForWildcardAccept() {
+        // Arrange
+        when(clientService.createIfAbsent("123456", "pwd")).thenReturn(Mono.just(true));
+
+        // Act & Assert
+        webTestClient.post()
+                .uri("/")
+                .contentType(MediaType.APPLICATION_XML)
+                .accept(MediaType.ALL)
+                .bodyValue(createClientXml())
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_XML)
+                .expectBody()
+                .xpath("/response/result-code").isEqualTo("0");
+    }
+
+    @Test
+    public void shouldProcessJsonBatch() {
+        // Arrange
+        when(clientService.findByLogins(any())).thenReturn(Mono.just(Map.of()));
+        when(clientService.createIfAbsent("1", "a")).thenReturn(Mono.just(true));
+        when(clientService.createIfAbsent("2", "b")).thenReturn(Mono.just(false));
+
+        // Act & Assert
+        webTestClient.post()
+                .uri("/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("""
+                        {"requests": [
+                          {"request-type": "CREATE-AGT", "extra": {"login": "1", "password": "a"}},
+                          {"request-type": "CREATE-AGT", "extra": {"login": "2", "password": "b"}}]}""")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.responses[0]['result-code']").isEqualTo(0)
+                .jsonPath("$.responses[1]['result-code']").isEqualTo(1);
+    }
+
+    private String createClientXml() {
+        return """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <request>
+                        <request-type>CREATE-AGT</request-type>
+                        <extra name="login">123456</extra>
+                        <extra name="password">pwd</extra>
+                </request>""";
+    }
+
+    private String amountXml(String type, String amount) {
+        return """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <request>
+                        <request-type>%s</request-type>
+                        <extra name="login">123456</extra>
+                        <extra name="password">pwd</extra>
+                        <extra name="amount">%s</extra>
+                </request>""".formatted(type, amount);
+    }
+
+    private String getBalanceXml() {
+        return """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <request>
+                        <request-type>GET-BALANCE</request-type>
+                        <extra name="login">123456</extra>
+                        <extra name="password">pwd</extra>
+                </request>""";
+    }
+
+    private String unknownRequestXml() {
+        return """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <request>
+                        <request-type>UNKNOWN</request-type>
+                        <extra name="login">123456</extra>
+                        <extra name="password">pwd</extra>
+                </request>""";
+    }
+
+    private String missingParamXml() {
+        return """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <request>
+                        <extra name="login">123456</extra>
+                        <extra name="password">pwd</extra>
+                </request>""";
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.qiwitest.integration;
+
+import com.example.qiwitest.model.Money;
+import com.example.qiwitest.repository.ClientRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.test.StepVerifier;
+
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Integration tests for the bulk import, which needs PostgreSQL for COPY.
+ * Chunks are kept small so one request is loaded in several.
+ */
+@AutoConfigureWebTestClient
+@TestPropertySource(properties = {"qiwitest.import.enabled=true", "qiwitest.import.chunk-size=100"})
+public class ClientImportIntegrationTest extends AbstractIntegrationTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private ClientRepository clientRepository;
+
+    @Test
+    public void shouldImportRowsAndReportConflicts() {
+        // Arrange: an existing client, 250 new ones, a repeated login and an invalid row
+        webTestClient.post()
+                .uri("/import")
+                .contentType(MediaType.parseMediaType("text/csv"))
+                .bodyValue("import-existing,pwd\n")
+                .exchange()
+                .expectStatus().isOk();
+        String csv = "login,password,balance\r\n"
+                + IntStream.range(0, 250)
+                    .mapToObj(i -> "import-" + i + ",pwd-" + i + "," + i + ".5")
+                    .collect(Collectors.joining("\r\n"))
+                + "\r\nimport-existing,other,1\r\nimport-7,again,1\r\nimport-bad,pwd,-1\r\n";
+
+        // Act & Assert
+        webTestClient.post()
+                .uri("/import")
+                .contentType(MediaType.parseMediaType("text/csv"))
+                .bodyValue(csv)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.rows").isEqualTo(253)
+                .jsonPath("$.imported").isEqualTo(250)
+                .jsonPath("$.conflicts").isEqualTo(2)
+                .jsonPath("$.invalid").isEqualTo(1)
+                .jsonPath("$.rejected[?(@.line == 252)].login").isEqualTo("import-existing")
+                .jsonPath("$.rejected[?(@.line == 253)].login").isEqualTo("import-7");
+
+        StepVerifier.create(clientRepository.findByLogin("import-7"))
+                .assertNext(client -> {
+                    assert client.getPassword().equals("pwd-7");
+                    assert client.getBalance().equals(Money.parse("7.5"));
+                })
+                .verifyComplete();
+        StepVerifier.create(clientRepository.findByLogin("import-existing"))
+                .assertNext(client -> {
+                    assert client.getPassword().equals("pwd");
+                })
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.qiwitest.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MoneyTest {
+
+    @Test
+    public void shouldParsePlainDecimals() {
+        assertEquals(0, Money.parse("0").units());
+        assertEquals(105_000, Money.parse("10.5").units());
+        assertEquals(105_000, Money.parse("+10.50000").units());
+        assertEquals(-1, Money.parse("-0.0001").units());
+        assertEquals(5_000, Money.parse(".5").units());
+        assertEquals(50_000, Money.parse("5.").units());
+        assertEquals(Long.MAX_VALUE, Money.parse("922337203685477.5807").units());
+    }
+
+    @Test
+    public void shouldParseWhatBigDecimalAccepts() {
+        assertEquals(1_000_000, Money.parse("1E+2").units());
+        assertEquals(12_345, Money.parse("12345e-4").units());
+        assertEquals(Money.of(new BigDecimal("123.45")), Money.parse("123.45"));
+    }
+
+    @Test
+    public void shouldRejectInvalidAmounts() {
+        assertThrows(NumberFormatException.class, () -> Money.parse(""));
+        assertThrows(NumberFormatException.class, () -> Money.parse("-"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("."));
+        assertThrows(NumberFormatException.class, () -> Money.parse("1.2.3"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("ten"));
+        assertThrows(ArithmeticException.class, () -> Money.parse("0.00001"));
+        assertThrows(ArithmeticException.class, () -> Money.parse("1e-5"));
+        assertThrows(ArithmeticException.class, () -> Money.parse("922337203685477.5808"));
+        assertThrows(ArithmeticException.class, () -> Money.parse("1e20"));
+        assertThrows(ArithmeticException.class, () -> Money.parse("1E999999999"));
+        assertThrows(ArithmeticException.class, () -> Money.parse("-1E+2147483647"));
+        assertThrows(ArithmeticException.class, () -> Money.parse("1E-999999999"));
+        assertThrows(ArithmeticException.class, () -> Money.of(new BigDecimal("1E999999999")));
+    }
+
+    @Test
+    public void shouldFormatWithFourDecimalsLikeBigDecimal() {
+        for (String text : new String[] {"0", "0.0001", "1", "10.5", "-10.5", "-0.0001", "999999999.9999",
+                "922337203685477.5807", "-922337203685477.5808"}) {
+            BigDecimal expected = new BigDecimal(text).setScale(Money.SCALE);
+            Money amount = Money.of(expected);
+
+            assertEquals(expected.toString(), amount.toString());
+            assertEquals(expected.toString().length(), amount.formattedLength());
+        }
+    }
+
+    @Test
+    public void shouldFormatIntoArrayAtOffset() {
+        // Arrange
+        byte[] target = new byte[Money.MAX_LENGTH + 2];
+        target[0] = '[';
+
+        // Act
+        int end = Money.ofUnits(Long.MIN_VALUE).formatTo(target, 1);
+        target[end] = ']';
+
+        // Assert
+        assertEquals("[-922337203685477.5808]", new String(target, 0, end + 1, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void shouldCheckArithmeticForOverflow() {
+        Money max = Money.ofUnits(Long.MAX_VALUE);
+
+        assertEquals(Money.parse("15.5"), Money.parse("10.5").plus(Money.parse("5")));
+        assertEquals(Money.parse("-0.5"), Money.parse("1").minus(Money.parse("1.5")));
+        assertEquals(Money.ZERO, Money.parse("0.0000").negate());
+        assertThrows(ArithmeticException.class, () -> max.plus(Money.ofUnits(1)));
+        assertThrows(ArithmeticException.class, () -> max.negate().minus(Money.ofUnits(2)));
+        assertThrows(ArithmeticException.class, () -> Money.ofUnits(Long.MIN_VALUE).negate());
+    }
+}
@@ -1,16 +1,25 @@
 package com.example.qiwitest.repository;
 
+import com.example.qiwitest.config.MoneyConfig;
+import com.example.qiwitest.metrics.ApiMetrics;
 import com.example.qiwitest.model.Client;
+import com.example.qiwitest.model.Money;
+import com.example.qiwitest.service.LookupBatcher;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
-import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.IntStream;
 
 @DataR2dbcTest
+@Import(MoneyConfig.class)
 @ActiveProfiles("test")
 public class ClientRepositoryTest {
 
@@ -20,7 +29,7 @@ public class ClientRepositoryTest {
     @Test
     public void shouldCreateAndFindClient() {
         // Create a client
-        Client client = new Client("max", "pwd", BigDecimal.ZERO);
+        Client client = new Client("max", "pwd", Money.ZERO);
 
         // Save the client and then find it by login
         StepVerifier.create(clientRepository.save(client)
@@ -29,11 +38,96 @@ public class ClientRepositoryTest {
                 // Verify the client was found and has the correct properties
                 assert found.getLogin().equals("max");
                 assert found.getPassword().equals("pwd");
-                assert found.getBalance().compareTo(BigDecimal.ZERO) == 0;
+                assert found.getBalance().equals(Money.ZERO);
             })
             .verifyComplete();
     }
 
+    @Test
+    public void shouldInsertOnlyIfAbsent() {
+        // Insert the same login twice; the second insert must be a no-op
+        StepVerifier.create(clientRepository.insertIfAbsent("insert-once", "pwd")
+                .concatWith(clientRepository.insertIfAbsent("insert-once", "other")))
+            .expectNext(1)
+            .expectNext(0)
+            .verifyComplete();
+
+        StepVerifier.create(clientRepository.findByLogin("insert-once"))
+            .assertNext(found -> {
+                assert found.getPassword().equals("pwd");
+                assert found.getBalance().equals(Money.ZERO);
+            })
+            .verifyComplete();
+    }
+
+    @Test
+    public void shouldNotOverdrawOnConditionalUpdate() {
+        // Deposit, then try to withdraw more than the balance
+        StepVerifier.create(clientRepository.insertIfAbsent("hot", "pwd")
+                .thenMany(clientRepository.addToBalance("hot", Money.parse("10.0000").units())
+                    .concatWith(clientRepository.addToBalance("hot", Money.parse("-10.0001").units()))
+                    .concatWith(clientRepository.addToBalance("hot", Money.parse("-10.0000").units()))))
+            .expectNext(1)
+            .expectNext(0)
+            .expectNext(1)
+            .verifyComplete();
+
+        StepVerifier.create(clientRepository.findByLogin("hot"))
+            .assertNext(found -> {
+                assert found.getBalance().equals(Money.ZERO);
+            })
+            .verifyComplete();
+    }
+
+    @Test
+    public void shouldFindClientsByLoginArray() {
+        // Insert two clients, then look up both and an unknown login with one array parameter
+        StepVerifier.create(clientRepository.insertIfAbsent("any-1", "pwd")
+                .then(clientRepository.insertIfAbsent("any-2", "pwd"))
+                .thenMany(clientRepository.findByLoginAny(new String[] {"any-1", "any-2", "any-unknown"}))
+                .map(Client::getLogin)
+                .sort())
+            .expectNext("any-1", "any-2")
+            .verifyComplete();
+    }
+
+    @Test
+    public void shouldAnswerBatchedLookupsOnThisDriver() {
+        // Lookups sent through the batcher, which binds their logins as one String[] parameter
+        // (the store opens no transaction for lookups, so it needs no transactional operator)
+        LookupBatcher batcher = new LookupBatcher(new R2dbcClientStore(clientRepository, null),
+            ReplicaRouter.disabled(), ShardRouter.disabled(), ApiMetrics.disabled(), true, 100, Duration.ofMillis(50),
+            1);
+        List<String> logins = IntStream.range(0, 20).mapToObj(i -> "batched-" + i).toList();
+        StepVerifier.create(Flux.fromIterable(logins).concatMap(login -> clientRepository.insertIfAbsent(login, "pwd")))
+            .expectNextCount(logins.size())
+            .verifyComplete();
+
+        // Every known login is found and the unknown one is not
+        StepVerifier.create(Flux.fromIterable(logins)
+                .concatWithValues("batched-unknown")
+                .flatMap(batcher::find)
+                .map(Client::getLogin)
+                .sort())
+            .expectNextSequence(logins.stream().sorted().toList())
+            .expectComplete()
+            .verify(Duration.ofSeconds(5));
+        assert batcher.lookupCount() == logins.size() + 1;
+    }
+
+    @Test
+    public void shouldPageClientsById() {
+        // Insert three clients, then read them two at a time after the first ID
+        StepVerifier.create(clientRepository.insertIfAbsent("page-1", "pwd")
+                .then(clientRepository.insertIfAbsent("page-2", "pwd"))
+                .then(clientRepository.insertIfAbsent("page-3", "pwd"))
+                .then(clientRepository.findByLogin("page-1"))
+                .flatMapMany(first -> clientRepository.findPageAfter(first.getId(), 2))
+                .map(Client::getLogin))
+            .expectNext("page-2", "page-3")
+            .verifyComplete();
+    }
+
     @Test
     public void shouldNotFindClientInEmptyTable() {
         // Try to find a client that doesn't exist
@@ -0,0 +1,139 @@
+package com.example.qiwitest.repository;
+
+import com.example.qiwitest.model.Client;
+import com.example.qiwitest.model.Money;
+import org.h2.Driver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+/**
+ * Runs the JDBC client store against an in-memory H2 database, with the same expectations as
+ * {@link ClientRepositoryTest} has of the R2DBC repository.
+ */
+public class JdbcClientStoreTest {
+
+    private JdbcClientStore store;
+
+    @BeforeEach
+    public void setUp() {
+        SimpleDriverDataSource dataSource = new SimpleDriverDataSource(new Driver(),
+            "jdbc:h2:mem:jdbc-store-test;DB_CLOSE_DELAY=-1;MODE=PostgreSQL", "sa", "");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("CREATE TABLE IF NOT EXISTS clients (id BIGSERIAL PRIMARY KEY, "
+            + "login VARCHAR(255) UNIQUE, password VARCHAR(255) NOT NULL, balance BIGINT DEFAULT 0)");
+        jdbc.execute("DELETE FROM clients");
+        store = new JdbcClientStore(dataSource);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        store.close();
+    }
+
+    @Test
+    public void shouldCreateAndFindClient() {
+        // Arrange
+        Client client = new Client("max", "pwd", Money.ZERO);
+
+        // Act & Assert
+        StepVerifier.create(store.save(client).then(store.findByLogin("max")))
+            .assertNext(found -> {
+                assert found.getId() != null;
+                assert found.getId().equals(client.getId());
+                assert found.getPassword().equals("pwd");
+                assert found.getBalance().equals(Money.ZERO);
+            })
+            .verifyComplete();
+        StepVerifier.create(store.findByLogin("nobody")).verifyComplete();
+    }
+
+    @Test
+    public void shouldInsertOnlyIfAbsent() {
+        // Act & Assert: the second insert of the same login is a no-op
+        StepVerifier.create(store.insertIfAbsent("insert-once", "pwd")
+                .concatWith(store.insertIfAbsent("insert-once", "other")))
+            .expectNext(1)
+            .expectNext(0)
+            .verifyComplete();
+        StepVerifier.create(store.findByLogin("insert-once").map(Client::getPassword))
+            .expectNext("pwd")
+            .verifyComplete();
+    }
+
+    @Test
+    public void shouldFindClientsByManyLogins() {
+        // Arrange
+        StepVerifier.create(store.insertIfAbsent("many-1", "pwd").then(store.insertIfAbsent("many-2", "pwd")))
+            .expectNext(1)
+            .verifyComplete();
+
+        // Act & Assert
+        StepVerifier.create(store.findByLoginIn(List.of("many-1", "many-2", "many-unknown"))
+                .map(Client::getLogin)
+                .sort())
+            .expectNext("many-1", "many-2")
+            .verifyComplete();
+        StepVerifier.create(store.findByLoginAny(new String[] {"many-1", "many-2", "many-unknown"})
+                .map(Client::getLogin)
+                .sort())
+            .expectNext("many-1", "many-2")
+            .verifyComplete();
+    }
+
+    @Test
+    public void shouldNotOverdrawOnConditionalUpdate() {
+        // Act & Assert
+        StepVerifier.create(store.insertIfAbsent("hot", "pwd")
+                .thenMany(store.addToBalance("hot", Money.parse("10.0000"))
+                    .concatWith(store.addToBalance("hot", Money.parse("-10.0001")))
+                    .concatWith(store.addToBalance("hot", Money.parse("-10.0000")))))
+            .expectNext(1)
+            .expectNext(0)
+            .expectNext(1)
+            .verifyComplete();
+        StepVerifier.create(store.updatePassword("hot", "wrong", "new")
+                .concatWith(store.updatePassword("hot", "pwd", "new")))
+            .expectNext(0)
+            .expectNext(1)
+            .verifyComplete();
+    }
+
+    @Test
+    public void shouldCommitOrRollBackTransaction() {
+        // Arrange
+        StepVerifier.create(store.insertIfAbsent("tx", "pwd")).expectNext(1).verifyComplete();
+
+        // Act: one transaction commits, the next fails after its update
+        StepVerifier.create(store.inTransaction(tx -> tx.addToBalance("tx", Money.parse("10"))))
+            .expectNext(1)
+            .verifyComplete();
+        StepVerifier.create(store.inTransaction(tx -> tx.addToBalance("tx", Money.parse("1"))
+                .then(Mono.error(new IllegalStateException("rolled back")))))
+            .expectError(IllegalStateException.class)
+            .verify();
+
+        // Assert
+        StepVerifier.create(store.findByLogin("tx").map(Client::getBalance))
+            .assertNext(balance -> {
+                assert balance.equals(Money.parse("10")) : balance;
+            })
+            .verifyComplete();
+    }
+
+    @Test
+    public void shouldRunStatementsOnVirtualThreads() {
+        // Act & Assert
+        StepVerifier.create(store.findByLogin("nobody").then(Mono.fromCallable(Thread::currentThread)))
+            .assertNext(thread -> {
+                assert thread.isVirtual() : thread;
+            })
+            .verifyComplete();
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.qiwitest.repository;
+
+import com.example.qiwitest.repository.ReplicaRouter.Replica;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Routes between two in-memory H2 databases: the "replica" holds an older balance than the primary,
+ * so every read shows where it was served from.
+ */
+public class ReplicaRouterTest {
+
+    private final ConnectionFactory primary = h2("replica-test-primary");
+    private final ConnectionFactory replica = h2("replica-test-replica");
+
+    private ReplicaRouter router;
+
+    @BeforeEach
+    public void setUp() {
+        setUpClient(primary, "20.0000");
+        setUpClient(replica, "10.0000");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (router != null) {
+            router.close();
+        }
+    }
+
+    @Test
+    public void shouldReadFromReplicaUnlessLoginIsPinned() {
+        // Arrange
+        router = router(replica, null);
+        DatabaseClient client = DatabaseClient.create(new ReplicaRoutingConnectionFactory(primary, router));
+
+        // Act & Assert: plain queries use the primary, reads the replica
+        StepVerifier.create(balance(client)).expectNext(new BigDecimal("20.0000")).verifyComplete();
+        StepVerifier.create(router.read("max", balance(client))).expectNext(new BigDecimal("10.0000")).verifyComplete();
+
+        // A login written by this instance is read from the primary
+        router.pin("max");
+        StepVerifier.create(router.read("max", balance(client))).expectNext(new BigDecimal("20.0000")).verifyComplete();
+        StepVerifier.create(router.read(List.of("other", "max"), balance(client)))
+            .expectNext(new BigDecimal("20.0000"))
+            .verifyComplete();
+
+        assert router.replicaReads() == 1;
+        assert router.pinnedReads() == 2;
+    }
+
+    @Test
+    public void shouldFailOverToPrimaryWhenReplicaIsDown() {
+        // Arrange
+        router = router(new UnavailableConnectionFactory(replica), null);
+        DatabaseClient client = DatabaseClient.create(new ReplicaRoutingConnectionFactory(primary, router));
+
+        // Act & Assert: the failed read is retried on the primary and the replica leaves the rotation
+        StepVerifier.create(router.read("max", balance(client))).expectNext(new BigDecimal("20.0000")).verifyComplete();
+        assert router.failovers() == 1;
+        assert !router.replicas().get(0).isHealthy();
+
+        StepVerifier.create(router.read("max", balance(client))).expectNext(new BigDecimal("20.0000")).verifyComplete();
+        assert router.unavailableReads() == 1;
+        assert router.failovers() == 1;
+
+        // It stays out after a failed health check
+        StepVerifier.create(router.checkHealth()).verifyComplete();
+        assert !router.replicas().get(0).isHealthy();
+    }
+
+    @Test
+    public void shouldTakeLaggingReplicaOutOfRotation() {
+        // Arrange: the lag query reports 5 seconds against a tolerated staleness of 1 second
+        router = router(replica, "SELECT 5");
+
+        // Act & Assert
+        StepVerifier.create(router.checkHealth()).verifyComplete();
+        assert !router.replicas().get(0).isHealthy();
+
+        ReplicaRouter upToDate = router(replica, "SELECT 0");
+        upToDate.markDown(upToDate.replicas().get(0), null);
+        StepVerifier.create(upToDate.checkHealth()).verifyComplete();
+        assert upToDate.replicas().get(0).isHealthy();
+        upToDate.close();
+    }
+
+    @Test
+    public void shouldBringReplicaBackWithoutPeriodicChecks() {
+        // Arrange: periodic health checks are off
+        router = router(replica, "SELECT 0");
+        Replica down = router.replicas().get(0);
+
+        // Act
+        router.markDown(down, new IllegalStateException("query failed"));
+
+        // Assert: the replica is checked again on its own and returns to rotation
+        assert !down.isHealthy();
+        StepVerifier.create(Flux.interval(Duration.ofMillis(100)).filter(tick -> down.isHealthy()).next())
+            .expectNextCount(1)
+            .expectComplete()
+            .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void shouldPassQueriesThroughWhenDisabled() {
+        ReplicaRouter disabled = ReplicaRouter.disabled();
+        DatabaseClient client = DatabaseClient.create(primary);
+
+        StepVerifier.create(disabled.read("max", balance(client))).expectNext(new BigDecimal("20.0000")).verifyComplete();
+
+        assert !disabled.isEnabled();
+        assert disabled.replicaReads() == 0;
+    }
+
+    private static ReplicaRouter router(ConnectionFactory replica, String lagQuery) {
+        // Health checks are triggered by the tests
+        return new ReplicaRouter(List.of(new Replica("replica-0", replica)), Duration.ofMinutes(1), 100,
+            Duration.ZERO, Duration.ofSeconds(5), Duration.ofSeconds(1), lagQuery);
+    }
+
+    private static Mono<BigDecimal> balance(DatabaseClient client) {
+        return client.sql("SELECT balance FROM clients WHERE login = 'max'")
+            .map(row -> row.get("balance", BigDecimal.class))
+            .one();
+    }
+
+    private static ConnectionFactory h2(String database) {
+        return ConnectionFactories.get("r2dbc:h2:mem:///" + database + ";DB_CLOSE_DELAY=-1;MODE=PostgreSQL");
+    }
+
+    private static void setUpClient(ConnectionFactory connectionFactory, String balance) {
+        DatabaseClient client = DatabaseClient.create(connectionFactory);
+        StepVerifier.create(client.sql("CREATE TABLE IF NOT EXISTS clients (id BIGSERIAL PRIMARY KEY, "
+                    + "login VARCHAR(255) NOT NULL UNIQUE, password VARCHAR(255), balance DECIMAL(19, 4))")
+                .then()
+                .then(client.sql("DELETE FROM clients").then())
+                .then(client.sql("INSERT INTO clients (login, password, balance) VALUES ('max', 'pwd', " + balance + ")")
+                    .then()))
+            .verifyComplete();
+    }
+
+    /**
+     * A replica that refuses every connection
+     */
+    private record UnavailableConnectionFactory(ConnectionFactory delegate) implements ConnectionFactory {
+
+        @Override
+        public Publisher<? extends Connection> create() {
+            return Mono.error(new IllegalStateException("replica is down"));
+        }
+
+        @Override
+        public ConnectionFactoryMetadata getMetadata() {
+            return delegate.getMetadata();
+        }
+    }
+}
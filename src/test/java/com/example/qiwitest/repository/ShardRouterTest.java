@@ -0,0 +1,217 @@
+package com.example.qiwitest.repository;
+
+import com.example.qiwitest.model.Money;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Shards clients over three in-memory H2 databases and grows a two-shard layout to three.
+ */
+public class ShardRouterTest {
+
+    private static final List<String> DATABASES = List.of("shard-0", "shard-1", "shard-2");
+
+    private final Map<String, ConnectionFactory> shards = new LinkedHashMap<>();
+    private DatabaseClient client;
+
+    @BeforeEach
+    public void setUp() {
+        for (String database : DATABASES) {
+            ConnectionFactory shard = ConnectionFactories.get(
+                "r2dbc:h2:mem:///shard-test-" + database + ";DB_CLOSE_DELAY=-1;MODE=PostgreSQL");
+            DatabaseClient shardClient = DatabaseClient.create(shard);
+            StepVerifier.create(shardClient.sql("CREATE TABLE IF NOT EXISTS clients (id BIGSERIAL PRIMARY KEY, "
+                        + "login VARCHAR(255) NOT NULL UNIQUE, password VARCHAR(255), balance BIGINT)")
+                    .then()
+                    .then(shardClient.sql("DELETE FROM clients").then()))
+                .verifyComplete();
+            shards.put(database, shard);
+        }
+        client = DatabaseClient.create(new ShardRoutingConnectionFactory(shards));
+    }
+
+    @Test
+    public void shouldMoveFewClientsWhenAddingShard() {
+        // Arrange
+        List<String> logins = IntStream.range(0, 10_000).mapToObj(i -> "client" + i).toList();
+
+        // Act
+        List<String> moved = logins.stream()
+            .filter(login -> ShardRouter.shardOf(login, 2) != ShardRouter.shardOf(login, 3))
+            .toList();
+
+        // Assert: about a third moves, and only to the new shard
+        assert moved.size() > 3_000 && moved.size() < 3_700 : moved.size();
+        assert moved.stream().allMatch(login -> ShardRouter.shardOf(login, 3) == 2);
+    }
+
+    @Test
+    public void shouldStoreEachClientOnItsShard() {
+        // Arrange
+        ShardRouter router = new ShardRouter(DATABASES, 3, 0);
+        List<String> logins = IntStream.range(0, 30).mapToObj(i -> "client" + i).toList();
+
+        // Act
+        StepVerifier.create(Flux.fromIterable(logins)
+                .concatMap(login -> router.insertIfAbsent(login, exists(login), insert(login, "10.0000"))))
+            .expectNextCount(logins.size())
+            .verifyComplete();
+
+        // Assert: each row sits on exactly the database its login hashes to, and is read back from there
+        for (String login : logins) {
+            for (String database : DATABASES) {
+                long expected = database.equals(router.databaseOf(login)) ? 1 : 0;
+                StepVerifier.create(router.onDatabase(database, count(login))).expectNext(expected).verifyComplete();
+            }
+            StepVerifier.create(router.read(login, balance(login)))
+                .expectNext(Money.parse("10.0000"))
+                .verifyComplete();
+        }
+        StepVerifier.create(router.readMany(logins, this::balances)).expectNextCount(logins.size()).verifyComplete();
+    }
+
+    @Test
+    public void shouldServeAndMigrateClientsWhileResharding() {
+        // Arrange: clients created with two shards
+        ShardRouter before = new ShardRouter(DATABASES, 2, 0);
+        List<String> logins = IntStream.range(0, 50).mapToObj(i -> "client" + i).toList();
+        List<String> moved = logins.stream().filter(login -> ShardRouter.shardOf(login, 3) == 2).toList();
+        String moving = moved.get(0);
+        StepVerifier.create(Flux.fromIterable(logins)
+                .concatMap(login -> before.onShardOf(login, insert(login, "5.0000"))))
+            .expectNextCount(logins.size())
+            .verifyComplete();
+
+        ShardRouter during = new ShardRouter(DATABASES, 3, 2);
+        assert during.isMigrating();
+        assert !during.sameShard("client1", "client1");
+
+        // Act & Assert: before migration a moving client is read and updated on its previous shard,
+        // and cannot be created again on its new one
+        StepVerifier.create(during.update(moving, exists(moving), addToBalance(moving, "1.0000")))
+            .expectNext(1)
+            .verifyComplete();
+        StepVerifier.create(during.read(moving, balance(moving)))
+            .expectNext(Money.parse("6.0000"))
+            .verifyComplete();
+        StepVerifier.create(during.insertIfAbsent(moving, exists(moving), insert(moving, "0")))
+            .expectNext(0)
+            .verifyComplete();
+
+        StepVerifier.create(new ShardMigrator(client, during, 7).migrate())
+            .assertNext(report -> {
+                assert report.scanned() == logins.size();
+                assert report.moved() == moved.size();
+                assert report.retried() == 0;
+                assert report.passes() == 1;
+            })
+            .verifyComplete();
+
+        // Every client is now on its new shard, with its balance
+        ShardRouter after = new ShardRouter(DATABASES, 3, 0);
+        for (String login : logins) {
+            String expected = login.equals(moving) ? "6.0000" : "5.0000";
+            StepVerifier.create(after.onDatabase(after.databaseOf(login), balance(login)))
+                .expectNext(Money.parse(expected))
+                .verifyComplete();
+        }
+        StepVerifier.create(after.fanOut(() -> client.sql("SELECT COUNT(*) AS n FROM clients")
+                    .map(row -> row.get("n", Long.class))
+                    .all())
+                .reduce(0L, Long::sum))
+            .expectNext((long) logins.size())
+            .verifyComplete();
+    }
+
+    @Test
+    public void shouldRefuseWithdrawalOnPreviousShardWhileResharding() {
+        // Arrange: a moving client copied to its new shard with 10.0000, then left with 5.0000 on its previous
+        // shard, which is still authoritative until the next migration pass
+        ShardRouter during = new ShardRouter(DATABASES, 3, 2);
+        String moving = IntStream.range(0, 50).mapToObj(i -> "client" + i)
+            .filter(login -> ShardRouter.shardOf(login, 3) == 2)
+            .findFirst()
+            .orElseThrow();
+        String previous = DATABASES.get(ShardRouter.shardOf(moving, 2));
+        StepVerifier.create(during.onDatabase(previous, insert(moving, "5.0000"))).expectNext(1).verifyComplete();
+        StepVerifier.create(during.onShardOf(moving, insert(moving, "10.0000"))).expectNext(1).verifyComplete();
+
+        // Act: withdraw more than the balance
+        StepVerifier.create(during.update(moving, exists(moving), addToBalance(moving, "-8.0000")))
+            .expectNext(0)
+            .verifyComplete();
+
+        // Assert: the withdrawal was not applied to the copy on the new shard either
+        StepVerifier.create(during.onShardOf(moving, balance(moving)))
+            .expectNext(Money.parse("10.0000"))
+            .verifyComplete();
+        StepVerifier.create(during.onDatabase(previous, balance(moving)))
+            .expectNext(Money.parse("5.0000"))
+            .verifyComplete();
+    }
+
+    @Test
+    public void shouldPassQueriesThroughWhenDisabled() {
+        ShardRouter disabled = ShardRouter.disabled();
+
+        StepVerifier.create(disabled.insertIfAbsent("max", exists("max"), insert("max", "1.0000")))
+            .expectNext(1)
+            .verifyComplete();
+        StepVerifier.create(disabled.read("max", balance("max"))).expectNext(Money.parse("1.0000")).verifyComplete();
+
+        assert !disabled.isEnabled();
+        assert disabled.sameShard("max", "other");
+    }
+
+    private Mono<Boolean> exists(String login) {
+        return count(login).map(rows -> rows > 0);
+    }
+
+    private Mono<Long> count(String login) {
+        return client.sql("SELECT COUNT(*) AS n FROM clients WHERE login = :login")
+            .bind("login", login)
+            .map(row -> row.get("n", Long.class))
+            .one();
+    }
+
+    private Mono<Integer> insert(String login, String balance) {
+        return client.sql("INSERT INTO clients (login, password, balance) VALUES (:login, 'pwd', :balance)")
+            .bind("login", login)
+            .bind("balance", Money.parse(balance).units())
+            .fetch()
+            .rowsUpdated()
+            .map(Long::intValue);
+    }
+
+    private Mono<Integer> addToBalance(String login, String amount) {
+        return client.sql("UPDATE clients SET balance = balance + :amount WHERE login = :login "
+                + "AND balance + :amount >= 0")
+            .bind("login", login)
+            .bind("amount", Money.parse(amount).units())
+            .fetch()
+            .rowsUpdated()
+            .map(Long::intValue);
+    }
+
+    private Mono<Money> balance(String login) {
+        return client.sql("SELECT balance FROM clients WHERE login = :login")
+            .bind("login", login)
+            .map(row -> Money.ofUnits(row.get("balance", Long.class)))
+            .one();
+    }
+
+    private Flux<Money> balances(List<String> logins) {
+        return Flux.fromIterable(logins).concatMap(this::balance);
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.qiwitest.service;
+
+import com.example.qiwitest.model.Client;
+import com.example.qiwitest.model.Money;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class ClientCacheTest {
+
+    private final ClientCache cache = new ClientCache(true, 100, Duration.ofMinutes(1));
+
+    @Test
+    public void shouldCacheLoadedClient() {
+        // Arrange
+        Client client = new Client("max", "pwd", Money.parse("10.0000"));
+        long version = cache.version("max");
+
+        // Act
+        cache.put(client, version);
+
+        // Assert
+        assertSame(client, cache.get("max"));
+    }
+
+    @Test
+    public void shouldNotCacheLoadThatRacedWithInvalidation() {
+        // Arrange: a load reads the balance before a write, which invalidates the login before the load returns
+        Client stale = new Client("max", "pwd", Money.parse("10.0000"));
+        long version = cache.version("max");
+        cache.invalidate("max");
+
+        // Act
+        cache.put(stale, version);
+
+        // Assert: the next lookup goes to the database instead of seeing the state from before the write
+        assertNull(cache.get("max"));
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.qiwitest.service;
+
+import com.example.qiwitest.model.Client;
+import com.example.qiwitest.repository.ClientRepository;
+import com.example.qiwitest.repository.ShardRouter;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ClientExporterTest {
+
+    @Test
+    public void shouldQueryNextPageAfterLastId() {
+        // Arrange
+        ClientRepository repository = mock(ClientRepository.class);
+        when(repository.findPageAfter(5, 2)).thenReturn(Flux.just(client(6), client(9)));
+        when(repository.findPageAfter(9, 2)).thenReturn(Flux.just(client(12)));
+        ClientExporter exporter = new ClientExporter(repository, ShardRouter.disabled(), 2);
+
+        // Act & Assert
+        StepVerifier.create(exporter.pages(0, 5), 1)
+            .assertNext(page -> assertEquals(List.of(6L, 9L), ids(page)))
+            .thenRequest(1)
+            .assertNext(page -> assertEquals(List.of(12L), ids(page)))
+            .verifyComplete();
+    }
+
+    @Test
+    public void shouldSkipEmptyLastPage() {
+        // Arrange
+        ClientRepository repository = mock(ClientRepository.class);
+        when(repository.findPageAfter(0, 2)).thenReturn(Flux.just(client(1), client(2)));
+        when(repository.findPageAfter(2, 2)).thenReturn(Flux.empty());
+        ClientExporter exporter = new ClientExporter(repository, ShardRouter.disabled(), 2);
+
+        // Act & Assert
+        StepVerifier.create(exporter.pages(0, 0))
+            .assertNext(page -> assertEquals(List.of(1L, 2L), ids(page)))
+            .verifyComplete();
+    }
+
+    @Test
+    public void shouldRejectUnknownShardAndNegativeId() {
+        ClientExporter exporter = new ClientExporter(mock(ClientRepository.class), ShardRouter.disabled(), 2);
+
+        assertThrows(IllegalArgumentException.class, () -> exporter.pages(1, 0));
+        assertThrows(IllegalArgumentException.class, () -> exporter.pages(0, -1));
+    }
+
+    private static Client client(long id) {
+        Client client = new Client("login-" + id, "pwd");
+        client.setId(id);
+        return client;
+    }
+
+    private static List<Long> ids(List<Client> page) {
+        return page.stream().map(Client::getId).toList();
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.qiwitest.service;
+
+import com.example.qiwitest.repository.ShardRouter;
+import io.netty.buffer.ByteBuf;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+public class ClientImporterTest {
+
+    private final PasswordHasher passwordHasher = new PasswordHasher(1_000, 1, 10, Duration.ofSeconds(30), 100);
+
+    private final ClientImporter importer = new ClientImporter(mock(DatabaseClient.class), ShardRouter.disabled(),
+        LoginFilter.disabled(), passwordHasher, 10, 2, 10);
+
+    @AfterEach
+    public void tearDown() {
+        passwordHasher.close();
+    }
+
+    @Test
+    public void shouldParseRows() {
+        assertEquals(new ClientImporter.Row(2, "alice", "secret", 105_000),
+            importer.parse(2, "alice,secret,10.5"));
+        assertEquals(new ClientImporter.Row(3, "bob", "pwd", 0), importer.parse(3, "bob,pwd"));
+        assertEquals(new ClientImporter.Row(4, "bob", "pwd", 0), importer.parse(4, "bob,pwd,"));
+        assertEquals(new ClientImporter.Row(5, "a,b", "say \"hi\"", 10_000),
+            importer.parse(5, "\"a,b\",\"say \"\"hi\"\"\", 1 "));
+    }
+
+    @Test
+    public void shouldRejectInvalidRows() {
+        assertThrows(IllegalArgumentException.class, () -> importer.parse(1, "alice"));
+        assertThrows(IllegalArgumentException.class, () -> importer.parse(1, "alice,pwd,1,extra"));
+        assertThrows(IllegalArgumentException.class, () -> importer.parse(1, " ,pwd"));
+        assertThrows(IllegalArgumentException.class, () -> importer.parse(1, "alice,"));
+        assertThrows(IllegalArgumentException.class, () -> importer.parse(1, "alice,pwd,-1"));
+        assertThrows(IllegalArgumentException.class, () -> importer.parse(1, "alice,pwd,0.00001"));
+        assertThrows(IllegalArgumentException.class, () -> importer.parse(1, "alice,pwd,ten"));
+        assertThrows(IllegalArgumentException.class, () -> importer.parse(1, "\"alice,pwd"));
+        assertThrows(IllegalArgumentException.class, () -> importer.parse(1, "x".repeat(256) + ",pwd"));
+    }
+
+    @Test
+    public void shouldAcceptOnlyVerifiableHashes() {
+        String hash = passwordHasher.hash("secret").block();
+
+        assertEquals(new ClientImporter.Row(1, "alice", hash, 0), importer.parse(1, "alice," + hash));
+        assertThrows(IllegalArgumentException.class,
+            () -> importer.parse(1, "alice,pbkdf2-sha256$2000000000$c2FsdA$aGFzaA"));
+        assertThrows(IllegalArgumentException.class, () -> importer.parse(1, "alice,pbkdf2-sha256$plain"));
+    }
+
+    @Test
+    public void shouldQuoteTextFieldsForCopy() {
+        // Arrange
+        List<ClientImporter.Row> rows = List.of(new ClientImporter.Row(2, "a\"b", "p,w", 10_000),
+            new ClientImporter.Row(3, "c", "d", 0));
+
+        // Act
+        ByteBuf csv = ClientImporter.csv(rows);
+
+        // Assert
+        assertEquals("2,\"a\"\"b\",\"p,w\",10000\n3,\"c\",\"d\",0\n", csv.toString(StandardCharsets.UTF_8));
+        csv.release();
+    }
+
+    @Test
+    public void shouldReportInvalidRowsWithoutLoadingThem() {
+        // Arrange
+        DatabaseClient databaseClient = mock(DatabaseClient.class);
+        LoginFilter loginFilter = mock(LoginFilter.class);
+        ClientImporter importer = new ClientImporter(databaseClient, mock(ShardRouter.class), loginFilter,
+            passwordHasher, 10, 2, 1);
+
+        // Act & Assert
+        StepVerifier.create(importer.importCsv(Flux.just("login,password,balance", "", "alice", "bob,pwd,-5")))
+            .assertNext(report -> {
+                assertEquals(2, report.rows());
+                assertEquals(0, report.imported());
+                assertEquals(2, report.invalid());
+                assertEquals(List.of(new ClientImporter.Rejected(3, null, "expected login,password[,balance]")),
+                    report.rejected());
+            })
+            .verifyComplete();
+        verifyNoInteractions(databaseClient, loginFilter);
+    }
+
+    @Test
+    public void shouldRefuseImportWhileShardsMigrate() {
+        // Arrange
+        ShardRouter shardRouter = mock(ShardRouter.class);
+        when(shardRouter.isMigrating()).thenReturn(true);
+        ClientImporter importer = new ClientImporter(mock(DatabaseClient.class), shardRouter, mock(LoginFilter.class),
+            passwordHasher, 10, 2, 10);
+
+        // Act & Assert
+        StepVerifier.create(importer.importCsv(Flux.just("alice,pwd")))
+            .verifyError(ClientImporter.MigrationInProgressException.class);
+    }
+}
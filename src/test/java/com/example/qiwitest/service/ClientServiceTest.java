@@ -1,17 +1,26 @@
 package com.example.qiwitest.service;
 
+import com.example.qiwitest.metrics.ApiMetrics;
 import com.example.qiwitest.model.Client;
+import com.example.qiwitest.model.Money;
 import com.example.qiwitest.repository.ClientRepository;
+import com.example.qiwitest.repository.R2dbcClientStore;
+import com.example.qiwitest.repository.ReplicaRouter;
+import com.example.qiwitest.repository.ShardRouter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 import reactor.test.StepVerifier;
 
-import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
@@ -22,14 +31,22 @@ public class ClientServiceTest {
     @Mock
     private ClientRepository clientRepository;
 
-    @InjectMocks
+    @Mock
+    private TransactionalOperator transactionalOperator;
+
     private ClientService clientService;
 
+    private final PasswordHasher passwordHasher = new PasswordHasher(1_000, 1, 100, Duration.ofSeconds(30), 1_000);
+
     private Client testClient;
 
     @BeforeEach
     public void setUp() {
-        testClient = new Client("max", "pwd", BigDecimal.ZERO);
+        testClient = new Client("max", "pwd", Money.ZERO);
+        lenient().when(transactionalOperator.transactional(any(Mono.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        clientService = new ClientService(store(), ClientCache.disabled(), LoginFilter.disabled(),
+            LookupCoalescer.disabled(), LookupBatcher.disabled(), passwordHasher, LedgerWriter.disabled(),
+            ReplicaRouter.disabled(), ShardRouter.disabled(), ApiMetrics.disabled());
     }
 
     @Test
@@ -45,6 +62,26 @@ public class ClientServiceTest {
         verify(clientRepository, times(1)).findByLogin("max");
     }
 
+    @Test
+    public void shouldServeRepeatedLookupsFromCache() {
+        // Arrange
+        ClientCache cache = new ClientCache(true, 100, Duration.ofMinutes(1));
+        ClientService cachingService = new ClientService(store(), cache, LoginFilter.disabled(),
+            LookupCoalescer.disabled(), LookupBatcher.disabled(), passwordHasher, LedgerWriter.disabled(),
+            ReplicaRouter.disabled(), ShardRouter.disabled(), ApiMetrics.disabled());
+        when(clientRepository.findByLogin("max")).thenReturn(Mono.just(testClient));
+
+        // Act & Assert
+        StepVerifier.create(cachingService.findByLogin("max")
+                .then(Mono.defer(() -> cachingService.findByLogin("max"))))
+            .expectNext(testClient)
+            .verifyComplete();
+
+        verify(clientRepository, times(1)).findByLogin("max");
+        assert cache.stats().hitCount() == 1;
+        assert cache.stats().missCount() == 1;
+    }
+
     @Test
     public void shouldReturnEmptyMonoWhenClientNotFound() {
         // Arrange
@@ -57,6 +94,121 @@ public class ClientServiceTest {
         verify(clientRepository, times(1)).findByLogin("nonexistent");
     }
 
+    @Test
+    public void shouldCoalesceConcurrentLookupsOfSameLogin() {
+        // Arrange
+        LookupCoalescer coalescer = new LookupCoalescer(true);
+        ClientService coalescingService = coalescingService(coalescer);
+        Sinks.One<Client> lookup = Sinks.one();
+        Sinks.One<Client> failingLookup = Sinks.one();
+        when(clientRepository.findByLogin("max")).thenReturn(lookup.asMono(), failingLookup.asMono());
+
+        // Act
+        StepVerifier first = StepVerifier.create(coalescingService.findByLogin("max"))
+            .expectNext(testClient)
+            .expectComplete()
+            .verifyLater();
+        StepVerifier second = StepVerifier.create(coalescingService.findByLogin("max"))
+            .expectNext(testClient)
+            .expectComplete()
+            .verifyLater();
+        lookup.tryEmitValue(testClient);
+
+        // Assert
+        first.verify();
+        second.verify();
+        assert coalescer.executedCount() == 1;
+        assert coalescer.coalescedCount() == 1;
+        assert coalescer.inFlightCount() == 0;
+
+        // A failed lookup fails every caller that joined it and is not kept
+        StepVerifier third = StepVerifier.create(coalescingService.findByLogin("max"))
+            .expectError(IllegalStateException.class)
+            .verifyLater();
+        StepVerifier fourth = StepVerifier.create(coalescingService.findByLogin("max"))
+            .expectError(IllegalStateException.class)
+            .verifyLater();
+        failingLookup.tryEmitError(new IllegalStateException("connection lost"));
+        third.verify();
+        fourth.verify();
+        verify(clientRepository, times(2)).findByLogin("max");
+        assert coalescer.inFlightCount() == 0;
+    }
+
+    @Test
+    public void shouldLookUpAgainWhenSharedLookupIsCancelled() {
+        // Arrange
+        LookupCoalescer coalescer = new LookupCoalescer(true);
+        ClientService coalescingService = coalescingService(coalescer);
+        Sinks.One<Client> retried = Sinks.one();
+        when(clientRepository.findByLogin("max")).thenReturn(Mono.never(), retried.asMono());
+
+        // Act: the caller that started the lookup goes away while another one waits for it
+        Disposable first = coalescingService.findByLogin("max").subscribe();
+        StepVerifier waiting = StepVerifier.create(coalescingService.findByLogin("max"))
+            .expectNext(testClient)
+            .expectComplete()
+            .verifyLater();
+        first.dispose();
+        retried.tryEmitValue(testClient);
+
+        // Assert
+        waiting.verify();
+        verify(clientRepository, times(2)).findByLogin("max");
+    }
+
+    @Test
+    public void shouldNotJoinLookupStartedBeforeWrite() {
+        // Arrange
+        LookupCoalescer coalescer = new LookupCoalescer(true);
+        ClientService coalescingService = coalescingService(coalescer);
+        Sinks.One<Client> beforeWrite = Sinks.one();
+        Client updated = new Client("max", "pwd", Money.parse("10"));
+        when(clientRepository.findByLogin("max")).thenReturn(beforeWrite.asMono(), Mono.just(updated));
+        when(clientRepository.addToBalance("max", Money.parse("10").units())).thenReturn(Mono.just(1));
+
+        // Act & Assert
+        StepVerifier stale = StepVerifier.create(coalescingService.findByLogin("max"))
+            .expectNext(testClient)
+            .expectComplete()
+            .verifyLater();
+        StepVerifier.create(coalescingService.deposit("max", Money.parse("10"))).expectNextCount(1).verifyComplete();
+        StepVerifier.create(coalescingService.findByLogin("max")).expectNext(updated).verifyComplete();
+        beforeWrite.tryEmitValue(testClient);
+
+        stale.verify();
+        assert coalescer.coalescedCount() == 0;
+    }
+
+    private ClientService coalescingService(LookupCoalescer coalescer) {
+        return new ClientService(store(), ClientCache.disabled(), LoginFilter.disabled(), coalescer,
+            LookupBatcher.disabled(), passwordHasher, LedgerWriter.disabled(), ReplicaRouter.disabled(),
+            ShardRouter.disabled(), ApiMetrics.disabled());
+    }
+
+    private R2dbcClientStore store() {
+        return new R2dbcClientStore(clientRepository, transactionalOperator);
+    }
+
+    @Test
+    public void shouldFindClientsByManyLogins() {
+        // Arrange
+        Client other = new Client("ivan", "pwd", Money.ZERO);
+        when(clientRepository.findByLoginIn(List.of("max", "ivan", "nobody")))
+            .thenReturn(Flux.just(testClient, other));
+
+        // Act & Assert
+        StepVerifier.create(clientService.findByLogins(List.of("max", "ivan", "max", "nobody")))
+            .assertNext(found -> {
+                assert found.size() == 2;
+                assert found.get("max") == testClient;
+                assert found.get("ivan") == other;
+            })
+            .verifyComplete();
+
+        verify(clientRepository, times(1)).findByLoginIn(any());
+    }
+
     @Test
     public void shouldCreateClient() {
         // Arrange
@@ -70,9 +222,101 @@ public class ClientServiceTest {
         verify(clientRepository, times(1)).save(any(Client.class));
     }
 
+    @Test
+    public void shouldCreateClientIfAbsent() {
+        // Arrange
+        when(clientRepository.findByLogin(anyString())).thenReturn(Mono.empty());
+        when(clientRepository.insertIfAbsent(eq("max"), anyString())).thenReturn(Mono.just(1));
+        when(clientRepository.insertIfAbsent(eq("ivan"), anyString())).thenReturn(Mono.just(0));
+
+        // Act & Assert
+        StepVerifier.create(clientService.createIfAbsent("max", "pwd"))
+            .expectNext(true)
+            .verifyComplete();
+        StepVerifier.create(clientService.createIfAbsent("ivan", "pwd"))
+            .expectNext(false)
+            .verifyComplete();
+    }
+
+    @Test
+    public void shouldCoalesceConcurrentCreatesOfSameLogin() {
+        // Arrange
+        Sinks.One<Integer> insert = Sinks.one();
+        when(clientRepository.findByLogin("max")).thenReturn(Mono.empty());
+        when(clientRepository.insertIfAbsent(eq("max"), anyString())).thenReturn(insert.asMono());
+
+        // Act
+        StepVerifier first = StepVerifier.create(clientService.createIfAbsent("max", "pwd"))
+            .expectNext(true)
+            .expectComplete()
+            .verifyLater();
+        StepVerifier second = StepVerifier.create(clientService.createIfAbsent("max", "pwd"))
+            .expectNext(false)
+            .expectComplete()
+            .verifyLater();
+        insert.tryEmitValue(1);
+
+        // Assert
+        first.verify();
+        second.verify();
+        verify(clientRepository, times(1)).insertIfAbsent(eq("max"), anyString());
+    }
+
+    @Test
+    public void shouldNotHashPasswordForExistingLogin() {
+        // Arrange
+        PasswordHasher hasher = spy(passwordHasher);
+        ClientService hashingService = new ClientService(store(), ClientCache.disabled(), LoginFilter.disabled(),
+            LookupCoalescer.disabled(), LookupBatcher.disabled(), hasher, LedgerWriter.disabled(),
+            ReplicaRouter.disabled(), ShardRouter.disabled(), ApiMetrics.disabled());
+        when(clientRepository.findByLogin("max")).thenReturn(Mono.just(testClient));
+
+        // Act & Assert
+        StepVerifier.create(hashingService.createIfAbsent("max", "pwd"))
+            .expectNext(false)
+            .verifyComplete();
+
+        verify(hasher, never()).hash(anyString());
+        verify(clientRepository, never()).insertIfAbsent(anyString(), anyString());
+    }
+
+    @Test
+    public void shouldStoreHashedPasswordOnCreate() {
+        // Arrange
+        when(clientRepository.findByLogin("max")).thenReturn(Mono.empty());
+        when(clientRepository.insertIfAbsent(eq("max"), anyString())).thenReturn(Mono.just(1));
+
+        // Act
+        StepVerifier.create(clientService.createIfAbsent("max", "pwd"))
+            .expectNext(true)
+            .verifyComplete();
+
+        // Assert
+        verify(clientRepository).insertIfAbsent(eq("max"), argThat(stored ->
+            passwordHasher.isHashed(stored) && !stored.contains("pwd")));
+    }
+
+    @Test
+    public void shouldVerifyHashedPassword() {
+        // Arrange
+        String hash = passwordHasher.hash("pwd").block();
+        Mono<Client> clientMono = Mono.just(new Client("max", hash, Money.ZERO));
+
+        // Act & Assert
+        StepVerifier.create(clientService.isPasswordCorrect(clientMono, "pwd"))
+            .expectNext(true)
+            .verifyComplete();
+        StepVerifier.create(clientService.isPasswordCorrect(clientMono, "wrong"))
+            .expectNext(false)
+            .verifyComplete();
+
+        verify(clientRepository, never()).updatePassword(any(), any(), any());
+    }
+
     @Test
     public void shouldCheckPasswordCorrectly() {
         // Arrange
+        when(clientRepository.updatePassword(eq("max"), eq("pwd"), anyString())).thenReturn(Mono.just(1));
         Mono<Client> clientMono = Mono.just(testClient);
         Mono<Client> emptyMono = Mono.empty();
 
@@ -98,11 +342,139 @@ public class ClientServiceTest {
 
         // Act & Assert
         StepVerifier.create(clientService.getBalance(clientMono))
-            .expectNext(BigDecimal.ZERO)
+            .expectNext(Money.ZERO)
             .verifyComplete();
 
         StepVerifier.create(clientService.getBalance(emptyMono))
             .expectComplete()
             .verify();
     }
+
+    @Test
+    public void shouldDepositWithSingleUpdate() {
+        // Arrange
+        Money amount = Money.parse("10.0000");
+        when(clientRepository.addToBalance("max", amount.units())).thenReturn(Mono.just(1));
+
+        // Act & Assert
+        StepVerifier.create(clientService.deposit("max", amount))
+            .expectNext(BalanceUpdate.APPLIED)
+            .verifyComplete();
+
+        verify(clientRepository, never()).findByLogin(any());
+    }
+
+    @Test
+    public void shouldWriteLedgerEntryInBalanceTransactionWithoutShards() {
+        // Arrange
+        LedgerWriter ledgerWriter = mock(LedgerWriter.class);
+        when(ledgerWriter.isEnabled()).thenReturn(true);
+        ClientService ledgerService = new ClientService(store(), ClientCache.disabled(), LoginFilter.disabled(),
+            LookupCoalescer.disabled(), LookupBatcher.disabled(), passwordHasher, ledgerWriter,
+            ReplicaRouter.disabled(), ShardRouter.disabled(), ApiMetrics.disabled());
+        Money amount = Money.parse("10.0000");
+        when(clientRepository.addToBalance("max", amount.units())).thenReturn(Mono.just(1));
+        when(clientRepository.insertLedgerEntry("max", amount.units(), "DEPOSIT", null)).thenReturn(Mono.just(1));
+
+        // Act & Assert
+        StepVerifier.create(ledgerService.deposit("max", amount))
+            .expectNext(BalanceUpdate.APPLIED)
+            .verifyComplete();
+
+        verify(transactionalOperator, times(1)).transactional(any(Mono.class));
+        verify(clientRepository, times(1)).insertLedgerEntry("max", amount.units(), "DEPOSIT", null);
+        verify(ledgerWriter, never()).append(any());
+    }
+
+    @Test
+    public void shouldReportInsufficientFundsWhenWithdrawMatchesNoRow() {
+        // Arrange
+        Money amount = Money.parse("10.0000");
+        when(clientRepository.addToBalance("max", amount.negate().units())).thenReturn(Mono.just(0));
+
+        // Act & Assert
+        StepVerifier.create(clientService.withdraw("max", amount))
+            .expectNext(BalanceUpdate.INSUFFICIENT_FUNDS)
+            .verifyComplete();
+    }
+
+    @Test
+    public void shouldTransferInsideTransaction() {
+        // Arrange
+        Money amount = Money.parse("5.0000");
+        when(clientRepository.addToBalance("max", amount.negate().units())).thenReturn(Mono.just(1));
+        when(clientRepository.addToBalance("ann", amount.units())).thenReturn(Mono.just(1));
+
+        // Act & Assert
+        StepVerifier.create(clientService.transfer("max", "ann", amount))
+            .expectNext(BalanceUpdate.APPLIED)
+            .verifyComplete();
+
+        verify(transactionalOperator, times(1)).transactional(any(Mono.class));
+    }
+
+    @Test
+    public void shouldRollBackTransferWhenSenderIsShort() {
+        // Arrange
+        Money amount = Money.parse("5.0000");
+        when(clientRepository.addToBalance("max", amount.negate().units())).thenReturn(Mono.just(0));
+        when(clientRepository.addToBalance("ann", amount.units())).thenReturn(Mono.just(1));
+
+        // Act & Assert
+        StepVerifier.create(clientService.transfer("max", "ann", amount))
+            .expectNext(BalanceUpdate.INSUFFICIENT_FUNDS)
+            .verifyComplete();
+    }
+
+    @Test
+    public void shouldRefundCrossShardTransferToMissingRecipient() {
+        // Arrange
+        ShardRouter shardRouter = new ShardRouter(List.of("shard-0", "shard-1"), 2, 0);
+        String to = loginOnOtherShard("max");
+        ClientService shardedService = shardedService(shardRouter);
+        Money amount = Money.parse("5.0000");
+        when(clientRepository.addToBalance("max", amount.negate().units())).thenReturn(Mono.just(1));
+        when(clientRepository.addToBalance(to, amount.units())).thenReturn(Mono.just(0));
+        when(clientRepository.addToBalance("max", amount.units())).thenReturn(Mono.just(1));
+
+        // Act & Assert
+        StepVerifier.create(shardedService.transfer("max", to, amount))
+            .expectNext(BalanceUpdate.CLIENT_NOT_FOUND)
+            .verifyComplete();
+
+        verify(clientRepository, times(1)).addToBalance("max", amount.units());
+    }
+
+    @Test
+    public void shouldNotRefundCrossShardTransferWhenCreditOutcomeIsUnknown() {
+        // Arrange: the credit may have committed before the connection dropped
+        ShardRouter shardRouter = new ShardRouter(List.of("shard-0", "shard-1"), 2, 0);
+        String to = loginOnOtherShard("max");
+        ClientService shardedService = shardedService(shardRouter);
+        Money amount = Money.parse("5.0000");
+        when(clientRepository.addToBalance("max", amount.negate().units())).thenReturn(Mono.just(1));
+        when(clientRepository.addToBalance(to, amount.units()))
+            .thenReturn(Mono.error(new IllegalStateException("connection reset")));
+
+        // Act & Assert
+        StepVerifier.create(shardedService.transfer("max", to, amount))
+            .verifyError(IllegalStateException.class);
+
+        verify(clientRepository, never()).addToBalance("max", amount.units());
+    }
+
+    private ClientService shardedService(ShardRouter shardRouter) {
+        return new ClientService(store(), ClientCache.disabled(), LoginFilter.disabled(), LookupCoalescer.disabled(),
+            LookupBatcher.disabled(), passwordHasher, LedgerWriter.disabled(), ReplicaRouter.disabled(),
+            shardRouter, ApiMetrics.disabled());
+    }
+
+    private static String loginOnOtherShard(String login) {
+        for (int i = 0; ; i++) {
+            String other = "ann-" + i;
+            if (ShardRouter.shardOf(other, 2) != ShardRouter.shardOf(login, 2)) {
+                return other;
+            }
+        }
+    }
 }
@@ -0,0 +1,154 @@
+package com.example.qiwitest.service;
+
+import com.example.qiwitest.config.MoneyConfig;
+import com.example.qiwitest.model.LedgerEntry;
+import com.example.qiwitest.model.Money;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DataR2dbcTest
+@Import(MoneyConfig.class)
+@ActiveProfiles("test")
+public class LedgerWriterTest {
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @Test
+    public void shouldGroupConcurrentEntriesIntoFewInserts() {
+        // Arrange
+        LedgerWriter writer = new LedgerWriter(databaseClient, true, 4, Duration.ofMillis(50), 1,
+            Duration.ofMillis(10), 3);
+
+        // Act: ten entries arriving together
+        StepVerifier.create(Flux.range(0, 10)
+                .flatMap(i -> writer.append(new LedgerEntry("group-" + i, Money.parse("1"), "DEPOSIT", null)))
+                .then())
+            .verifyComplete();
+
+        // Assert: every entry is committed, in batches of at most four
+        assert writer.entryCount() == 10;
+        assert writer.batchCount() >= 3 && writer.batchCount() < 10;
+        StepVerifier.create(databaseClient.sql("SELECT COUNT(*) AS n FROM ledger WHERE login LIKE 'group-%'")
+                .map(row -> row.get("n", Long.class))
+                .one())
+            .expectNext(10L)
+            .verifyComplete();
+
+        writer.close();
+    }
+
+    @Test
+    public void shouldKeepQueueingWhileEveryWriteIsBusy() {
+        // Arrange: every INSERT takes 50ms, far longer than the window
+        DatabaseClient slowDatabase = mock(DatabaseClient.class);
+        DatabaseClient.GenericExecuteSpec spec = mock(DatabaseClient.GenericExecuteSpec.class, RETURNS_SELF);
+        when(slowDatabase.sql(anyString())).thenReturn(spec);
+        when(spec.then()).thenAnswer(invocation -> Mono.delay(Duration.ofMillis(50)).then());
+        LedgerWriter writer = new LedgerWriter(slowDatabase, true, 4, Duration.ofMillis(2), 2,
+            Duration.ofMillis(10), 3);
+
+        // Act: entries keep arriving while both write slots are taken
+        StepVerifier.create(Flux.range(0, 100)
+                .delayElements(Duration.ofMillis(1))
+                .flatMap(i -> writer.append(new LedgerEntry("slow-" + i, Money.parse("1"), "DEPOSIT", null)))
+                .then())
+            .expectComplete()
+            .verify(Duration.ofSeconds(10));
+
+        // Assert: nothing was lost and batches stayed within batch-size
+        assert writer.entryCount() == 100;
+        assert writer.batchCount() >= 25;
+
+        writer.close();
+    }
+
+    @Test
+    public void shouldHoldEntryUntilRetrySucceeds() {
+        // Arrange: the first INSERT fails, the next one succeeds
+        DatabaseClient flakyDatabase = mock(DatabaseClient.class);
+        DatabaseClient.GenericExecuteSpec spec = mock(DatabaseClient.GenericExecuteSpec.class, RETURNS_SELF);
+        when(flakyDatabase.sql(anyString())).thenReturn(spec);
+        when(spec.then()).thenReturn(Mono.error(new IllegalStateException("connection lost")), Mono.empty());
+        LedgerWriter writer = new LedgerWriter(flakyDatabase, true, 4, Duration.ofMillis(2), 1,
+            Duration.ofMillis(10), 3);
+
+        // Act & Assert: the request completes only once the second INSERT has committed
+        StepVerifier.create(writer.append(new LedgerEntry("flaky", Money.parse("1"), "DEPOSIT", null)))
+            .expectComplete()
+            .verify(Duration.ofSeconds(5));
+
+        assert writer.entryCount() == 1;
+        assert writer.retryCount() == 1;
+        assert writer.failureCount() == 0;
+
+        writer.close();
+    }
+
+    @Test
+    public void shouldFailEntryAfterMaxAttempts() {
+        // Arrange: every INSERT fails
+        DatabaseClient brokenDatabase = mock(DatabaseClient.class);
+        DatabaseClient.GenericExecuteSpec spec = mock(DatabaseClient.GenericExecuteSpec.class, RETURNS_SELF);
+        when(brokenDatabase.sql(anyString())).thenReturn(spec);
+        when(spec.then()).thenReturn(Mono.error(new IllegalStateException("table missing")));
+        LedgerWriter writer = new LedgerWriter(brokenDatabase, true, 4, Duration.ofMillis(2), 1,
+            Duration.ofMillis(10), 3);
+
+        // Act & Assert: the request is not answered as written
+        StepVerifier.create(writer.append(new LedgerEntry("broken", Money.parse("1"), "DEPOSIT", null)))
+            .expectErrorMessage("table missing")
+            .verify(Duration.ofSeconds(5));
+
+        assert writer.retryCount() == 2;
+        assert writer.failureCount() == 1;
+        assert writer.entryCount() == 0;
+
+        writer.close();
+    }
+
+    @Test
+    public void shouldWriteQueuedEntriesOnClose() {
+        // Arrange: a window far longer than the test, so only close can flush the entries
+        LedgerWriter writer = new LedgerWriter(databaseClient, true, 100, Duration.ofMinutes(10), 1,
+            Duration.ofMillis(10), 3);
+        StepVerifier appended = StepVerifier.create(Flux.range(0, 3)
+                .flatMap(i -> writer.append(new LedgerEntry("close-" + i, Money.parse("1"), "DEPOSIT", null)))
+                .then())
+            .expectComplete()
+            .verifyLater();
+
+        // Act
+        writer.close();
+
+        // Assert: the entries were written before close returned, and later ones are refused
+        assert writer.entryCount() == 3;
+        appended.verify(Duration.ofSeconds(5));
+        StepVerifier.create(writer.append(new LedgerEntry("late", Money.parse("1"), "DEPOSIT", null)))
+            .verifyError(IllegalStateException.class);
+    }
+
+    @Test
+    public void shouldCompleteImmediatelyWhenDisabled() {
+        LedgerWriter writer = LedgerWriter.disabled();
+
+        StepVerifier.create(writer.append(new LedgerEntry("max", Money.parse("1"), "DEPOSIT", null)))
+            .verifyComplete();
+
+        assert writer.entryCount() == 0;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.qiwitest.service;
+
+import com.example.qiwitest.repository.ClientRepository;
+import com.example.qiwitest.repository.ShardRouter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class LoginFilterTest {
+
+    @Mock
+    private ClientRepository clientRepository;
+
+    @Test
+    public void shouldNeverReportAddedLoginsAsAbsent() {
+        LoginBloomFilter filter = new LoginBloomFilter(10_000, 0.01, 1 << 20);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("login-" + i);
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("login-" + i));
+        }
+    }
+
+    @Test
+    public void shouldKeepFalsePositivesNearTarget() {
+        LoginBloomFilter filter = new LoginBloomFilter(10_000, 0.01, 1 << 20);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("login-" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("unknown-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 2_000, "false positives: " + falsePositives);
+    }
+
+    @Test
+    public void shouldAnswerPossiblyPresentUntilBuilt() {
+        LoginFilter loginFilter = newLoginFilter();
+
+        assertTrue(loginFilter.mightContain("anyone"));
+        assertFalse(loginFilter.isReady());
+    }
+
+    @Test
+    public void shouldFilterUnknownLoginsAfterRebuild() {
+        when(clientRepository.findAllLogins()).thenReturn(Flux.just("max", "ivan"));
+        LoginFilter loginFilter = newLoginFilter();
+
+        StepVerifier.create(loginFilter.rebuild()).verifyComplete();
+
+        assertTrue(loginFilter.isReady());
+        assertTrue(loginFilter.mightContain("max"));
+        assertFalse(loginFilter.mightContain("nobody"));
+        assert loginFilter.stats().definitelyAbsent() == 1;
+    }
+
+    @Test
+    public void shouldReplayLoginsAddedWhileRebuilding() {
+        // The login is added before its row becomes visible to the rebuild scan
+        LoginFilter loginFilter = newLoginFilter();
+        loginFilter.add("new-user");
+        when(clientRepository.findAllLogins()).thenReturn(Flux.just("max"));
+
+        StepVerifier.create(loginFilter.rebuild()).verifyComplete();
+
+        assertTrue(loginFilter.mightContain("new-user"));
+    }
+
+    private LoginFilter newLoginFilter() {
+        return new LoginFilter(clientRepository, ShardRouter.disabled(), true, 1_000, 0.01, 1 << 20, Duration.ZERO, Duration.ofMinutes(1));
+    }
+}
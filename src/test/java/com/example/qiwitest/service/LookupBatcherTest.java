@@ -0,0 +1,163 @@
+package com.example.qiwitest.service;
+
+import com.example.qiwitest.metrics.ApiMetrics;
+import com.example.qiwitest.model.Client;
+import com.example.qiwitest.model.Money;
+import com.example.qiwitest.repository.ClientStore;
+import com.example.qiwitest.repository.ReplicaRouter;
+import com.example.qiwitest.repository.ShardRouter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class LookupBatcherTest {
+
+    @Mock
+    private ClientStore clientStore;
+
+    private final Client max = new Client("max", "pwd", Money.ZERO);
+    private final Client bob = new Client("bob", "pwd", Money.parse("1"));
+
+    @Test
+    public void shouldSendLookupAtOnceWhenIdle() {
+        // Arrange: a window far longer than the test
+        LookupBatcher batcher = batcher(Duration.ofMinutes(1), 1);
+        when(clientStore.findByLoginAny(any())).thenReturn(Flux.just(max));
+
+        // Act & Assert
+        StepVerifier.create(batcher.find("max"))
+            .expectNext(max)
+            .expectComplete()
+            .verify(Duration.ofSeconds(5));
+
+        assert batcher.queryCount() == 1;
+    }
+
+    @Test
+    public void shouldBatchLookupsArrivingWhileQueryRuns() {
+        // Arrange
+        LookupBatcher batcher = batcher(Duration.ofMinutes(1), 1);
+        Sinks.Many<Client> running = Sinks.many().replay().all();
+        when(clientStore.findByLoginAny(any())).thenReturn(running.asFlux(), Flux.just(bob));
+
+        // Act: three lookups queue up behind the running one and go out together once it finishes
+        StepVerifier first = StepVerifier.create(batcher.find("max")).expectNext(max).expectComplete().verifyLater();
+        StepVerifier second = StepVerifier.create(batcher.find("bob")).expectNext(bob).expectComplete().verifyLater();
+        StepVerifier unknown = StepVerifier.create(batcher.find("nobody")).expectComplete().verifyLater();
+        StepVerifier again = StepVerifier.create(batcher.find("bob")).expectNext(bob).expectComplete().verifyLater();
+        assert batcher.queuedCount() == 3;
+        running.tryEmitNext(max);
+        running.tryEmitComplete();
+
+        // Assert
+        first.verify();
+        second.verify();
+        unknown.verify();
+        again.verify();
+        ArgumentCaptor<String[]> logins = ArgumentCaptor.forClass(String[].class);
+        verify(clientStore, times(2)).findByLoginAny(logins.capture());
+        assert Arrays.equals(logins.getAllValues().get(1), new String[] {"bob", "nobody"});
+        assert batcher.queryCount() == 2;
+        assert batcher.lookupCount() == 4;
+    }
+
+    @Test
+    public void shouldSendWaitingLookupsWhenWindowElapses() {
+        // Arrange: the first query never returns, but a second slot is free
+        LookupBatcher batcher = batcher(Duration.ofMillis(10), 2);
+        when(clientStore.findByLoginAny(any())).thenReturn(Flux.never(), Flux.just(bob));
+        batcher.find("max").subscribe();
+
+        // Act & Assert
+        StepVerifier.create(batcher.find("bob"))
+            .expectNext(bob)
+            .expectComplete()
+            .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void shouldFailEveryLookupOfFailedBatch() {
+        // Arrange
+        LookupBatcher batcher = batcher(Duration.ofMinutes(1), 1);
+        Sinks.Many<Client> running = Sinks.many().replay().all();
+        when(clientStore.findByLoginAny(any()))
+            .thenReturn(running.asFlux(), Flux.error(new IllegalStateException("connection lost")));
+
+        // Act
+        StepVerifier first = StepVerifier.create(batcher.find("max")).expectNext(max).expectComplete().verifyLater();
+        StepVerifier second = StepVerifier.create(batcher.find("bob"))
+            .expectError(IllegalStateException.class)
+            .verifyLater();
+        StepVerifier third = StepVerifier.create(batcher.find("other"))
+            .expectError(IllegalStateException.class)
+            .verifyLater();
+        running.tryEmitNext(max);
+        running.tryEmitComplete();
+
+        // Assert
+        first.verify();
+        second.verify();
+        third.verify();
+        assert batcher.queuedCount() == 0;
+    }
+
+    @Test
+    public void shouldLeaveCancelledLookupsOutOfBatch() {
+        // Arrange
+        LookupBatcher batcher = batcher(Duration.ofMinutes(1), 1);
+        Sinks.Many<Client> running = Sinks.many().replay().all();
+        when(clientStore.findByLoginAny(any())).thenReturn(running.asFlux(), Flux.just(bob));
+        StepVerifier first = StepVerifier.create(batcher.find("max")).expectNext(max).expectComplete().verifyLater();
+        StepVerifier second = StepVerifier.create(batcher.find("bob")).expectNext(bob).expectComplete().verifyLater();
+
+        // Act: a queued lookup times out before the running query finishes
+        batcher.find("gone").subscribe().dispose();
+        assert batcher.queuedCount() == 1;
+        running.tryEmitNext(max);
+        running.tryEmitComplete();
+
+        // Assert
+        first.verify();
+        second.verify();
+        ArgumentCaptor<String[]> logins = ArgumentCaptor.forClass(String[].class);
+        verify(clientStore, times(2)).findByLoginAny(logins.capture());
+        assert Arrays.equals(logins.getAllValues().get(1), new String[] {"bob"});
+    }
+
+    @Test
+    public void shouldDisposeQueryWhenEveryLookupIsCancelled() {
+        // Arrange: the first query never returns
+        LookupBatcher batcher = batcher(Duration.ofMinutes(1), 1);
+        AtomicBoolean disposed = new AtomicBoolean();
+        when(clientStore.findByLoginAny(any()))
+            .thenReturn(Flux.<Client>never().doOnCancel(() -> disposed.set(true)), Flux.just(bob));
+
+        // Act
+        batcher.find("max").subscribe().dispose();
+
+        // Assert: the query is disposed and its slot is free for the next lookup
+        assert disposed.get();
+        StepVerifier.create(batcher.find("bob"))
+            .expectNext(bob)
+            .expectComplete()
+            .verify(Duration.ofSeconds(5));
+    }
+
+    private LookupBatcher batcher(Duration window, int maxInFlight) {
+        return new LookupBatcher(clientStore, ReplicaRouter.disabled(), ShardRouter.disabled(),
+            ApiMetrics.disabled(), true, 100, window, maxInFlight);
+    }
+}
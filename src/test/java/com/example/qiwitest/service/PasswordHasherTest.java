@@ -0,0 +1,99 @@
+package com.example.qiwitest.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PasswordHasherTest {
+
+    private PasswordHasher passwordHasher;
+
+    @AfterEach
+    public void tearDown() {
+        passwordHasher.close();
+    }
+
+    @Test
+    public void shouldVerifyHashedPassword() {
+        passwordHasher = new PasswordHasher(1_000, 2, 100, Duration.ofSeconds(30), 1_000);
+        String hash = passwordHasher.hash("secret").block();
+
+        assertTrue(passwordHasher.isHashed(hash));
+        assertFalse(hash.contains("secret"));
+        StepVerifier.create(passwordHasher.verify("max", hash, "secret"))
+            .expectNext(true)
+            .verifyComplete();
+        StepVerifier.create(passwordHasher.verify("max", hash, "wrong"))
+            .expectNext(false)
+            .verifyComplete();
+    }
+
+    @Test
+    public void shouldSaltEachHash() {
+        passwordHasher = new PasswordHasher(1_000, 2, 100, Duration.ofSeconds(30), 1_000);
+
+        assertFalse(passwordHasher.hash("secret").block().equals(passwordHasher.hash("secret").block()));
+    }
+
+    @Test
+    public void shouldCompareLegacyPlaintextPassword() {
+        passwordHasher = new PasswordHasher(1_000, 2, 100, Duration.ofSeconds(30), 1_000);
+
+        assertFalse(passwordHasher.isHashed("pwd"));
+        StepVerifier.create(passwordHasher.verify("max", "pwd", "pwd"))
+            .expectNext(true)
+            .verifyComplete();
+        StepVerifier.create(passwordHasher.verify("max", "pwd", "other"))
+            .expectNext(false)
+            .verifyComplete();
+    }
+
+    @Test
+    public void shouldNotMatchMalformedOrOutOfRangeHashes() {
+        passwordHasher = new PasswordHasher(1_000, 2, 100, Duration.ofSeconds(30), 1_000);
+        String hash = passwordHasher.hash("secret").block();
+        String saltAndHash = hash.substring(hash.indexOf('$', PasswordHasher.PREFIX.length()));
+
+        for (String stored : new String[] {
+                PasswordHasher.PREFIX,
+                PasswordHasher.PREFIX + "many" + saltAndHash,
+                PasswordHasher.PREFIX + "0" + saltAndHash,
+                PasswordHasher.PREFIX + "10001" + saltAndHash,
+                PasswordHasher.PREFIX + Integer.MAX_VALUE + saltAndHash,
+                PasswordHasher.PREFIX + "1000$!!!$!!!",
+                PasswordHasher.PREFIX + "1000$$" + saltAndHash.substring(saltAndHash.lastIndexOf('$') + 1),
+                hash + "$extra"}) {
+            assertFalse(passwordHasher.isWellFormed(stored), stored);
+            StepVerifier.create(passwordHasher.verify("max", stored, "secret"))
+                .expectNext(false)
+                .verifyComplete();
+        }
+        assertTrue(passwordHasher.isWellFormed(hash));
+        assertTrue(passwordHasher.isWellFormed(PasswordHasher.PREFIX + "10000" + saltAndHash));
+    }
+
+    @Test
+    public void shouldRejectWorkBeyondQueueCapacity() {
+        // One thread and one queue slot: of many simultaneous hashes all but two are rejected
+        passwordHasher = new PasswordHasher(200_000, 1, 1, Duration.ofSeconds(30), 1_000);
+
+        StepVerifier.create(Flux.range(0, 10)
+                .flatMap(i -> passwordHasher.hash("secret")
+                    .map(hash -> "ok")
+                    .onErrorResume(RejectedExecutionException.class, e -> Mono.just("rejected")))
+                .filter("rejected"::equals)
+                .count())
+            .expectNextMatches(rejected -> rejected >= 8)
+            .verifyComplete();
+
+        assertTrue(passwordHasher.rejectedCount() >= 8);
+    }
+}